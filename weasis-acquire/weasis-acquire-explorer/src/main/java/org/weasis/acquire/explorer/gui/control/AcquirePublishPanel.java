@@ -30,6 +30,7 @@ import org.weasis.acquire.explorer.gui.dialog.AcquirePublishDialog;
 import org.weasis.core.api.gui.task.CircularProgressBar;
 import org.weasis.core.api.gui.util.JMVUtils;
 import org.weasis.core.api.gui.util.WinUtil;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.dicom.param.DicomNode;
@@ -42,7 +43,8 @@ public class AcquirePublishPanel extends JPanel {
     private final JButton publishBtn = new JButton(Messages.getString("AcquirePublishPanel.publish")); //$NON-NLS-1$
     private final CircularProgressBar progressBar = new CircularProgressBar(0, 100);
 
-    public static final ExecutorService PUBLISH_DICOM = ThreadUtil.buildNewSingleThreadExecutor("Publish Dicom"); //$NON-NLS-1$
+    public static final ExecutorService PUBLISH_DICOM =
+        ThreadUtil.buildNewSingleThreadExecutor("Publish Dicom", Kind.IO); //$NON-NLS-1$
 
     public AcquirePublishPanel() {
         // setBorder(new TitledBorder(null, "Publish", TitledBorder.LEADING, TitledBorder.TOP, null, null));
@@ -30,13 +30,15 @@ import org.weasis.core.api.gui.util.JMVUtils;
 import org.weasis.core.api.gui.util.WinUtil;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.ThreadUtil;
 
 public class ImportPanel extends JPanel {
     private static final long serialVersionUID = -8658686020451614960L;
 
-    public static final ExecutorService IMPORT_IMAGES = ThreadUtil.buildNewSingleThreadExecutor("ImportImage"); //$NON-NLS-1$
+    public static final ExecutorService IMPORT_IMAGES =
+        ThreadUtil.buildNewSingleThreadExecutor("ImportImage", Kind.IO); //$NON-NLS-1$
 
     private JButton importBtn = new JButton(Messages.getString("ImportPanel.import")); //$NON-NLS-1$
     private final CircularProgressBar progressBar = new CircularProgressBar(0, 100);
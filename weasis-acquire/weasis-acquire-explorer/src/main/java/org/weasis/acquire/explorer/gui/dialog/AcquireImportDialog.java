@@ -41,6 +41,7 @@ import org.weasis.acquire.explorer.gui.control.ImportPanel;
 import org.weasis.core.api.gui.util.JMVUtils;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.service.BundlePreferences;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
 
@@ -51,7 +52,8 @@ public class AcquireImportDialog extends JDialog implements PropertyChangeListen
 
     private final ImportPanel importPanel;
 
-    public static final ExecutorService IMPORT_IMAGES = ThreadUtil.buildNewSingleThreadExecutor("ImportImage"); //$NON-NLS-1$
+    public static final ExecutorService IMPORT_IMAGES =
+        ThreadUtil.buildNewSingleThreadExecutor("ImportImage", Kind.IO); //$NON-NLS-1$
 
     static final Object[] OPTIONS =
         { Messages.getString("AcquireImportDialog.validate"), Messages.getString("AcquireImportDialog.cancel") }; //$NON-NLS-1$ //$NON-NLS-2$
@@ -56,9 +56,10 @@ import org.weasis.core.api.gui.util.WinUtil;
 import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.service.BundlePreferences;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.util.StringUtil;
-import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.UsageType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
@@ -339,7 +340,7 @@ public class AcquirePublishDialog extends JDialog {
             }
         });
 
-        ThreadUtil.buildNewSingleThreadExecutor("Dicomize").execute(dicomizeTask); //$NON-NLS-1$
+        ExecutorRegistry.getInstance().getSharedExecutor("Dicomize", 1, Kind.CPU).execute(dicomizeTask); //$NON-NLS-1$
 
     }
 
@@ -13,22 +13,27 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.URI;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.base.explorer.list.ThumbnailList;
 import org.weasis.core.api.gui.util.GuiExecutor;
+import org.weasis.core.api.image.cv.RawImageCache;
 import org.weasis.core.api.image.util.ImageFiler;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
-import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.media.data.MemoryGovernor;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
@@ -39,7 +44,7 @@ public final class JIThumbnailCache {
     private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
     // Set only one concurrent thread. The time consuming part is in loading image thread (see ImageElement)
     private final ExecutorService qExecutor =
-        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, ThreadUtil.getThreadFactory("Thumbnail Cache")); //$NON-NLS-1$
+        new MonitoredExecutor("Thumbnail Cache", Kind.CPU, 1, 1, 0L, TimeUnit.MILLISECONDS, queue); //$NON-NLS-1$
 
     private final Map<URI, ThumbnailIcon> cachedThumbnails;
 
@@ -55,6 +60,35 @@ public final class JIThumbnailCache {
                 return size() > MAX_ENTRIES;
             }
         });
+        // The icons are quickly built again from the images
+        MemoryGovernor.getInstance().register("Explorer thumbnails", Memory.HEAP, //$NON-NLS-1$
+            Reclaimable.of(this::getUsedMemory, this::reclaim), () -> 1.0);
+    }
+
+    private static long getIconSize(ThumbnailIcon icon) {
+        return 4L * icon.getIconWidth() * icon.getIconHeight();
+    }
+
+    private long getUsedMemory() {
+        long used = 0;
+        synchronized (cachedThumbnails) {
+            for (ThumbnailIcon icon : cachedThumbnails.values()) {
+                used += getIconSize(icon);
+            }
+        }
+        return used;
+    }
+
+    private long reclaim(long bytes) {
+        long freed = 0;
+        synchronized (cachedThumbnails) {
+            Iterator<ThumbnailIcon> it = cachedThumbnails.values().iterator();
+            while (freed < bytes && it.hasNext()) {
+                freed += getIconSize(it.next());
+                it.remove();
+            }
+        }
+        return freed;
     }
 
     public synchronized void invalidate() {
@@ -146,7 +180,7 @@ public final class JIThumbnailCache {
 
             // Get the final that contain the thumbnail when the uncompress mode is activated
             File file = diskObject.getFile();
-            if (file != null && file.getName().endsWith(".wcv")) { //$NON-NLS-1$
+            if (RawImageCache.isCacheFile(file)) {
                 File thumbFile = new File(ImageFiler.changeExtension(file.getPath(), ".jpg")); //$NON-NLS-1$
                 if (thumbFile.canRead()) {
                     img = ImageProcessor.readImage(thumbFile);
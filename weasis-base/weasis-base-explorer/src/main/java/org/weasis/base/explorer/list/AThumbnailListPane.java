@@ -24,7 +24,8 @@ import javax.swing.event.ListSelectionEvent;
 
 import org.weasis.base.explorer.JIExplorerContext;
 import org.weasis.core.api.media.data.MediaElement;
-import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.ui.editor.image.DefaultView2d;
 
 @SuppressWarnings("serial")
@@ -35,7 +36,8 @@ public abstract class AThumbnailListPane<E extends MediaElement> extends JScroll
     public AThumbnailListPane(ThumbnailList<E> thumbList) {
         super(thumbList.asComponent(), ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
             ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-        this.pool = ThreadUtil.buildNewSingleThreadExecutor("Thumbnail List"); //$NON-NLS-1$
+        // Shared by the panes, a pane is never disposed explicitly
+        this.pool = ExecutorRegistry.getInstance().getSharedExecutor("Thumbnail List", 1, Kind.CPU); //$NON-NLS-1$
 
         this.thumbnailList = thumbList;
         this.thumbnailList.addListSelectionListener(new JIListSelectionAdapter());
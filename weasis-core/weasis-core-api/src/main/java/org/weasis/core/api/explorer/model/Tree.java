@@ -11,72 +11,105 @@ package org.weasis.core.api.explorer.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tree of the data model. The reads are lock-free: the children are copy-on-write lists (iterations are snapshots)
+ * and the locate index is a concurrent map. The writes are serialized on the locate index shared by all the nodes of
+ * the tree.
+ */
 public class Tree<T> {
 
     private final T head;
 
-    private final ArrayList<Tree<T>> leafs = new ArrayList<>();
+    private final List<Tree<T>> leafs = new CopyOnWriteArrayList<>();
 
-    private Tree<T> parent = null;
+    private volatile Tree<T> parent = null;
 
-    private HashMap<T, Tree<T>> locate = new HashMap<>();
+    private volatile Map<T, Tree<T>> locate;
 
     public Tree(T head) {
+        this(head, new ConcurrentHashMap<>());
+    }
+
+    private Tree(T head, Map<T, Tree<T>> locate) {
         this.head = head;
+        this.locate = locate;
         locate.put(head, this);
     }
 
-    public synchronized void addLeaf(T root, T leaf) {
-        if (locate.containsKey(root)) {
-            locate.get(root).addLeaf(leaf);
-        } else {
-            addLeaf(root).addLeaf(leaf);
+    public void addLeaf(T root, T leaf) {
+        Map<T, Tree<T>> map = locate;
+        synchronized (map) {
+            Tree<T> tree = map.get(root);
+            if (tree == null) {
+                tree = addLeaf(root);
+            }
+            tree.addLeaf(leaf);
         }
     }
 
-    private synchronized Tree<T> addLeaf(T leaf) {
-        Tree<T> t = new Tree<>(leaf);
-        leafs.add(t);
+    private Tree<T> addLeaf(T leaf) {
+        Tree<T> t = new Tree<>(leaf, locate);
         t.parent = this;
-        t.locate = this.locate;
-        locate.put(leaf, t);
+        // Published last, a reader finds the new node fully linked
+        leafs.add(t);
         return t;
     }
 
-    public synchronized void removeLeaf(T leaf) {
-        Tree<T> t = locate.remove(leaf);
-        if (t != null) {
-            t.parent.leafs.remove(t);
-            t.parent = null;
-            t.locate = null;
+    public void removeLeaf(T leaf) {
+        Map<T, Tree<T>> map = locate;
+        if (map == null || leaf == null) {
+            return;
+        }
+        synchronized (map) {
+            Tree<T> t = map.get(leaf);
+            if (t != null && t.parent != null) {
+                t.parent.leafs.remove(t);
+                t.unlink(map);
+            }
+        }
+    }
+
+    private void unlink(Map<T, Tree<T>> map) {
+        // Remove also the nodes of the subtree from the index
+        for (Tree<T> leaf : leafs) {
+            leaf.unlink(map);
         }
+        map.remove(head, this);
+        parent = null;
+        locate = null;
     }
 
-    public synchronized Tree<T> setAsParent(T parentRoot) {
-        Tree<T> t = new Tree<>(parentRoot);
-        t.leafs.add(this);
-        this.parent = t;
-        t.locate = this.locate;
-        t.locate.put(head, this);
-        t.locate.put(parentRoot, t);
-        return t;
+    public Tree<T> setAsParent(T parentRoot) {
+        Map<T, Tree<T>> map = locate;
+        synchronized (map) {
+            Tree<T> t = new Tree<>(parentRoot, map);
+            t.leafs.add(this);
+            this.parent = t;
+            return t;
+        }
     }
 
     public T getHead() {
         return head;
     }
 
-    public synchronized Tree<T> getTree(T element) {
-        return locate.get(element);
+    public Tree<T> getTree(T element) {
+        Map<T, Tree<T>> map = locate;
+        // ConcurrentHashMap does not accept null keys
+        return map == null || element == null ? null : map.get(element);
     }
 
-    public synchronized Tree<T> getParent() {
+    public Tree<T> getParent() {
         return parent;
     }
 
-    public synchronized Collection<T> getSuccessors(T root) {
+    public Collection<T> getSuccessors(T root) {
         Collection<T> successors = new ArrayList<>();
         Tree<T> tree = getTree(root);
         if (null != tree) {
@@ -87,13 +120,16 @@ public class Tree<T> {
         return successors;
     }
 
+    /**
+     * @return a read-only view of the children. Its iterators are snapshots and never fail with a concurrent update.
+     */
     public Collection<Tree<T>> getSubTrees() {
-        return leafs;
+        return Collections.unmodifiableList(leafs);
     }
 
     public static <T> Collection<T> getSuccessors(T of, Collection<Tree<T>> in) {
         for (Tree<T> tree : in) {
-            if (tree.locate.containsKey(of)) {
+            if (tree.getTree(of) != null) {
                 return tree.getSuccessors(of);
             }
         }
@@ -105,10 +141,18 @@ public class Tree<T> {
         return printTree(0);
     }
 
-    public synchronized void clear() {
-        locate.clear();
-        leafs.clear();
-        locate.put(head, this);
+    public void clear() {
+        Map<T, Tree<T>> map = locate;
+        if (map != null) {
+            synchronized (map) {
+                for (Tree<T> leaf : leafs) {
+                    leaf.parent = null;
+                }
+                leafs.clear();
+                map.clear();
+                map.put(head, this);
+            }
+        }
     }
 
     private String printTree(int increment) {
@@ -9,14 +9,22 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.weasis.core.util.LangUtil;
 
+/**
+ * Base class of the operations. The parameter values must not be modified once they have been set, a new value (e.g. a
+ * copy of an array) must be given to {@link #setParam(String, Object)} so that the change is seen by the fingerprint.
+ */
 public abstract class AbstractOp implements ImageOpNode {
 
     protected HashMap<String, Object> params;
+    // Incremented when a parameter changes (see getFingerprint())
+    private long paramsVersion;
 
     public AbstractOp() {
         params = new HashMap<>();
@@ -30,6 +38,7 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void clearParams() {
         params.clear();
+        paramsVersion++;
     }
 
     @Override
@@ -41,6 +50,29 @@ public abstract class AbstractOp implements ImageOpNode {
         }
     }
 
+    private void updateVersion(String key, Object oldValue, Object newValue) {
+        // The input and the output of the chain are handled by the OpManager, the other images are parameters
+        if (!Param.INPUT_IMG.equals(key) && !Param.OUTPUT_IMG.equals(key) && !Objects.deepEquals(oldValue, newValue)) {
+            paramsVersion++;
+        }
+    }
+
+    @Override
+    public Object getFingerprint() {
+        Object state = getExternalState();
+        return state == null ? paramsVersion : Arrays.asList(paramsVersion, state);
+    }
+
+    /**
+     * Returns the state of the objects given as parameters which changes the result of the operation (e.g. the pixel
+     * values of an image element). The state is compared by value with the one of the previous process.
+     *
+     * @return the state which is not tracked by the parameters or null
+     */
+    protected Object getExternalState() {
+        return null;
+    }
+
     @Override
     public Object getParam(String key) {
         if (key == null) {
@@ -52,21 +84,26 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void setParam(String key, Object value) {
         if (key != null) {
-            params.put(key, value);
+            // A missing key differs from a null value (this is never a value)
+            boolean present = params.containsKey(key);
+            Object old = params.put(key, value);
+            updateVersion(key, present ? old : this, value);
         }
     }
 
     @Override
     public void setAllParameters(Map<String, Object> map) {
         if (map != null) {
-            params.putAll(map);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                setParam(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     @Override
     public void removeParam(String key) {
-        if (key != null) {
-            params.remove(key);
+        if (key != null && params.containsKey(key)) {
+            updateVersion(key, params.remove(key), this);
         }
     }
 
@@ -77,7 +114,7 @@ public abstract class AbstractOp implements ImageOpNode {
 
     @Override
     public void setEnabled(boolean enabled) {
-        params.put(Param.ENABLE, enabled);
+        setParam(Param.ENABLE, enabled);
     }
 
     @Override
@@ -9,6 +9,7 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.util.Arrays;
 
@@ -44,6 +45,14 @@ public class AffineTransformOp extends AbstractOp {
 
     public static final String P_DST_BOUNDS = "dest.bounds"; //$NON-NLS-1$
 
+    /**
+     * Render an intermediate frame of an interaction (Optional parameter): the nearest neighbor interpolation is used
+     * instead of the interpolation type.
+     *
+     * Boolean value. Default value is false.
+     */
+    public static final String P_INTERACTIVE = "interactive"; //$NON-NLS-1$
+
     public AffineTransformOp() {
         setName(OP_NAME);
     }
@@ -57,11 +66,23 @@ public class AffineTransformOp extends AbstractOp {
         return new AffineTransformOp(this);
     }
 
+    @Override
+    public int getRegionMargin() {
+        // Size of the Lanczos interpolation kernel
+        return 4;
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        return true;
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
         PlanarImage result = source;
-        double[] matrix = (double[]) params.get(P_AFFINE_MATRIX);
+        double[] matrix = getSourceMatrix((double[]) params.get(P_AFFINE_MATRIX),
+            (Rectangle) params.get(Param.INPUT_REGION), (Integer) params.get(Param.INPUT_LEVEL));
         Rectangle2D bound = (Rectangle2D) params.get(P_DST_BOUNDS);
 
         if (bound != null && matrix != null && !Arrays.equals(identityMatrix, matrix)) {
@@ -69,7 +90,9 @@ public class AffineTransformOp extends AbstractOp {
                 Mat mat = new Mat(2, 3, CvType.CV_64FC1);
                 mat.put(0, 0, matrix);
                 Integer interpolation = (Integer) params.get(P_INTERPOLATION);
-                if (interpolation != null && interpolation == 3) {
+                if (Boolean.TRUE.equals(params.get(P_INTERACTIVE))) {
+                    interpolation = 0;
+                } else if (interpolation != null && interpolation == 3) {
                     interpolation = 4;
                 }
                 result = ImageProcessor.warpAffine(source.toMat(), mat, new Size(bound.getWidth(), bound.getHeight()),
@@ -82,4 +105,24 @@ public class AffineTransformOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    /**
+     * @return the matrix applied to the input image when it is a region or a reduced resolution of the original image
+     */
+    static double[] getSourceMatrix(double[] matrix, Rectangle region, Integer level) {
+        int scale = level == null ? 1 : 1 << level;
+        if (matrix == null || (region == null && scale == 1)) {
+            return matrix;
+        }
+        double[] m = matrix.clone();
+        m[0] *= scale;
+        m[1] *= scale;
+        m[3] *= scale;
+        m[4] *= scale;
+        if (region != null) {
+            m[2] += matrix[0] * region.x + matrix[1] * region.y;
+            m[5] += matrix[3] * region.x + matrix[4] * region.y;
+        }
+        return m;
+    }
+
 }
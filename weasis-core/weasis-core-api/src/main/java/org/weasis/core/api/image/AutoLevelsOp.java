@@ -41,6 +41,12 @@ public class AutoLevelsOp extends AbstractOp {
         return new AutoLevelsOp(this);
     }
 
+    @Override
+    protected Object getExternalState() {
+        ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
+        return imageElement == null ? null : imageElement.getRenderingState();
+    }
+
     @Override
     public void process() throws Exception {
         ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
@@ -41,6 +41,27 @@ public class FilterOp extends AbstractOp {
         return new FilterOp(this);
     }
 
+    @Override
+    public int getRegionMargin() {
+        KernelData kernel = (KernelData) params.get(P_KERNEL_DATA);
+        if (kernel == null) {
+            return 0;
+        }
+        return Math.max(kernel.getWidth(), kernel.getHeight());
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        // The kernel is defined in pixels of the original image
+        return isIdentity();
+    }
+
+    @Override
+    public boolean isIdentity() {
+        KernelData kernel = (KernelData) params.get(P_KERNEL_DATA);
+        return kernel == null || kernel.equals(KernelData.NONE);
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
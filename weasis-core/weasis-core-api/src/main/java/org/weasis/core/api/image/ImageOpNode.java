@@ -22,6 +22,16 @@ public interface ImageOpNode extends Copyable<ImageOpNode> {
 
         public static final String INPUT_IMG = "op.input.img"; //$NON-NLS-1$
         public static final String OUTPUT_IMG = "op.output.img"; //$NON-NLS-1$
+        /**
+         * Region of the original image corresponding to the input image (java.awt.Rectangle). Null when the input is
+         * the whole image.
+         */
+        public static final String INPUT_REGION = "op.input.region"; //$NON-NLS-1$
+        /**
+         * Level of the image pyramid of the input image (Integer), the input is reduced by 2^level (see
+         * ImageElement.getPyramidLevel()). Null when the input has the resolution of the original image.
+         */
+        public static final String INPUT_LEVEL = "op.input.level"; //$NON-NLS-1$
 
         private Param() {
         }
@@ -54,4 +64,41 @@ public interface ImageOpNode extends Copyable<ImageOpNode> {
 
     void handleImageOpEvent(ImageOpEvent event);
 
+    /**
+     * Returns a value which changes each time a parameter is modified, except the input and output images. The
+     * operation manager does not run again an operation when its fingerprint and its input have not changed. A
+     * parameter value modified in place is not seen, a new value must be set.
+     *
+     * @return the fingerprint of the parameters or null when the operation must always be processed
+     */
+    default Object getFingerprint() {
+        return null;
+    }
+
+    /**
+     * Returns the number of pixels required around a region of the image to process it like the whole image (e.g. the
+     * radius of a convolution kernel). The operations supporting a region as input (see {@link Param#INPUT_REGION})
+     * return a positive or null value.
+     *
+     * @return the margin in pixels or -1 when the operation requires the whole image
+     */
+    default int getRegionMargin() {
+        return -1;
+    }
+
+    /**
+     * @return true when the operation gives a similar result from a reduced resolution of the image (see
+     *         {@link Param#INPUT_LEVEL})
+     */
+    default boolean isReducedResolutionSupported() {
+        return false;
+    }
+
+    /**
+     * @return true when the operation returns its input image with the current parameters
+     */
+    default boolean isIdentity() {
+        return false;
+    }
+
 }
@@ -12,12 +12,14 @@ package org.weasis.core.api.image;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 
 import org.weasis.core.api.Messages;
 import org.weasis.core.api.gui.util.ActionW;
 import org.weasis.core.api.image.op.ByteLut;
 import org.weasis.core.api.image.op.ByteLutCollection;
 import org.weasis.core.util.LangUtil;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageProcessor;
 
@@ -40,6 +42,12 @@ public class PseudoColorOp extends AbstractOp {
 
     public static final String P_LUT_INVERSE = ActionW.INVERT_LUT.cmd();
 
+    // Last combined lookup table and its inputs
+    private LookupTableCV combinedLookup;
+    private LookupTableCV combinedInput;
+    private byte[][] combinedTable;
+    private boolean combinedInverse;
+
     public PseudoColorOp() {
         setName(OP_NAME);
     }
@@ -53,6 +61,17 @@ public class PseudoColorOp extends AbstractOp {
         return new PseudoColorOp(this);
     }
 
+    @Override
+    public int getRegionMargin() {
+        // Point operation
+        return 0;
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        return true;
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
@@ -78,6 +97,56 @@ public class PseudoColorOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    /**
+     * Returns the lookup table giving the result of this operation applied to the output of the lookup table, in a
+     * single pass from the input values of the lookup table.
+     *
+     * @param lookup
+     *            a single band 8-bit lookup table
+     * @return the combined lookup table or null when this operation does not change the image or when the lookup table
+     *         cannot be combined
+     */
+    public LookupTableCV getCombinedLookup(LookupTableCV lookup) {
+        ByteLut lutTable = (ByteLut) params.get(P_LUT);
+        if (lookup == null || lutTable == null || lookup.getNumBands() != 1
+            || lookup.getDataType() != DataBuffer.TYPE_BYTE) {
+            return null;
+        }
+        boolean invert = LangUtil.getNULLtoFalse((Boolean) params.get(P_LUT_INVERSE));
+        byte[][] lut = lutTable.getLutTable();
+        if (lut == null && !invert) {
+            return null;
+        }
+        if (combinedLookup != null && combinedInput == lookup && combinedTable == lut && combinedInverse == invert) {
+            return combinedLookup;
+        }
+
+        byte[] values = lookup.getByteData(0);
+        LookupTableCV result;
+        if (lut == null) {
+            // Same as ImageProcessor.invertLUT() on the 8-bit values
+            byte[] inverse = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                inverse[i] = (byte) ~values[i];
+            }
+            result = new LookupTableCV(inverse, lookup.getOffset());
+        } else {
+            byte[][] colors = invert ? ByteLutCollection.invert(lut) : lut;
+            byte[][] data = new byte[colors.length][values.length];
+            for (int b = 0; b < colors.length; b++) {
+                for (int i = 0; i < values.length; i++) {
+                    data[b][i] = colors[b][values[i] & 0xFF];
+                }
+            }
+            result = new LookupTableCV(data, lookup.getOffset());
+        }
+        combinedLookup = result;
+        combinedInput = lookup;
+        combinedTable = lut;
+        combinedInverse = invert;
+        return result;
+    }
+
     public static BufferedImage getLUT(byte[][] lut) {
         BufferedImage image = new BufferedImage(20, 256, BufferedImage.TYPE_INT_BGR);
         Graphics2D g = image.createGraphics();
@@ -9,30 +9,62 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.Messages;
 import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 
+/**
+ * Chain of image operations. The result of each operation is kept, so {@link #process()} runs again only the first
+ * operation whose parameters or input have changed (see {@link ImageOpNode#getFingerprint()}) and the following ones.
+ * The intermediate images are kept within a memory budget, the images of the first operations are released first.
+ */
 public class SimpleOpManager implements OpManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleOpManager.class);
 
     public static final String IMAGE_OP_NAME = Messages.getString("SimpleOpManager.img_op"); //$NON-NLS-1$
 
+    // JVM property: maximum size of the intermediate images of one manager
+    public static final long DEFAULT_CACHE_SIZE =
+        Long.getLong("weasis.opmanager.cache.size", 64 * 1024 * 1024L); //$NON-NLS-1$
+
+    /**
+     * State of an operation at its last execution.
+     */
+    private static final class Stage {
+        final Object fingerprint;
+        final ImageOpNode previous;
+        final WeakReference<PlanarImage> source;
+
+        Stage(Object fingerprint, ImageOpNode previous, PlanarImage source) {
+            this.fingerprint = fingerprint;
+            this.previous = previous;
+            this.source = source == null ? null : new WeakReference<>(source);
+        }
+    }
+
     public enum Position {
         BEFORE, AFTER
     }
 
     private final HashMap<String, ImageOpNode> nodes;
     private final List<ImageOpNode> operations;
+    private final Map<ImageOpNode, Stage> stages = new IdentityHashMap<>();
     private String name;
+    private long cacheSize = DEFAULT_CACHE_SIZE;
 
     public SimpleOpManager() {
         this(IMAGE_OP_NAME);
@@ -48,6 +80,7 @@ public class SimpleOpManager implements OpManager {
         this.operations = new ArrayList<>();
         this.nodes = new HashMap<>();
         setName(som.name);
+        this.cacheSize = som.cacheSize;
 
         som.nodes.entrySet().forEach(el -> {
             Optional.ofNullable(el.getValue()).ifPresent(n -> {
@@ -66,6 +99,18 @@ public class SimpleOpManager implements OpManager {
         this.name = name == null ? IMAGE_OP_NAME : name;
     }
 
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @param cacheSize
+     *            the maximum number of bytes of the intermediate images (the output image is always kept)
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -208,17 +253,60 @@ public class SimpleOpManager implements OpManager {
         }
     }
 
+    @Override
+    public boolean needProcessing() {
+        PlanarImage source = getFirstNodeInputImage();
+        return source == null || getFirstDirtyStage(source) < operations.size();
+    }
+
+    /**
+     * @return the index of the first operation which must run again or the number of operations when the output image
+     *         is up to date
+     */
+    private int getFirstDirtyStage(PlanarImage source) {
+        int size = operations.size();
+        for (int i = 0; i < size; i++) {
+            ImageOpNode op = operations.get(i);
+            Stage stage = stages.get(op);
+            if (stage == null || stage.fingerprint == null || !stage.fingerprint.equals(op.getFingerprint())) {
+                return i;
+            }
+            if (i == 0 ? stage.source == null || stage.source.get() != source
+                : stage.previous != operations.get(i - 1)) {
+                return i;
+            }
+        }
+        if (size > 0 && getLastNodeOutputImage() == null) {
+            return size - 1;
+        }
+        return size;
+    }
+
     @Override
     public PlanarImage process() {
         PlanarImage source = getFirstNodeInputImage();
         if (source != null && source.width() > 0) {
-            for (int i = 0; i < operations.size(); i++) {
+            int size = operations.size();
+            int start = getFirstDirtyStage(source);
+            // Restart from the nearest image kept in the cache
+            while (start > 0 && start < size && operations.get(start - 1).getParam(Param.OUTPUT_IMG) == null) {
+                start--;
+            }
+            for (int i = start; i < size; i++) {
                 ImageOpNode op = operations.get(i);
                 try {
                     if (i > 0) {
                         op.setParam(Param.INPUT_IMG, operations.get(i - 1).getParam(Param.OUTPUT_IMG));
                     }
-                    if (op.isEnabled()) {
+                    int last = processCombinedLookup(i);
+                    if (last > i) {
+                        for (int j = i; j < last; j++) {
+                            stages.put(operations.get(j), new Stage(operations.get(j).getFingerprint(),
+                                j == 0 ? null : operations.get(j - 1), j == 0 ? source : null));
+                        }
+                        i = last;
+                        op = operations.get(i);
+                    } else if (op.isEnabled()) {
                         op.process();
                     } else {
                         // Skip this operation
@@ -228,13 +316,92 @@ public class SimpleOpManager implements OpManager {
                     LOGGER.error("Image {} failed", op.getParam(Param.NAME), e); //$NON-NLS-1$
                     op.setParam(Param.OUTPUT_IMG, op.getParam(Param.INPUT_IMG));
                 }
+                stages.put(op, new Stage(op.getFingerprint(), i == 0 ? null : operations.get(i - 1),
+                    i == 0 ? source : null));
             }
+            stages.keySet().retainAll(operations);
+            releaseIntermediateImages(source);
         } else {
+            stages.clear();
             clearNodeIOCache();
         }
         return getLastNodeOutputImage();
     }
 
+    /**
+     * Applies a window/level operation and the following pseudo-color operation with a single lookup table from the
+     * input values to the colors. The operations between them must not change the image (e.g. a filter without
+     * kernel). The images between both operations are not built.
+     *
+     * @return the index of the pseudo-color operation or -1 when the operations cannot be combined
+     */
+    private int processCombinedLookup(int index) {
+        ImageOpNode op = operations.get(index);
+        if (!(op instanceof WindowOp) || !op.isEnabled()) {
+            return -1;
+        }
+        int last = index + 1;
+        while (last < operations.size() && !(operations.get(last) instanceof PseudoColorOp)) {
+            ImageOpNode next = operations.get(last);
+            if (next.isEnabled() && !next.isIdentity()) {
+                return -1;
+            }
+            last++;
+        }
+        if (last >= operations.size() || !operations.get(last).isEnabled()) {
+            return -1;
+        }
+        PseudoColorOp colorOp = (PseudoColorOp) operations.get(last);
+        LookupTableCV lookup = colorOp.getCombinedLookup(((WindowOp) op).getLookup());
+        if (lookup == null) {
+            return -1;
+        }
+        PlanarImage source = (PlanarImage) op.getParam(Param.INPUT_IMG);
+        PlanarImage result = lookup.lookup(source.toMat());
+        for (int i = index; i < last; i++) {
+            operations.get(i).setParam(Param.OUTPUT_IMG, null);
+            operations.get(i + 1).setParam(Param.INPUT_IMG, null);
+        }
+        colorOp.setParam(Param.OUTPUT_IMG, result);
+        return last;
+    }
+
+    /**
+     * Releases the intermediate images exceeding the cache size, starting with the first operations. The input of the
+     * last operation (often a zoom or a translation, which changes frequently) and the output image are always kept.
+     */
+    private void releaseIntermediateImages(PlanarImage source) {
+        int last = operations.size() - 1;
+        if (last < 2) {
+            return;
+        }
+        PlanarImage kept = (PlanarImage) operations.get(last - 1).getParam(Param.OUTPUT_IMG);
+        PlanarImage output = getLastNodeOutputImage();
+        Set<PlanarImage> images = Collections.newSetFromMap(new IdentityHashMap<>());
+        long total = 0;
+        for (int i = 0; i < last - 1; i++) {
+            PlanarImage img = (PlanarImage) operations.get(i).getParam(Param.OUTPUT_IMG);
+            if (img != null && img != source && img != kept && img != output && images.add(img)) {
+                total += img.physicalBytes();
+            }
+        }
+
+        for (int i = 0; i < last - 1 && total > cacheSize; i++) {
+            PlanarImage img = (PlanarImage) operations.get(i).getParam(Param.OUTPUT_IMG);
+            if (img != null && images.remove(img)) {
+                total -= img.physicalBytes();
+                // Remove also the references of the following operations which skip the image
+                for (int j = i; j < last - 1; j++) {
+                    ImageOpNode op = operations.get(j);
+                    if (op.getParam(Param.OUTPUT_IMG) == img) {
+                        op.setParam(Param.OUTPUT_IMG, null);
+                        operations.get(j + 1).setParam(Param.INPUT_IMG, null);
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public Object getParamValue(String opName, String param) {
         if (opName != null && param != null) {
@@ -15,6 +15,7 @@ import org.weasis.core.api.image.ImageOpEvent.OpEvent;
 import org.weasis.core.api.image.util.WindLevelParameters;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.util.LangUtil;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 
 public class WindowOp extends AbstractOp {
@@ -62,6 +63,24 @@ public class WindowOp extends AbstractOp {
         }
     }
 
+    @Override
+    public int getRegionMargin() {
+        // Point operation
+        return 0;
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
+        return imageElement == null || imageElement.isPyramidSupported();
+    }
+
+    @Override
+    protected Object getExternalState() {
+        ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
+        return imageElement == null ? null : imageElement.getRenderingState();
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
@@ -75,6 +94,19 @@ public class WindowOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    /**
+     * @return the lookup table giving the output of this operation from its input image in a single pass or null when
+     *         the image is not transformed by a lookup table
+     */
+    public LookupTableCV getLookup() {
+        PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
+        ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
+        if (source == null || imageElement == null) {
+            return null;
+        }
+        return imageElement.getDisplayLookup(source, params);
+    }
+
     public WindLevelParameters getWindLevelParameters() {
         ImageElement imageElement = (ImageElement) params.get(P_IMAGE_ELEMENT);
         if (imageElement != null) {
@@ -9,8 +9,14 @@
  *******************************************************************************/
 package org.weasis.core.api.image.cv;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 import org.opencv.core.Core;
@@ -20,10 +26,19 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.weasis.core.api.image.util.KernelData;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
 
 public class CvUtil {
+    // Minimum number of pixels of a band processed by a thread
+    private static final int MIN_BAND_PIXELS = 128 * 1024;
+    // Relative error of the product of the row and column kernels (float precision of the kernel values)
+    private static final double SEPARABLE_TOLERANCE = 1.0E-5;
+    private static final ExecutorService BAND_EXECUTOR = ExecutorRegistry.getInstance()
+        .getSharedExecutor("Image Bands", ExecutorRegistry.getInstance().getBudget(Kind.CPU), Kind.CPU); //$NON-NLS-1$
     
     private CvUtil() {
     }
@@ -40,51 +55,139 @@ public class CvUtil {
         }
     }
     
+    /**
+     * Applies the kernel to the image. A separable kernel is applied to floating point images as two 1D passes and a
+     * large image is filtered by bands of rows in parallel. The bands are regions of the source image, so their borders
+     * are built with the neighbouring pixels and the result is the same as filtering the whole image.
+     *
+     * @param source
+     *            the image to filter
+     * @param kernel
+     *            the kernel (the origin is always the center)
+     * @return the filtered image
+     */
     public static ImageCV filter(Mat source, KernelData kernel) {
         Objects.requireNonNull(kernel);
         Mat srcImg = Objects.requireNonNull(source);
-        Mat k = new Mat(kernel.getHeight(), kernel.getWidth(), CvType.CV_32F);
-        k.put(0, 0, kernel.getData());
         ImageCV dstImg = new ImageCV();
-        Imgproc.filter2D(srcImg, dstImg, -1, k);
-        // TODO improve speed with dedicated call
-        // Imgproc.blur(srcImg, dstImg, new Size(3,3));
+        dstImg.create(srcImg.size(), srcImg.type());
+
+        // The 1D passes round differently, an integer result could differ by one level from the 2D filter
+        int depth = CvType.depth(srcImg.type());
+        float[][] separable = depth == CvType.CV_32F || depth == CvType.CV_64F ? getSeparableKernel(kernel) : null;
+        Mat k;
+        Mat ky;
+        if (separable == null) {
+            k = new Mat(kernel.getHeight(), kernel.getWidth(), CvType.CV_32F);
+            k.put(0, 0, kernel.getData());
+            ky = null;
+        } else {
+            k = new Mat(1, kernel.getWidth(), CvType.CV_32F);
+            k.put(0, 0, separable[0]);
+            ky = new Mat(kernel.getHeight(), 1, CvType.CV_32F);
+            ky.put(0, 0, separable[1]);
+        }
+
+        forEachBand(srcImg.rows(), srcImg.cols(), (start, end) -> {
+            Mat srcBand = srcImg.rowRange(start, end);
+            Mat dstBand = dstImg.rowRange(start, end);
+            if (ky == null) {
+                Imgproc.filter2D(srcBand, dstBand, -1, k);
+            } else {
+                Imgproc.sepFilter2D(srcBand, dstBand, -1, k, ky);
+            }
+            srcBand.release();
+            dstBand.release();
+        });
+        k.release();
+        if (ky != null) {
+            ky.release();
+        }
         return dstImg;
     }
-    
+
+    /**
+     * Decomposes the kernel into a row and a column kernel when it is the product of both (e.g. mean or Gaussian
+     * kernels).
+     *
+     * @return the row kernel and the column kernel or null when the kernel is not separable
+     */
+    static float[][] getSeparableKernel(KernelData kernel) {
+        int width = kernel.getWidth();
+        int height = kernel.getHeight();
+        float[] data = kernel.getData();
+        if (width < 2 || height < 2 || data == null || data.length < width * height) {
+            return null;
+        }
+        // The row and the column of the largest element give the factors
+        int pivot = 0;
+        for (int i = 1; i < width * height; i++) {
+            if (Math.abs(data[i]) > Math.abs(data[pivot])) {
+                pivot = i;
+            }
+        }
+        float pivotValue = data[pivot];
+        if (pivotValue == 0.0F) {
+            return null;
+        }
+        int py = pivot / width;
+        int px = pivot % width;
+        float[] row = Arrays.copyOfRange(data, py * width, (py + 1) * width);
+        float[] column = new float[height];
+        for (int y = 0; y < height; y++) {
+            column[y] = data[y * width + px] / pivotValue;
+        }
+
+        double tolerance = SEPARABLE_TOLERANCE * Math.abs(pivotValue);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (Math.abs(column[y] * row[x] - data[y * width + x]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        return new float[][] { row, column };
+    }
+
+    /**
+     * Reduces the image by 2 after a Gaussian smoothing (one level of a Gaussian pyramid). The pixel (x, y) of the
+     * result corresponds to the pixel (2x, 2y) of the source.
+     *
+     * @param source
+     *            the image to reduce
+     * @return the reduced image, its size is rounded up
+     */
+    public static ImageCV pyrDown(Mat source) {
+        ImageCV dstImg = new ImageCV();
+        Imgproc.pyrDown(Objects.requireNonNull(source), dstImg);
+        return dstImg;
+    }
+
     public static ImageCV meanStack(List<ImageElement> sources) {
         if (sources.size() > 1) {
             ImageElement firstImg = sources.get(0);
             PlanarImage img = firstImg.getImage(null, false);
 
-            Integer type = null;
             Mat mean = new Mat(img.height(), img.width(), CvType.CV_32F);
             img.toMat().convertTo(mean, CvType.CV_32F);
             int numbSrc = sources.size();
-            for (int i = 1; i < numbSrc; i++) {
-                ImageElement imgElement = sources.get(i);
-                PlanarImage image = imgElement.getImage(null, false);
-                if (image.width() != img.width() && image.height() != img.height()) {
-                    continue;
-                }
-                if (type == null) {
-                    type = image.type();
+            int type = reduceStack(sources, img.width(), img.height(), (image, start, end) -> {
+                Mat band = image.rowRange(start, end);
+                Mat meanBand = mean.rowRange(start, end);
+                // Accumulate not supported 16-bit signed:
+                // https://docs.opencv.org/3.3.0/d7/df3/group__imgproc__motion.html#ga1a567a79901513811ff3b9976923b199
+                if (CvType.depth(image.type()) == CvType.CV_16S) {
+                    Mat floatImage = new Mat(band.rows(), band.cols(), CvType.CV_32F);
+                    band.convertTo(floatImage, CvType.CV_32F);
+                    Imgproc.accumulate(floatImage, meanBand);
+                    floatImage.release();
+                } else {
+                    Imgproc.accumulate(band, meanBand);
                 }
-                if (image instanceof Mat) {
-                    // Accumulate not supported 16-bit signed:
-                    // https://docs.opencv.org/3.3.0/d7/df3/group__imgproc__motion.html#ga1a567a79901513811ff3b9976923b199
-                    if (CvType.depth(image.type()) == CvType.CV_16S) {
-                        Mat floatImage = new Mat(img.height(), img.width(), CvType.CV_32F);
-                        image.toMat().convertTo(floatImage, CvType.CV_32F);
-                        Imgproc.accumulate(floatImage, mean);
-                    } else {
-                        Imgproc.accumulate((Mat) image, mean);
-                    }
-                }
-            }
+            });
             ImageCV dstImg = new ImageCV();
             Core.divide(mean, new Scalar(numbSrc), mean);
-            mean.convertTo(dstImg, type);
+            mean.convertTo(dstImg, type < 0 ? img.type() : type);
             return dstImg;
         }
         return null;
@@ -97,17 +200,10 @@ public class CvUtil {
             PlanarImage img = firstImg.getImage(null, false);
             img.toMat().copyTo(dstImg);
 
-            int numbSrc = sources.size();
-            for (int i = 1; i < numbSrc; i++) {
-                ImageElement imgElement = sources.get(i);
-                PlanarImage image = imgElement.getImage(null, false);
-                if (image.width() != dstImg.width() && image.height() != dstImg.height()) {
-                    continue;
-                }
-                if (image instanceof Mat) {
-                    Core.min(dstImg, (Mat) image, dstImg);
-                }
-            }
+            reduceStack(sources, dstImg.width(), dstImg.height(), (image, start, end) -> {
+                Mat dstBand = dstImg.rowRange(start, end);
+                Core.min(dstBand, image.rowRange(start, end), dstBand);
+            });
             return dstImg;
         }
         return null;
@@ -120,19 +216,120 @@ public class CvUtil {
             PlanarImage img = firstImg.getImage(null, false);
             img.toMat().copyTo(dstImg);
 
-            int numbSrc = sources.size();
+            reduceStack(sources, dstImg.width(), dstImg.height(), (image, start, end) -> {
+                Mat dstBand = dstImg.rowRange(start, end);
+                Core.max(dstBand, image.rowRange(start, end), dstBand);
+            });
+            return dstImg;
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    interface BandReducer {
+        void reduce(Mat image, int rowStart, int rowEnd);
+    }
+
+    /**
+     * Accumulates the images of the stack (except the first one) into the destination. The next images are decoded in
+     * the background while the current one is accumulated, and each image is accumulated by bands of rows in parallel.
+     * The images are always accumulated in the order of the stack, so the result is the same as a sequential
+     * accumulation. The requests of the images not accumulated when the operation ends (e.g. aborted by an error) are
+     * cancelled.
+     *
+     * @return the type of the first accumulated image or -1 if there is none
+     */
+    private static int reduceStack(List<ImageElement> sources, int width, int height, BandReducer reducer) {
+        int type = -1;
+        int numbSrc = sources.size();
+        int ahead = ImageLoader.getDefaultThreadNumber() * 2;
+        List<Future<PlanarImage>> requests = new ArrayList<>(Math.min(numbSrc, ahead + 1));
+        try {
+            for (int i = 1; i < numbSrc && i <= ahead; i++) {
+                requests.add(sources.get(i).getImageAsync(ImageLoader.Priority.NEIGHBOR));
+            }
             for (int i = 1; i < numbSrc; i++) {
-                ImageElement imgElement = sources.get(i);
-                PlanarImage image = imgElement.getImage(null, false);
-                if (image.width() != dstImg.width() && image.height() != dstImg.height()) {
+                if (i + ahead < numbSrc) {
+                    requests.add(sources.get(i + ahead).getImageAsync(ImageLoader.Priority.NEIGHBOR));
+                }
+                PlanarImage image = sources.get(i).getImage(null, false);
+                if (image == null || image.width() != width || image.height() != height) {
                     continue;
                 }
+                if (type < 0) {
+                    type = image.type();
+                }
                 if (image instanceof Mat) {
-                    Core.max(dstImg, (Mat) image, dstImg);
+                    Mat mat = (Mat) image;
+                    forEachBand(height, width, (start, end) -> reducer.reduce(mat, start, end));
                 }
             }
-            return dstImg;
+        } finally {
+            // Only cancels the decoding when no other caller is waiting for the image
+            for (Future<PlanarImage> request : requests) {
+                request.cancel(false);
+            }
         }
-        return null;
+        return type;
+    }
+
+    /**
+     * Runs the action in parallel on bands of rows covering the image. Small images are processed in a single band.
+     * The calling thread runs the bands not yet started by the pool, so it never waits for a slot of the CPU budget.
+     */
+    static void forEachBand(int height, int width, IntBinaryConsumer action) {
+        int bands = Math.min(ExecutorRegistry.getInstance().getBudget(Kind.CPU),
+            (int) Math.min(height, (long) width * height / MIN_BAND_PIXELS));
+        if (bands <= 1) {
+            action.accept(0, height);
+            return;
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<>(bands);
+        for (int b = 0; b < bands; b++) {
+            final int start = (int) ((long) height * b / bands);
+            final int end = (int) ((long) height * (b + 1) / bands);
+            if (end > start) {
+                tasks.add(new FutureTask<>(() -> action.accept(start, end), null));
+            }
+        }
+        for (int i = 1; i < tasks.size(); i++) {
+            BAND_EXECUTOR.execute(tasks.get(i));
+        }
+        // A task already started or done by the pool is not run again
+        for (FutureTask<Void> task : tasks) {
+            task.run();
+        }
+        boolean interrupted = false;
+        try {
+            for (FutureTask<Void> task : tasks) {
+                while (true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // The bands write in the same image, wait for all of them
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new IllegalStateException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface IntBinaryConsumer {
+        void accept(int start, int end);
     }
 }
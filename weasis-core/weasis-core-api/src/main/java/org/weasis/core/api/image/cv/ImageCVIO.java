@@ -14,8 +14,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -52,9 +50,8 @@ import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.media.data.Thumbnail;
-import org.weasis.core.util.FileUtil;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.util.StringUtil;
-import org.weasis.opencv.data.FileRawImage;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
@@ -64,6 +61,10 @@ public class ImageCVIO implements MediaReader {
 
     public static final File CACHE_UNCOMPRESSED_DIR =
         AppProperties.buildAccessibleTempDirectory(AppProperties.FILE_CACHE_DIR.getName(), "uncompressed"); //$NON-NLS-1$
+    public static final RawImageCache UNCOMPRESSED_CACHE = new RawImageCache(CACHE_UNCOMPRESSED_DIR,
+        BundleTools.SYSTEM_PREFERENCES.getLongProperty("weasis.uncompressed.cache.size", //$NON-NLS-1$
+            Math.min(4_000_000_000L, CACHE_UNCOMPRESSED_DIR.getUsableSpace() / 4)),
+        BundleTools.SYSTEM_PREFERENCES.getBooleanProperty("weasis.uncompressed.cache.compress", false)); //$NON-NLS-1$
 
     private final URI uri;
     private final String mimeType;
@@ -71,6 +72,10 @@ public class ImageCVIO implements MediaReader {
     private final FileCache fileCache;
     private final Codec codec;
     private ImageElement image = null;
+    // Layout of the uncompressed image in the cache, required for mapping the file
+    private volatile int rawWidth;
+    private volatile int rawHeight;
+    private volatile int rawType = -1;
 
     public ImageCVIO(URI media, String mimeType, Codec codec) {
         this.uri = Objects.requireNonNull(media);
@@ -88,17 +93,21 @@ public class ImageCVIO implements MediaReader {
         Objects.requireNonNull(media);
         FileCache cache = media.getFileCache();
 
-        Path imgCachePath = null;
+        String cacheKey = null;
         File file;
         if (cache.isRequireTransformation()) {
             file = cache.getTransformedFile();
+            if (file != null && !file.canRead()) {
+                // Evicted from the cache
+                file = null;
+                cache.setTransformedFile(null);
+            }
             if (file == null) {
-                String filename = StringUtil.bytesToMD5(media.getMediaURI().toString().getBytes());
-                imgCachePath = CACHE_UNCOMPRESSED_DIR.toPath().resolve(filename + ".wcv"); //$NON-NLS-1$
-                if (Files.isReadable(imgCachePath)) {
-                    file = imgCachePath.toFile();
+                cacheKey = StringUtil.bytesToMD5(media.getMediaURI().toString().getBytes());
+                file = UNCOMPRESSED_CACHE.get(cacheKey);
+                if (file != null) {
                     cache.setTransformedFile(file);
-                    imgCachePath = null;
+                    cacheKey = null;
                 } else {
                     file = cache.getOriginalFile().orElse(null);
                 }
@@ -108,16 +117,30 @@ public class ImageCVIO implements MediaReader {
         }
 
         if (file != null) {
-            PlanarImage img = readImage(file, imgCachePath == null);
-
-            if (imgCachePath != null) {
+            PlanarImage img;
+            try {
+                img = readImage(file, cacheKey == null);
+            } catch (IOException e) {
+                if (!RawImageCache.isCacheFile(file)) {
+                    throw e;
+                }
+                // Corrupted or deleted in the meantime, decode again the original file
+                LOGGER.warn("Cannot read the cached image {}", file, e); //$NON-NLS-1$
+                cacheKey = StringUtil.bytesToMD5(media.getMediaURI().toString().getBytes());
+                UNCOMPRESSED_CACHE.remove(cacheKey);
+                file = cache.getOriginalFile().orElse(null);
+                if (file == null) {
+                    return null;
+                }
+                img = readImage(file, false);
+            }
 
-                File rawFile = uncompress(imgCachePath, img, media);
+            if (cacheKey != null) {
+                File rawFile = uncompress(cacheKey, img, media);
                 if (rawFile != null) {
-                    file = rawFile;
+                    cache.setTransformedFile(rawFile);
+                    img = readImage(rawFile, true);
                 }
-                cache.setTransformedFile(file);
-                img = readImage(file, true);
             }
             return img;
         }
@@ -126,8 +149,14 @@ public class ImageCVIO implements MediaReader {
 
     private PlanarImage readImage(File file, boolean createTiledLayout) throws Exception {
         PlanarImage img = null;
-        if (file.getPath().endsWith(".wcv")) { //$NON-NLS-1$
-            img = new FileRawImage(file).read();
+        if (RawImageCache.isCacheFile(file)) {
+            img = rawType >= 0 && file.getName().endsWith(RawImageCache.RAW_EXTENSION)
+                ? MappedRawImage.read(file, rawWidth, rawHeight, rawType) : RawImageCache.read(file);
+            if (img != null) {
+                rawWidth = img.width();
+                rawHeight = img.height();
+                rawType = img.type();
+            }
         } else if (codec instanceof NativeOpenCVCodec) {
             img = ImageProcessor.readImageWithCvException(file);
             if (img == null) {
@@ -330,15 +359,15 @@ public class ImageCVIO implements MediaReader {
         return fileCache;
     }
 
-    private File uncompress(Path imgCachePath, PlanarImage img, MediaElement media) {
+    private File uncompress(String cacheKey, PlanarImage img, MediaElement media) {
         /*
          * Make an image cache with its thumbnail when the image size is larger than a tile size and if not DICOM file
          */
         if (img != null && (img.width() > ImageFiler.TILESIZE || img.height() > ImageFiler.TILESIZE)
             && !mimeType.contains("dicom")) { //$NON-NLS-1$
-            File outFile = imgCachePath.toFile();
+            File outFile = null;
             try {
-                new FileRawImage(outFile).write(img);
+                outFile = UNCOMPRESSED_CACHE.write(cacheKey, img);
                 PlanarImage img8 = img;
                 if (CvType.depth(img.type()) > CvType.CV_8S && media instanceof ImageElement) {
                     ImageElement imgElement = ((ImageElement) media);
@@ -368,9 +397,10 @@ public class ImageCVIO implements MediaReader {
                 }
                 ImageProcessor.writeThumbnail(img8.toMat(),
                     new File(ImageFiler.changeExtension(outFile.getPath(), ".jpg")), Thumbnail.MAX_SIZE); //$NON-NLS-1$
+                UNCOMPRESSED_CACHE.register(cacheKey);
                 return outFile;
             } catch (Exception e) {
-                FileUtil.delete(outFile);
+                UNCOMPRESSED_CACHE.remove(cacheKey);
                 LOGGER.error("Uncompress temporary image", e); //$NON-NLS-1$
             }
         }
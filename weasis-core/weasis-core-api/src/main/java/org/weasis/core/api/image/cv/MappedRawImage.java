@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image.cv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.opencv.data.FileRawImage;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Reads the raw images (.wcv) by mapping the file in memory: the pixels of the image are the mapped region of the file,
+ * without reading and copying the file into a new buffer.
+ *
+ * <p>
+ * The images of the same file share the mapping, which is reference-counted. Releasing the image (e.g. when it is
+ * removed from the image cache) releases its reference. The mapping is in copy-on-write mode, so an operation writing
+ * in the image does not modify the file. When the file cannot be mapped, the image is read with {@link FileRawImage}.
+ */
+public final class MappedRawImage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedRawImage.class);
+
+    // Mappings in use, shared by the images of the same file
+    private static final Map<File, Mapping> MAPPINGS = new HashMap<>();
+
+    private MappedRawImage() {
+    }
+
+    static final class Mapping {
+        final File file;
+        final long length;
+        final long lastModified;
+        final ByteBuffer buffer;
+        int refCount;
+
+        Mapping(File file, long length, long lastModified, ByteBuffer buffer) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+
+        boolean isValid(File f) {
+            return length == f.length() && lastModified == f.lastModified();
+        }
+    }
+
+    /**
+     * Reads a raw image with the expected dimension and type.
+     *
+     * @param file
+     *            the raw image
+     * @param width
+     *            the number of columns
+     * @param height
+     *            the number of rows
+     * @param type
+     *            the OpenCV type of the image
+     * @return the image mapped in memory or read from the file when it cannot be mapped
+     * @throws IOException
+     */
+    public static PlanarImage read(File file, int width, int height, int type) throws IOException {
+        ImageCV img = map(file, width, height, type);
+        return img == null ? new FileRawImage(file).read() : img;
+    }
+
+    /**
+     * @return the image mapped in memory or null when the file does not match the dimension and the type
+     */
+    public static ImageCV map(File file, int width, int height, int type) {
+        if (width <= 0 || height <= 0 || type < 0) {
+            return null;
+        }
+        long dataLength = (long) width * height * CvType.channels(type) * RawImageCache.getDepthSize(type);
+        Mapping mapping = acquire(file, dataLength);
+        if (mapping == null) {
+            return null;
+        }
+        try {
+            return new MappedImageCV(mapping, height, width, type);
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            /*
+             * Wrapping the buffer does not do IO (no IOException) and fails only with a CvException or when the native
+             * library is missing. Other errors (e.g. OutOfMemoryError) are not caused by the mapping, reading the file
+             * would fail the same way, so they are propagated to the caller like the errors of FileRawImage.
+             */
+            release(mapping);
+            LOGGER.debug("Cannot wrap the mapped image {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * @return the mapping of the pixel data (with one more reference) or null when the file is not a raw image of the
+     *         expected length
+     */
+    static Mapping acquire(File file, long dataLength) {
+        synchronized (MAPPINGS) {
+            Mapping mapping = MAPPINGS.get(file);
+            if (mapping != null && mapping.isValid(file)) {
+                if (mapping.buffer.capacity() != dataLength) {
+                    return null;
+                }
+                mapping.refCount++;
+                return mapping;
+            }
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (length != FileRawImage.HEADER_LENGTH + dataLength || dataLength > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buffer;
+        // The copy-on-write mode requires a writable channel, the file is never modified
+        try (FileChannel channel =
+            FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(MapMode.PRIVATE, FileRawImage.HEADER_LENGTH, dataLength);
+        } catch (IOException | RuntimeException e) {
+            // When the address space is exhausted, FileChannel.map() reports the OutOfMemoryError as an IOException
+            LOGGER.debug("Cannot map {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        synchronized (MAPPINGS) {
+            Mapping mapping = MAPPINGS.get(file);
+            if (mapping == null || !mapping.isValid(file)) {
+                mapping = new Mapping(file, length, lastModified, buffer);
+                MAPPINGS.put(file, mapping);
+            }
+            mapping.refCount++;
+            return mapping;
+        }
+    }
+
+    /**
+     * Releases a reference of the mapping. When the mapping is no longer used, it is unmapped by the garbage collector:
+     * an explicit unmapping could crash a native operation still reading the pixels.
+     */
+    static void release(Mapping mapping) {
+        synchronized (MAPPINGS) {
+            mapping.refCount--;
+            if (mapping.refCount <= 0 && MAPPINGS.get(mapping.file) == mapping) {
+                MAPPINGS.remove(mapping.file);
+            }
+        }
+    }
+
+    static int getMappingNumber() {
+        synchronized (MAPPINGS) {
+            return MAPPINGS.size();
+        }
+    }
+
+    static class MappedImageCV extends ImageCV {
+        private final AtomicBoolean mapped = new AtomicBoolean(true);
+        // Keep the buffer reachable while the image is used
+        private final Mapping mapping;
+
+        MappedImageCV(Mapping mapping, int rows, int cols, int type) {
+            super();
+            Mat mat = new Mat(rows, cols, type, mapping.buffer);
+            mat.assignTo(this);
+            mat.release();
+            this.mapping = mapping;
+        }
+
+        @Override
+        public void release() {
+            super.release();
+            if (mapped.compareAndSet(true, false)) {
+                MappedRawImage.release(mapping);
+            }
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image.cv;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.image.util.ImageFiler;
+import org.weasis.opencv.data.FileRawImage;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Disk cache of the uncompressed images. The size of the cache is limited and the least recently used images are
+ * deleted first. The order of use is kept in an index file of the cache directory.
+ *
+ * <p>
+ * The images are written either in the raw format (.wcv) or, when the compression is enabled, in a deflate stream
+ * with the fastest level (.wcz) which reduces the size of the cache and is still faster to read than decoding the
+ * original image.
+ */
+public final class RawImageCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RawImageCache.class);
+
+    public static final String RAW_EXTENSION = ".wcv"; //$NON-NLS-1$
+    public static final String COMPRESSED_EXTENSION = ".wcz"; //$NON-NLS-1$
+    private static final String THUMBNAIL_EXTENSION = ".jpg"; //$NON-NLS-1$
+    private static final String INDEX_FILE = "cache.index"; //$NON-NLS-1$
+    private static final int MAGIC = 0x57435A31; // WCZ1
+    private static final int BUFFER_SIZE = 65536;
+
+    private final File directory;
+    private final long maxSize;
+    private final boolean compress;
+    // Key => size of the files, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalSize;
+    private boolean loaded;
+
+    public RawImageCache(File directory, long maxSize, boolean compress) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null"); //$NON-NLS-1$
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.compress = compress;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    public static boolean isCacheFile(File file) {
+        if (file == null) {
+            return false;
+        }
+        String name = file.getName();
+        return name.endsWith(RAW_EXTENSION) || name.endsWith(COMPRESSED_EXTENSION);
+    }
+
+    public synchronized long getSize() {
+        load();
+        return totalSize;
+    }
+
+    public synchronized int getNumberOfImages() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * @return the file of the image in the cache (it becomes the most recently used) or null if not in the cache
+     */
+    public synchronized File get(String key) {
+        load();
+        Long size = entries.get(key);
+        if (size != null) {
+            File file = findFile(key);
+            if (file != null) {
+                return file;
+            }
+            // Deleted externally
+            entries.remove(key);
+            totalSize -= size;
+        }
+        return null;
+    }
+
+    private File findFile(String key) {
+        File file = new File(directory, key + RAW_EXTENSION);
+        if (file.canRead()) {
+            return file;
+        }
+        file = new File(directory, key + COMPRESSED_EXTENSION);
+        return file.canRead() ? file : null;
+    }
+
+    /**
+     * Writes the image into the cache. The image must be registered after writing the other files associated to the
+     * key (e.g. the thumbnail).
+     *
+     * @return the file of the image
+     * @see #register(String)
+     */
+    public File write(String key, PlanarImage img) throws IOException {
+        File file = new File(directory, key + (compress ? COMPRESSED_EXTENSION : RAW_EXTENSION));
+        File tmp = File.createTempFile("tmp_", file.getName(), directory); //$NON-NLS-1$
+        try {
+            if (compress) {
+                Mat mat = img.toMat();
+                int rowBytes = mat.cols() * (int) mat.elemSize();
+                writeCompressed(tmp, mat.cols(), mat.rows(), mat.type(), rowBytes, (row, dst) -> getRow(mat, row, dst));
+            } else {
+                new FileRawImage(tmp).write(img);
+            }
+            move(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        return file;
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Adds the files of the key to the size of the cache and deletes the least recently used images when the cache
+     * exceeds its maximum size.
+     */
+    public synchronized void register(String key) {
+        load();
+        Long old = entries.remove(key);
+        if (old != null) {
+            totalSize -= old;
+        }
+        long size = getFilesSize(key);
+        if (size > 0L) {
+            entries.put(key, size);
+            totalSize += size;
+        }
+        evict();
+        saveIndex();
+    }
+
+    private long getFilesSize(String key) {
+        return new File(directory, key + RAW_EXTENSION).length()
+            + new File(directory, key + COMPRESSED_EXTENSION).length()
+            + new File(directory, key + THUMBNAIL_EXTENSION).length();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        // Keep at least the last image
+        while (totalSize > maxSize && entries.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            String key = entry.getKey();
+            deleteFiles(key);
+            totalSize -= entry.getValue();
+            it.remove();
+            LOGGER.debug("Remove from the uncompressed cache: {}", key); //$NON-NLS-1$
+        }
+    }
+
+    private void deleteFiles(String key) {
+        for (String ext : new String[] { RAW_EXTENSION, COMPRESSED_EXTENSION, THUMBNAIL_EXTENSION }) {
+            try {
+                Files.deleteIfExists(new File(directory, key + ext).toPath());
+            } catch (IOException e) {
+                LOGGER.warn("Cannot delete the cache file {}", key + ext, e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    public synchronized void remove(String key) {
+        load();
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+        deleteFiles(key);
+        saveIndex();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File index = new File(directory, INDEX_FILE);
+        if (index.canRead()) {
+            try (BufferedReader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int sep = line.indexOf('\t');
+                    if (sep > 0) {
+                        String key = line.substring(0, sep);
+                        if (findFile(key) != null) {
+                            entries.put(key, getFilesSize(key));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Cannot read the index of the cache {}", index, e); //$NON-NLS-1$
+            }
+        }
+        // Images written without index (e.g. by a crashed process) are the first to be evicted
+        List<String> unknown = new ArrayList<>();
+        File[] files = directory.listFiles(RawImageCache::isCacheFile);
+        if (files != null) {
+            for (File f : files) {
+                String key = ImageFiler.changeExtension(f.getName(), ""); //$NON-NLS-1$
+                if (!key.startsWith("tmp_") && !entries.containsKey(key)) { //$NON-NLS-1$
+                    unknown.add(key);
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            LinkedHashMap<String, Long> known = new LinkedHashMap<>(entries);
+            entries.clear();
+            for (String key : unknown) {
+                entries.put(key, getFilesSize(key));
+            }
+            entries.putAll(known);
+        }
+        totalSize = 0L;
+        for (Long size : entries.values()) {
+            totalSize += size;
+        }
+    }
+
+    private void saveIndex() {
+        File index = new File(directory, INDEX_FILE);
+        try {
+            File tmp = File.createTempFile("tmp_", INDEX_FILE, directory); //$NON-NLS-1$
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                // From the least to the most recently used
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toString(entry.getValue()));
+                    writer.newLine();
+                }
+            }
+            move(tmp, index);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write the index of the cache {}", index, e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads an image of the cache.
+     */
+    public static PlanarImage read(File file) throws IOException {
+        if (file.getName().endsWith(COMPRESSED_EXTENSION)) {
+            ImageCV[] img = new ImageCV[1];
+            readCompressed(file, (width, height, type) -> {
+                img[0] = new ImageCV(height, width, type);
+                return (row, src) -> putRow(img[0], row, src);
+            });
+            return img[0];
+        }
+        return new FileRawImage(file).read();
+    }
+
+    @FunctionalInterface
+    interface RowSource {
+        void get(int row, ByteBuffer dst);
+    }
+
+    @FunctionalInterface
+    interface RowTarget {
+        void put(int row, ByteBuffer src);
+    }
+
+    @FunctionalInterface
+    interface TargetFactory {
+        RowTarget create(int width, int height, int type);
+    }
+
+    static void writeCompressed(File file, int width, int height, int type, int rowBytes, RowSource source)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(
+            new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), deflater,
+                BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(type);
+            ByteBuffer buf = ByteBuffer.allocate(rowBytes).order(ByteOrder.nativeOrder());
+            for (int y = 0; y < height; y++) {
+                buf.clear();
+                source.get(y, buf);
+                out.write(buf.array(), 0, rowBytes);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static void readCompressed(File file, TargetFactory factory) throws IOException {
+        Inflater inflater = new Inflater();
+        try (InputStream in = new InflaterInputStream(new FileInputStream(file), inflater, BUFFER_SIZE);
+                        DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not a compressed image: " + file); //$NON-NLS-1$
+            }
+            int width = data.readInt();
+            int height = data.readInt();
+            int type = data.readInt();
+            int rowBytes = width * CvType.channels(type) * getDepthSize(type);
+            RowTarget target = factory.create(width, height, type);
+            ByteBuffer buf = ByteBuffer.allocate(rowBytes).order(ByteOrder.nativeOrder());
+            for (int y = 0; y < height; y++) {
+                buf.clear();
+                data.readFully(buf.array(), 0, rowBytes);
+                target.put(y, buf);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated compressed image: " + file, e); //$NON-NLS-1$
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static int getDepthSize(int type) {
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                return 1;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                return 2;
+            case CvType.CV_64F:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    private static void getRow(Mat mat, int row, ByteBuffer dst) {
+        int length = mat.cols() * mat.channels();
+        switch (CvType.depth(mat.type())) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                mat.get(row, 0, dst.array());
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                short[] s = new short[length];
+                mat.get(row, 0, s);
+                dst.asShortBuffer().put(s);
+                break;
+            case CvType.CV_32S:
+                int[] i = new int[length];
+                mat.get(row, 0, i);
+                dst.asIntBuffer().put(i);
+                break;
+            case CvType.CV_32F:
+                float[] f = new float[length];
+                mat.get(row, 0, f);
+                dst.asFloatBuffer().put(f);
+                break;
+            default:
+                double[] d = new double[length];
+                mat.get(row, 0, d);
+                dst.asDoubleBuffer().put(d);
+        }
+    }
+
+    private static void putRow(Mat mat, int row, ByteBuffer src) {
+        int length = mat.cols() * mat.channels();
+        switch (CvType.depth(mat.type())) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                mat.put(row, 0, src.array());
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                short[] s = new short[length];
+                src.asShortBuffer().get(s);
+                mat.put(row, 0, s);
+                break;
+            case CvType.CV_32S:
+                int[] i = new int[length];
+                src.asIntBuffer().get(i);
+                mat.put(row, 0, i);
+                break;
+            case CvType.CV_32F:
+                float[] f = new float[length];
+                src.asFloatBuffer().get(f);
+                mat.put(row, 0, f);
+                break;
+            default:
+                double[] d = new double[length];
+                src.asDoubleBuffer().get(d);
+                mat.put(row, 0, d);
+        }
+    }
+}
@@ -27,8 +27,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.media.data.Codec;
+import org.weasis.core.api.media.data.MemoryGovernor;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ExecutorRegistry;
 import org.weasis.core.util.LangUtil;
 
 public class Activator implements BundleActivator, ServiceListener {
@@ -37,6 +39,11 @@ public class Activator implements BundleActivator, ServiceListener {
     @Override
     public void start(BundleContext bundleContext) throws Exception {
         bundleContext.registerService(BackingStore.class.getName(), new StreamBackingStoreImpl(bundleContext), null);
+        // Allows the modules to get the thread pools and their metrics
+        bundleContext.registerService(ExecutorRegistry.class, ExecutorRegistry.getInstance(), null);
+        // Allows the modules to register their caches
+        bundleContext.registerService(MemoryGovernor.class, MemoryGovernor.getInstance(), null);
+        MemoryGovernor.getInstance().start();
 
         for (ServiceReference<Codec> service : bundleContext.getServiceReferences(Codec.class, null)) {
             registerCodecPlugins(bundleContext.getService(service));
@@ -54,6 +61,7 @@ public class Activator implements BundleActivator, ServiceListener {
 
     @Override
     public void stop(BundleContext bundleContext) throws Exception {
+        MemoryGovernor.getInstance().stop();
         BundleTools.saveSystemPreferences();
     }
 
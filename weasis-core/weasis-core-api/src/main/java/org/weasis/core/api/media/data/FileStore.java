@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+
+/**
+ * Persistent store of files computed from the media (e.g. thumbnails), shared between the sessions and the running
+ * instances of Weasis.
+ *
+ * <p>
+ * A file is identified by the SOP Instance UID of the image (or by the path, the size and the date of a non-DICOM
+ * file), the frame and the parameters of the computation. The files are written in a temporary file and then
+ * atomically moved, so a concurrent reader sees either no file or a complete one. When the store exceeds its maximum
+ * size, the least recently used files are deleted (a read updates the modification date of the file).
+ */
+public class FileStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileStore.class);
+
+    // Increment to invalidate the stored files
+    private static final int VERSION = 1;
+    private static final String TEMP_PREFIX = "tmp_"; //$NON-NLS-1$
+    // Size after eviction relative to the maximum size
+    private static final double EVICTION_RATIO = 0.8;
+    // Minimum delay between two updates of the access date of the same file
+    private static final long ACCESS_RESOLUTION = 60_000L;
+    // Age of a temporary file left by a crashed process
+    private static final long TEMP_MAX_AGE = 3_600_000L;
+    // Writes requested by the threads which must not wait for the disk (e.g. the EDT)
+    private static final ExecutorService WRITE_EXECUTOR =
+        ExecutorRegistry.getInstance().getSharedExecutor("File Store Writer", 1, Kind.IO); //$NON-NLS-1$
+
+    private final File directory;
+    private final long maxSize;
+    private final String extension;
+    // Size of the files, -1 when the directory has not been scanned
+    private final AtomicLong currentSize = new AtomicLong(-1L);
+    private final Object evictionLock = new Object();
+
+    public FileStore(File directory, long maxSize, String extension) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null"); //$NON-NLS-1$
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.extension = Objects.requireNonNull(extension);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param media
+     *            the media from which the file is computed
+     * @param parameters
+     *            the parameters of the computation
+     * @return the key of the file or null when the media has no stable identity (e.g. an image in memory)
+     */
+    public static String buildKey(MediaElement media, String parameters) {
+        if (media == null) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder();
+        TagW sopUID = TagW.get("SOPInstanceUID"); //$NON-NLS-1$
+        Object uid = sopUID == null ? null : media.getTagValue(sopUID);
+        if (uid instanceof String && !((String) uid).isEmpty()) {
+            buf.append("uid:"); //$NON-NLS-1$
+            buf.append(uid);
+        } else {
+            URI uri = media.getMediaURI();
+            long lastModified = media.getLastModified();
+            if (uri == null || lastModified <= 0L) {
+                return null;
+            }
+            buf.append("file:"); //$NON-NLS-1$
+            buf.append(uri);
+            buf.append(':');
+            buf.append(media.getLength());
+            buf.append(':');
+            buf.append(lastModified);
+        }
+        if (media.getKey() != null) {
+            buf.append('#');
+            buf.append(media.getKey());
+        }
+        buf.append('|');
+        buf.append(VERSION);
+        buf.append('|');
+        buf.append(parameters);
+        return digest(buf.toString());
+    }
+
+    static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+            StringBuilder buf = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+                buf.append(Character.forDigit(b & 0xF, 16));
+            }
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    File getFile(String key) {
+        // Split into sub-directories to keep small directories
+        return new File(new File(directory, key.substring(0, 2)), key + extension);
+    }
+
+    /**
+     * @return the file or null when it is not in the store
+     */
+    public File get(String key) {
+        if (key == null) {
+            return null;
+        }
+        File file = getFile(key);
+        long lastModified = file.lastModified();
+        if (lastModified == 0L || !file.canRead()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastModified > ACCESS_RESOLUTION && !file.setLastModified(now)) {
+            LOGGER.debug("Cannot update the access date of {}", file); //$NON-NLS-1$
+        }
+        return file;
+    }
+
+    /**
+     * Writes the file of the key.
+     *
+     * @param writer
+     *            writes the given file and returns false when it fails
+     * @return the file or null when it cannot be written
+     */
+    public File put(String key, Predicate<File> writer) {
+        if (key == null) {
+            return null;
+        }
+        File file = getFile(key);
+        File dir = file.getParentFile();
+        File tmp = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmp = File.createTempFile(TEMP_PREFIX, extension, dir);
+            if (!writer.test(tmp)) {
+                return null;
+            }
+            long length = getStoredLength(tmp);
+            move(tmp, file);
+            tmp = null;
+            if (currentSize.get() < 0L || currentSize.addAndGet(length) > maxSize) {
+                evict();
+            }
+            return file;
+        } catch (IOException e) {
+            LOGGER.error("Cannot write {}", file, e); //$NON-NLS-1$
+            return null;
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp.toPath());
+                } catch (IOException e) {
+                    LOGGER.debug("Cannot delete {}", tmp, e); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the file of the key in a background thread. The first write of the session also scans the directory for
+     * computing the size of the store.
+     *
+     * @see #put(String, Predicate)
+     * @return the future of the file (null when it cannot be written)
+     */
+    public CompletableFuture<File> putAsync(String key, Predicate<File> writer) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> put(key, writer), WRITE_EXECUTOR);
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Written in the meantime by another instance
+            if (!target.isFile()) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the size of the file in the store
+     */
+    protected long getStoredLength(File file) {
+        return file.length();
+    }
+
+    /**
+     * Deletes the least recently used files when the store exceeds its maximum size.
+     */
+    public void evict() {
+        synchronized (evictionLock) {
+            List<File> files = new ArrayList<>();
+            long total = 0L;
+            long now = System.currentTimeMillis();
+            File[] dirs = directory.listFiles(File::isDirectory);
+            if (dirs != null) {
+                for (File dir : dirs) {
+                    File[] list = dir.listFiles(File::isFile);
+                    if (list == null) {
+                        continue;
+                    }
+                    for (File f : list) {
+                        if (f.getName().startsWith(TEMP_PREFIX)) {
+                            if (now - f.lastModified() > TEMP_MAX_AGE) {
+                                deleteFile(f);
+                            }
+                        } else {
+                            files.add(f);
+                            total += getStoredLength(f);
+                        }
+                    }
+                }
+            }
+            if (total > maxSize) {
+                // Cache the dates, they can change while sorting
+                List<long[]> dates = new ArrayList<>(files.size());
+                for (int i = 0; i < files.size(); i++) {
+                    dates.add(new long[] { files.get(i).lastModified(), i });
+                }
+                dates.sort(Comparator.comparingLong(d -> d[0]));
+                long limit = (long) (maxSize * EVICTION_RATIO);
+                for (long[] d : dates) {
+                    if (total <= limit) {
+                        break;
+                    }
+                    File f = files.get((int) d[1]);
+                    long length = getStoredLength(f);
+                    if (deleteFile(f)) {
+                        total -= length;
+                    }
+                }
+            }
+            currentSize.set(total);
+        }
+    }
+
+    private static boolean deleteFile(File file) {
+        try {
+            return Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            // Can be opened by another instance
+            LOGGER.debug("Cannot delete {}", file, e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    public long getSize() {
+        long size = currentSize.get();
+        if (size < 0L) {
+            evict();
+            size = currentSize.get();
+        }
+        return size;
+    }
+}
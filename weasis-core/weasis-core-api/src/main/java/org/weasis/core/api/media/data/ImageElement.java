@@ -9,21 +9,28 @@
  *******************************************************************************/
 package org.weasis.core.api.media.data;
 
+import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.opencv.core.Core.MinMaxLocResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionW;
+import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.OpManager;
@@ -31,7 +38,13 @@ import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.image.cv.CvUtil;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.Unit;
-import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
+import org.weasis.core.api.util.MonitoredExecutor.BudgetRelease;
 import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
@@ -40,10 +53,21 @@ import org.weasis.opencv.op.ImageProcessor;
 public class ImageElement extends MediaElement {
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageElement.class);
 
-    public static final ExecutorService IMAGE_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Image Loader"); //$NON-NLS-1$
+    public static final ImageLoader IMAGE_LOADER =
+        new ImageLoader("Image Loader", ImageLoader.getDefaultThreadNumber()); //$NON-NLS-1$
+
+    public static final MinMaxStore MIN_MAX_STORE =
+        new MinMaxStore(new File(AppProperties.WEASIS_PATH, "cache" + File.separator + "minmax"), //$NON-NLS-1$ //$NON-NLS-2$
+            BundleTools.SYSTEM_PREFERENCES.getLongProperty("weasis.minmax.store.size", 64_000_000L)); //$NON-NLS-1$
+    private static final String MIN_MAX_PARAMETERS = "minmax"; //$NON-NLS-1$
+
+    // Native memory of the decoded images and of their reduced resolutions
+    private static final long CACHE_MAX_MEMORY = Runtime.getRuntime().maxMemory() / 2;
+    // Part for the reduced resolutions (the first level is a quarter of the image)
+    private static final long PYRAMID_MAX_MEMORY = CACHE_MAX_MEMORY / 4;
 
     private static final NativeCache<ImageElement, PlanarImage> mCache =
-        new NativeCache<ImageElement, PlanarImage>(Runtime.getRuntime().maxMemory() / 2) {
+        new NativeCache<ImageElement, PlanarImage>(CACHE_MAX_MEMORY - PYRAMID_MAX_MEMORY) {
 
             @Override
             protected void afterEntryRemove(ImageElement key, PlanarImage img) {
@@ -58,10 +82,69 @@ public class ImageElement extends MediaElement {
                 if (img != null) {
                     img.release();
                 }
+                removePyramid(key);
             }
         };
+
+    // Maximum reduction of the pyramid: 2^6
+    public static final int MAX_PYRAMID_LEVEL = 6;
+    // A level is not built when its smaller side would be below this size
+    private static final int PYRAMID_MIN_SIZE = 128;
+    private static final ExecutorService PYRAMID_EXECUTOR =
+        ExecutorRegistry.getInstance().getSharedExecutor("Image Pyramid", 1, Kind.CPU); //$NON-NLS-1$
+
+    /**
+     * Key of a reduced resolution of an image in cache
+     */
+    private static final class PyramidKey {
+        private final ImageElement image;
+        private final int level;
+
+        PyramidKey(ImageElement image, int level) {
+            this.image = image;
+            this.level = level;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PyramidKey)) {
+                return false;
+            }
+            PyramidKey other = (PyramidKey) obj;
+            return image == other.image && level == other.level;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(image) + level;
+        }
+    }
+
+    private static final NativeCache<PyramidKey, PlanarImage> PYRAMID_CACHE =
+        new NativeCache<PyramidKey, PlanarImage>(PYRAMID_MAX_MEMORY) {
+
+            @Override
+            protected void afterEntryRemove(PyramidKey key, PlanarImage img) {
+                if (img != null) {
+                    img.release();
+                }
+            }
+        };
+
+    static {
+        // Decoding is the most expensive to rebuild
+        MemoryGovernor.getInstance().register("Images", Memory.NATIVE, //$NON-NLS-1$
+            Reclaimable.of(mCache::getUsedNativeMemory, mCache::reclaim, mCache.getMaxNativeMemory()), () -> 4.0);
+        MemoryGovernor.getInstance().register("Image Pyramids", Memory.NATIVE, //$NON-NLS-1$
+            Reclaimable.of(PYRAMID_CACHE::getUsedNativeMemory, PYRAMID_CACHE::reclaim,
+                PYRAMID_CACHE.getMaxNativeMemory()),
+            () -> 2.0);
+    }
  
-    protected boolean readable = true;
+    protected volatile boolean readable = true;
 
     protected double pixelSizeX = 1.0;
     protected double pixelSizeY = 1.0;
@@ -71,6 +154,10 @@ public class ImageElement extends MediaElement {
 
     protected Double minPixelValue;
     protected Double maxPixelValue;
+    // Computed from all the pixels and not yet stored
+    private boolean minMaxToStore;
+    // Building the pyramid must not block the accessors synchronized on this element
+    private final Object pyramidLock = new Object();
 
     public ImageElement(MediaReader mediaIO, Object key) {
         super(mediaIO, key);
@@ -80,35 +167,98 @@ public class ImageElement extends MediaElement {
         return mCache.size();
     }
 
+    /**
+     * @return the maximum size in bytes of the images in cache
+     */
+    public static long getCacheMaxMemory() {
+        return mCache.getMaxNativeMemory();
+    }
+
     protected void findMinMaxValues(PlanarImage img, boolean exclude8bitImage) throws OutOfMemoryError {
         // This function can be called several times from the inner class Load.
         // Do not compute min and max it has already be done
 
-        if (img != null && !isImageAvailable()) {
+        if (img != null && !isImageAvailable() && !readStoredMinMaxValues()) {
+            computeMinMaxValues(img, exclude8bitImage);
+        }
+    }
 
-            if (ImageConversion.convertToDataType(img.type()) == DataBuffer.TYPE_BYTE && exclude8bitImage) {
-                this.minPixelValue = 0.0;
-                this.maxPixelValue = 255.0;
-            } else {
-                MinMaxLocResult val = ImageProcessor.findMinMaxValues(img.toMat());
-                if (val != null) {
-                    this.minPixelValue = val.minVal;
-                    this.maxPixelValue = val.maxVal;
-                }
+    /**
+     * Computes the min and max values from all the pixels of the image.
+     */
+    protected void computeMinMaxValues(PlanarImage img, boolean exclude8bitImage) throws OutOfMemoryError {
+        if (ImageConversion.convertToDataType(img.type()) == DataBuffer.TYPE_BYTE && exclude8bitImage) {
+            this.minPixelValue = 0.0;
+            this.maxPixelValue = 255.0;
+        } else {
+            MinMaxLocResult val = ImageProcessor.findMinMaxValues(img.toMat());
+            if (val != null) {
+                setComputedMinMaxValues(val.minVal, val.maxVal);
+            }
+        }
+    }
 
-                // Handle special case when min and max are equal, ex. black image
-                // + 1 to max enables to display the correct value
-                if (this.minPixelValue.equals(this.maxPixelValue)) {
-                    this.maxPixelValue += 1.0;
-                }
+    /**
+     * Sets the min and max values computed from the pixels, they will be stored for the next sessions.
+     */
+    protected void setComputedMinMaxValues(double min, double max) {
+        this.minPixelValue = min;
+        // Handle special case when min and max are equal, ex. black image
+        // + 1 to max enables to display the correct value
+        this.maxPixelValue = MathUtil.isEqual(min, max) ? max + 1.0 : max;
+        this.minMaxToStore = true;
+    }
+
+    /**
+     * Reads the min and max values computed in a previous session.
+     *
+     * @return true when the values have been found
+     */
+    protected boolean readStoredMinMaxValues() {
+        String key = FileStore.buildKey(this, MIN_MAX_PARAMETERS);
+        double[] values = key == null ? null : MIN_MAX_STORE.getMinMax(key);
+        if (values == null) {
+            return false;
+        }
+        this.minPixelValue = values[0];
+        this.maxPixelValue = values[1];
+        return true;
+    }
+
+    private void storeMinMaxValues() {
+        if (minMaxToStore && isImageAvailable()) {
+            minMaxToStore = false;
+            String key = FileStore.buildKey(this, MIN_MAX_PARAMETERS);
+            if (key != null) {
+                // Called with the lock of the image, possibly from the EDT
+                MIN_MAX_STORE.putMinMaxAsync(key, minPixelValue, maxPixelValue);
             }
         }
     }
 
+    /**
+     * Clears the min and max values, they will be computed again from the next loaded image.
+     */
+    protected void resetMinMaxValues() {
+        this.minPixelValue = null;
+        this.maxPixelValue = null;
+        this.minMaxToStore = false;
+    }
+
     public boolean isImageAvailable() {
         return maxPixelValue != null && minPixelValue != null;
     }
 
+    /**
+     * Returns the values of this element used by the operations to render its image (e.g. the pixel min and max),
+     * they change when the image is loaded again.
+     *
+     * @return the rendering state comparable by value
+     */
+    public Object getRenderingState() {
+        return Arrays.asList(minPixelValue, maxPixelValue);
+    }
+
     protected boolean isGrayImage(RenderedImage source) {
         // Binary images have indexColorModel
         if (source.getSampleModel().getNumBands() > 1 || source.getColorModel() instanceof IndexColorModel) {
@@ -149,6 +299,19 @@ public class ImageElement extends MediaElement {
         return minPixelValue == null ? 0.0 : minPixelValue;
     }
 
+    /**
+     * @return the size of the image read from its tags (before the aspect ratio correction), or null when it is not
+     *         known without reading the pixels
+     */
+    public Dimension getImageDimension() {
+        Integer width = TagW.getTagValue(this, TagW.ImageWidth, Integer.class);
+        Integer height = TagW.getTagValue(this, TagW.ImageHeight, Integer.class);
+        if (width == null || height == null || width <= 0 || height <= 0) {
+            return null;
+        }
+        return new Dimension(width, height);
+    }
+
     public int getRescaleWidth(int width) {
         return (int) Math.ceil(width * getRescaleX() - 0.5);
     }
@@ -230,6 +393,16 @@ public class ImageElement extends MediaElement {
             return null;
     }
 
+    /**
+     * Returns the lookup table applied by {@link #getRenderedImage(PlanarImage, Map)}, so the rendering can be combined
+     * with other lookup tables.
+     *
+     * @return a single band 8-bit table or null when the rendering is not a lookup table (the default)
+     */
+    public LookupTableCV getDisplayLookup(PlanarImage imageSource, Map<String, Object> params) {
+        return null;
+    }
+
     public MeasurementsAdapter getMeasurementAdapter(Unit displayUnit, Point offset) {
         Unit unit = displayUnit;
         if (unit == null || pixelSpacingUnit == null || pixelSpacingUnit.equals(Unit.PIXEL)) {
@@ -255,6 +428,96 @@ public class ImageElement extends MediaElement {
         mCache.remove(this);
     }
 
+    /**
+     * Returns the level of the pyramid to use for displaying the image at a given scale: the most reduced level whose
+     * resolution is not lower than the scale.
+     *
+     * @param scale
+     *            the ratio between the size of the displayed image and the size of the image
+     * @return the level, 0 for the image itself
+     */
+    public static int getPyramidLevel(double scale) {
+        int level = 0;
+        while (level < MAX_PYRAMID_LEVEL && scale > 0.0 && scale <= 1.0 / (2 << level)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns a reduced resolution of the image in cache. The level n is reduced by 2^n with a Gaussian pyramid, its
+     * pixel (x, y) corresponds to the pixel (x * 2^n, y * 2^n) of the image. The levels are built on demand from the
+     * previous level and kept in a cache until the image is removed from the cache.
+     *
+     * @param source
+     *            the image of this element in cache (see {@link #getImage(OpManager)} without operation)
+     * @param level
+     *            the level of the pyramid
+     * @return the reduced image or null when the level is not available (image not in cache, image too small or
+     *         processed image)
+     */
+    public PlanarImage getPyramidLevel(PlanarImage source, int level) {
+        if (level == 0) {
+            return source;
+        }
+        if (source == null || level < 0 || level > MAX_PYRAMID_LEVEL || !isPyramidSupported()
+            || mCache.get(this) != source) {
+            return null;
+        }
+        return buildPyramidLevel(source, level);
+    }
+
+    /**
+     * Returns a reduced resolution of the image in cache (see {@link #getPyramidLevel(PlanarImage, int)}) without
+     * building it in the calling thread.
+     *
+     * @return a future completed with the reduced image or null when the level is not available
+     */
+    public CompletableFuture<PlanarImage> getPyramidLevelAsync(PlanarImage source, int level) {
+        PlanarImage img = level == 0 ? source : PYRAMID_CACHE.get(new PyramidKey(this, level));
+        if (img != null) {
+            return CompletableFuture.completedFuture(img);
+        }
+        return CompletableFuture.supplyAsync(() -> getPyramidLevel(source, level), PYRAMID_EXECUTOR);
+    }
+
+    /**
+     * @return true when the reduced resolutions can be built by smoothing the pixel values (see
+     *         {@link #getPyramidLevel(PlanarImage, int)})
+     */
+    public boolean isPyramidSupported() {
+        return true;
+    }
+
+    private PlanarImage buildPyramidLevel(PlanarImage source, int level) {
+        synchronized (pyramidLock) {
+            PyramidKey key = new PyramidKey(this, level);
+            PlanarImage img = PYRAMID_CACHE.get(key);
+            if (img == null) {
+                PlanarImage previous = level == 1 ? source : buildPyramidLevel(source, level - 1);
+                if (previous == null || Math.min(previous.width(), previous.height()) < 2 * PYRAMID_MIN_SIZE) {
+                    return null;
+                }
+                img = CvUtil.pyrDown(previous.toMat());
+                PYRAMID_CACHE.put(key, img);
+                // The image may have been removed from the cache during the build, its levels have been removed
+                if (mCache.get(this) != source) {
+                    PYRAMID_CACHE.remove(key);
+                    return null;
+                }
+            }
+            return img;
+        }
+    }
+
+    private static void removePyramid(ImageElement image) {
+        if (image != null) {
+            for (int i = 1; i <= MAX_PYRAMID_LEVEL; i++) {
+                PYRAMID_CACHE.remove(new PyramidKey(image, i));
+            }
+        }
+    }
+
     public boolean hasSameSize(ImageElement image) {
         if (image != null) {
             PlanarImage img = getImage();
@@ -367,7 +630,16 @@ public class ImageElement extends MediaElement {
         return getMediaURI().toString();
     }
 
-    public synchronized PlanarImage getImage(OpManager manager, boolean findMinMax) {
+    /**
+     * Waits for the image (see {@link #getImageAsync(ImageLoader.Priority)}) and applies the operations.
+     *
+     * @param manager
+     *            the operations to apply, can be null
+     * @param findMinMax
+     *            true for computing the min and max values of the image if not yet available
+     * @return the processed image or null when the image cannot be read
+     */
+    public PlanarImage getImage(OpManager manager, boolean findMinMax) {
         try {
             return getCacheImage(startImageLoading(), manager, findMinMax);
         } catch (OutOfMemoryError e1) {
@@ -380,10 +652,27 @@ public class ImageElement extends MediaElement {
         }
     }
 
+    /**
+     * Applies the operations to the image returned by {@link #getImageAsync(ImageLoader.Priority)}, without waiting
+     * for the loading.
+     *
+     * @param cacheImage
+     *            the loaded image, can be null
+     * @param manager
+     *            the operations to apply, can be null
+     * @return the processed image or null when the image cannot be read
+     */
+    public PlanarImage getImage(PlanarImage cacheImage, OpManager manager) {
+        return getCacheImage(cacheImage, manager, true);
+    }
+
     private PlanarImage getCacheImage(PlanarImage cacheImage, OpManager manager, boolean findMinMax) {
         if (findMinMax) {
             try {
-                findMinMaxValues(cacheImage, true);
+                synchronized (this) {
+                    findMinMaxValues(cacheImage, true);
+                    storeMinMaxValues();
+                }
             } catch (Exception e) {
                 mCache.remove(this);
                 readable = false;
@@ -408,38 +697,120 @@ public class ImageElement extends MediaElement {
         return getImage(null);
     }
 
-    private PlanarImage startImageLoading() throws OutOfMemoryError {
-        PlanarImage cacheImage;
-        if ((cacheImage = mCache.get(this)) == null && readable && setAsLoading()) {
-            LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
-            Load ref = new Load();
-            Future<PlanarImage> future = IMAGE_LOADER.submit(ref);
-            PlanarImage img = null;
-            try {
-                img = future.get();
-            } catch (InterruptedException e) {
-                // Re-assert the thread's interrupted status
-                Thread.currentThread().interrupt();
-                // We don't need the result, so cancel the task too
-                future.cancel(true);
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof OutOfMemoryError) {
-                    setAsLoaded();
-                    throw (OutOfMemoryError) e.getCause();
-                } else {
-                    readable = false;
-                    LOGGER.error("Cannot read pixel data!: {}", this, e); //$NON-NLS-1$
-                }
+    /**
+     * Reads the image at a reduced resolution and renders it with the default presentation. The image is not kept in
+     * the cache. When the min and max values are not known yet, the ones of the reduced image are only used for
+     * rendering this image (see {@link #getRenderedPreview(PlanarImage)}).
+     *
+     * @param size
+     *            the minimum size of the larger side of the image
+     * @return the rendered image or null when the reader cannot read at a reduced resolution
+     */
+    public PlanarImage getRenderedPreview(int size) {
+        PlanarImage img;
+        try {
+            img = mediaIO.getReducedImageFragment(this, size);
+        } catch (Exception e) {
+            LOGGER.error("Cannot read the reduced image: {}", this, e); //$NON-NLS-1$
+            return null;
+        }
+        if (img == null) {
+            return null;
+        }
+        PlanarImage rendered = isImageAvailable() ? getRenderedImage(img) : getRenderedPreview(img);
+        if (rendered != img) {
+            ImageConversion.releasePlanarImage(img);
+        }
+        return rendered;
+    }
+
+    /**
+     * Renders a reduced image when the min and max values of the full image are not known yet. The window is computed
+     * from the pixels of the reduced image and passed explicitly, the state of this element is not modified.
+     *
+     * @param img
+     *            the reduced image
+     * @return the rendered image
+     */
+    protected PlanarImage getRenderedPreview(PlanarImage img) {
+        double min = 0.0;
+        double max = 255.0;
+        if (ImageConversion.convertToDataType(img.type()) != DataBuffer.TYPE_BYTE) {
+            MinMaxLocResult val = ImageProcessor.findMinMaxValues(img.toMat());
+            if (val != null) {
+                min = val.minVal;
+                max = val.maxVal;
             }
-            if (img != null) {
-                readable = img.width() > 0;
-                if (readable) {
-                    mCache.put(this, img);
-                    cacheImage = img;
-                    this.setTag(TagW.ImageCache, true);
-                }
+        }
+        return getDefaultRenderedImage(this, img, max - min, min + (max - min) / 2.0, true);
+    }
+
+    /**
+     * Asks for loading the image without waiting for the result. A request already in progress for this image is
+     * shared and its priority is raised if necessary. A caller giving up must call
+     * {@link #cancelImageRequest(ImageLoader.Priority)} with the same priority.
+     *
+     * @param priority
+     *            the loading priority
+     * @return the future of the image in cache (the image is null when it cannot be read)
+     */
+    public Future<PlanarImage> requestImage(ImageLoader.Priority priority) {
+        PlanarImage cacheImage = mCache.get(this);
+        if (cacheImage != null || !readable) {
+            FutureTask<PlanarImage> done = new FutureTask<>(() -> cacheImage);
+            done.run();
+            return done;
+        }
+        return IMAGE_LOADER.submit(this, priority, new Load());
+    }
+
+    /**
+     * Loads the image without blocking the caller. All the callers waiting for this image share the same decoding.
+     * Cancelling the returned future cancels the decoding only when it has not been started and when no other caller is
+     * waiting for it.
+     *
+     * @param priority
+     *            the loading priority
+     * @return a new future of the image in cache (the image is null when it cannot be read)
+     */
+    public CompletableFuture<PlanarImage> getImageAsync(ImageLoader.Priority priority) {
+        PlanarImage cacheImage = mCache.get(this);
+        if (cacheImage != null || !readable) {
+            return CompletableFuture.completedFuture(cacheImage);
+        }
+        LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
+        return IMAGE_LOADER.submitAsync(this, priority, new Load());
+    }
+
+    /**
+     * Withdraws a request made by {@link #requestImage(ImageLoader.Priority)}. The loading is cancelled only when it
+     * has not been started and when no other caller (e.g. a view displaying this image) is waiting for it.
+     *
+     * @param priority
+     *            the priority of the request
+     * @return true if the loading has been cancelled
+     */
+    public boolean cancelImageRequest(ImageLoader.Priority priority) {
+        return IMAGE_LOADER.cancel(this, priority);
+    }
+
+    private PlanarImage startImageLoading() throws OutOfMemoryError {
+        PlanarImage cacheImage = null;
+        // The caller can be a task of a pool, the loader needs a slot of the budget
+        try (BudgetRelease release = MonitoredExecutor.releaseBudget()) {
+            cacheImage = getImageAsync(ImageLoader.Priority.VISIBLE).get();
+        } catch (InterruptedException e) {
+            // Re-assert the thread's interrupted status
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            LOGGER.debug("Loading has been cancelled: {}", this); //$NON-NLS-1$
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfMemoryError) {
+                throw (OutOfMemoryError) e.getCause();
+            } else {
+                readable = false;
+                LOGGER.error("Cannot read pixel data!: {}", this, e); //$NON-NLS-1$
             }
-            setAsLoaded();
         }
         return cacheImage;
     }
@@ -458,7 +829,27 @@ public class ImageElement extends MediaElement {
 
         @Override
         public PlanarImage call() throws Exception {
-            return loadImage();
+            setAsLoading();
+            try {
+                PlanarImage img = mCache.get(ImageElement.this);
+                if (img == null) {
+                    img = loadImage();
+                    if (img != null) {
+                        readable = img.width() > 0;
+                        if (readable) {
+                            mCache.put(ImageElement.this, img);
+                            setTag(TagW.ImageCache, true);
+                        }
+                    }
+                }
+                return readable ? img : null;
+            } catch (Exception e) {
+                // Do not request again an image which cannot be read (an OutOfMemoryError can be retried)
+                readable = false;
+                throw e;
+            } finally {
+                setAsLoaded();
+            }
         }
     }
 
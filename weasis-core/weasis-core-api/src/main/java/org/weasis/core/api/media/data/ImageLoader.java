@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
+
+/**
+ * Bounded multi-worker executor for decoding images. Tasks are ordered by {@link Priority} and then by submission
+ * order. Tasks submitted with a key are deduplicated: while a task is queued or running, a new submission with the
+ * same key returns the in-flight future (and raises its priority when the new one is more urgent). When a caller gives
+ * up, a queued task gets back the priority of the remaining callers or is cancelled when nobody is waiting for it.
+ */
+public class ImageLoader extends MonitoredExecutor {
+
+    public enum Priority {
+        /** Image displayed in a view */
+        VISIBLE,
+        /** Images next to the displayed one (scrolling) */
+        NEIGHBOR,
+        /** Background preloading */
+        PRELOAD
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Object, PriorityTask<?>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageLoader(String name, int nThreads) {
+        super(name, Kind.CPU, nThreads, nThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>());
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the number of workers to use for decoding: all the processors minus one for the EDT, limited to 8 for
+     *         bounding the memory of the images in decoding.
+     */
+    public static int getDefaultThreadNumber() {
+        return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Submits a task identified by a key. If a task with the same key is already queued or running, the existing
+     * future is returned and the new task is ignored. The caller is registered with its priority until the task is done
+     * or until it gives up with {@link #cancel(Object, Priority)}.
+     *
+     * @param key
+     *            the identifier of the task (e.g. the image element)
+     * @param priority
+     *            the priority of the task
+     * @param task
+     *            the task to execute
+     * @return the future of the task
+     */
+    public <T> Future<T> submit(Object key, Priority priority, Callable<T> task) {
+        // The shared future cannot unregister a caller, see cancel(key, priority)
+        return enqueue(key, priority, task);
+    }
+
+    /**
+     * Submits a task identified by a key and returns a future completed with the result of the task. All the callers
+     * of the same key share the same execution. Cancelling the returned future cancels the task only when it has not
+     * been started and when no other caller is waiting for it.
+     *
+     * @param key
+     *            the identifier of the task (e.g. the image element)
+     * @param priority
+     *            the priority of the task
+     * @param task
+     *            the task to execute
+     * @return a new future for this caller
+     */
+    public <T> CompletableFuture<T> submitAsync(Object key, Priority priority, Callable<T> task) {
+        Priority p = priority == null ? Priority.NEIGHBOR : priority;
+        return enqueue(key, p, task).newWaiter(p);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> PriorityTask<T> enqueue(Object key, Priority priority, Callable<T> task) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(task);
+        Priority p = priority == null ? Priority.NEIGHBOR : priority;
+        while (true) {
+            PriorityTask<?> current = inFlight.get(key);
+            if (current != null) {
+                if (current.addWaiter(p)) {
+                    return (PriorityTask<T>) current;
+                }
+                inFlight.remove(key, current);
+            }
+            PriorityTask<T> ftask = new PriorityTask<>(key, p, task);
+            ftask.waiters.incrementAndGet(p.ordinal());
+            if (inFlight.putIfAbsent(key, ftask) == null) {
+                execute(ftask);
+                return ftask;
+            }
+        }
+    }
+
+    private void requeue(PriorityTask<?> task, Priority priority) {
+        if (priority != task.priority && remove(task)) {
+            // Re-queue only a task not yet started
+            task.priority = priority;
+            super.execute(task);
+        }
+    }
+
+    /**
+     * Unregisters a caller of {@link #submit(Object, Priority, Callable)}. The task identified by the key is cancelled
+     * only when it has not been started and when no other caller is waiting for it, otherwise it gets the priority of
+     * the most urgent remaining caller.
+     *
+     * @param key
+     *            the identifier of the task
+     * @param priority
+     *            the priority given by the caller when submitting the task
+     * @return true if the task has been cancelled
+     */
+    public boolean cancel(Object key, Priority priority) {
+        PriorityTask<?> task = key == null ? null : inFlight.get(key);
+        return task != null && task.removeWaiter(priority == null ? Priority.NEIGHBOR : priority);
+    }
+
+    /**
+     * Cancels all the queued tasks having the given priority or a lower one.
+     *
+     * @param priority
+     *            the highest priority to cancel
+     * @return the number of cancelled tasks
+     */
+    public int cancelAll(Priority priority) {
+        List<PriorityTask<?>> list = new ArrayList<>();
+        for (Runnable r : getQueue()) {
+            if (r instanceof PriorityTask && ((PriorityTask<?>) r).priority.compareTo(priority) >= 0) {
+                list.add((PriorityTask<?>) r);
+            }
+        }
+        int nb = 0;
+        for (PriorityTask<?> task : list) {
+            if (remove(task)) {
+                task.cancel(false);
+                if (task.key != null) {
+                    inFlight.remove(task.key, task);
+                }
+                nb++;
+            }
+        }
+        return nb;
+    }
+
+    public boolean isInFlight(Object key) {
+        PriorityTask<?> task = key == null ? null : inFlight.get(key);
+        return task != null && !task.isDone();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof PriorityTask ? command
+            : new PriorityTask<>(null, Priority.NEIGHBOR, Objects.requireNonNull(command), null));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PriorityTask<>(null, Priority.NEIGHBOR, callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PriorityTask<>(null, Priority.NEIGHBOR, runnable, value);
+    }
+
+    private class PriorityTask<T> extends FutureTask<T> implements Comparable<PriorityTask<?>> {
+        private final Object key;
+        private final long order;
+        private volatile Priority priority;
+        private final CompletableFuture<T> completion = new CompletableFuture<>();
+        // Number of callers by priority
+        private final AtomicIntegerArray waiters = new AtomicIntegerArray(Priority.values().length);
+
+        PriorityTask(Object key, Priority priority, Callable<T> callable) {
+            super(callable);
+            this.key = key;
+            this.priority = priority;
+            this.order = sequence.getAndIncrement();
+        }
+
+        PriorityTask(Object key, Priority priority, Runnable runnable, T result) {
+            super(runnable, result);
+            this.key = key;
+            this.priority = priority;
+            this.order = sequence.getAndIncrement();
+        }
+
+        @Override
+        protected void done() {
+            if (key != null) {
+                inFlight.remove(key, this);
+            }
+            if (isCancelled()) {
+                completion.cancel(false);
+                return;
+            }
+            try {
+                completion.complete(get());
+            } catch (ExecutionException e) {
+                completion.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completion.cancel(false);
+            }
+        }
+
+        /**
+         * Registers a new caller and raises the priority when the caller is more urgent.
+         *
+         * @return false when the task is already done
+         */
+        synchronized boolean addWaiter(Priority p) {
+            if (isDone()) {
+                return false;
+            }
+            waiters.incrementAndGet(p.ordinal());
+            if (p.compareTo(priority) < 0) {
+                requeue(this, p);
+            }
+            return true;
+        }
+
+        /**
+         * Unregisters a caller. A task not started is cancelled when nobody is waiting for it or gets the priority of
+         * the most urgent remaining caller.
+         *
+         * @return true if the task has been cancelled
+         */
+        synchronized boolean removeWaiter(Priority p) {
+            // No caller registered with this priority (e.g. already unregistered)
+            if (isDone() || waiters.get(p.ordinal()) <= 0) {
+                return false;
+            }
+            waiters.decrementAndGet(p.ordinal());
+            for (Priority v : Priority.values()) {
+                if (waiters.get(v.ordinal()) > 0) {
+                    requeue(this, v);
+                    return false;
+                }
+            }
+            return remove(this) && cancel(false);
+        }
+
+        CompletableFuture<T> newWaiter(Priority p) {
+            CompletableFuture<T> waiter = new CompletableFuture<>();
+            completion.whenComplete((v, t) -> {
+                if (t == null) {
+                    waiter.complete(v);
+                } else if (t instanceof CancellationException) {
+                    waiter.cancel(false);
+                } else {
+                    waiter.completeExceptionally(t);
+                }
+            });
+            waiter.whenComplete((v, t) -> {
+                if (waiter.isCancelled() && !completion.isDone()) {
+                    removeWaiter(p);
+                }
+            });
+            return waiter;
+        }
+
+        @Override
+        public int compareTo(PriorityTask<?> o) {
+            int c = priority.compareTo(o.priority);
+            return c == 0 ? Long.compare(order, o.order) : c;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
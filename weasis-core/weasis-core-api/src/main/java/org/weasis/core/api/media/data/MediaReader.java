@@ -34,6 +34,21 @@ public interface MediaReader extends Tagable {
 
     PlanarImage getImageFragment(MediaElement media) throws Exception;
 
+    /**
+     * Reads the image at a reduced resolution (e.g. for building a thumbnail) without decoding the full image.
+     *
+     * @param media
+     *            the media to read
+     * @param size
+     *            the minimum size of the larger side of the reduced image
+     * @return the reduced image with the same pixel values as the full image, or null when the reader cannot read at a
+     *         reduced resolution
+     * @throws Exception
+     */
+    default PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        return null;
+    }
+
     int getMediaElementNumber();
 
     String getMediaFragmentMimeType();
@@ -34,6 +34,8 @@ public interface MediaSeries<E> extends MediaSeriesGroup, Transferable {
 
     void addAll(int index, Collection<? extends E> c);
 
+    boolean remove(E media);
+
     E getMedia(MEDIA_POSITION position, Filter<E> filter, Comparator<E> sort);
 
     Iterable<E> getMedias(Filter<E> filter, Comparator<E> sort);
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
+import org.weasis.core.api.util.MonitoredExecutor.BudgetRelease;
+
+/**
+ * Coordinates the memory caches of the application. The caches register with a value function and the governor watches
+ * the heap (after the last garbage collection) and the native memory used by the caches. When a limit is exceeded, the
+ * memory is reclaimed from the least valuable cache first.
+ *
+ * <p>
+ * By default, the limit of the native memory is the sum of the capacities of the native caches: each cache already
+ * enforces its own capacity, so the governor only takes memory from the least valuable caches when the limit is set
+ * lower with the JVM property weasis.native.memory.max.
+ *
+ * <p>
+ * The value of a cache is the cost of rebuilding one byte of its content (e.g. a thumbnail is cheaper to rebuild than
+ * a decoded image). It is evaluated at each reclaim, so it can depend on the state of the cache.
+ */
+public final class MemoryGovernor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    public enum Memory {
+        HEAP, NATIVE
+    }
+
+    /**
+     * Cache which can give back memory.
+     */
+    public interface Reclaimable {
+
+        /**
+         * @return the number of bytes used by the cache
+         */
+        long getUsedMemory();
+
+        /**
+         * Removes entries of the cache.
+         *
+         * @param bytes
+         *            the number of bytes to free
+         * @return the number of bytes freed
+         */
+        long reclaim(long bytes);
+
+        /**
+         * @return the maximum number of bytes of the cache, or 0 when the cache has no limit
+         */
+        default long getCapacity() {
+            return 0L;
+        }
+
+        static Reclaimable of(LongSupplier usedMemory, LongUnaryOperator reclaim) {
+            return of(usedMemory, reclaim, 0L);
+        }
+
+        static Reclaimable of(LongSupplier usedMemory, LongUnaryOperator reclaim, long capacity) {
+            Objects.requireNonNull(usedMemory);
+            Objects.requireNonNull(reclaim);
+            return new Reclaimable() {
+                @Override
+                public long getUsedMemory() {
+                    return usedMemory.getAsLong();
+                }
+
+                @Override
+                public long reclaim(long bytes) {
+                    return reclaim.applyAsLong(bytes);
+                }
+
+                @Override
+                public long getCapacity() {
+                    return capacity;
+                }
+            };
+        }
+    }
+
+    static final class Registration {
+        final String name;
+        final Memory memory;
+        final Reclaimable cache;
+        final DoubleSupplier value;
+
+        Registration(String name, Memory memory, Reclaimable cache, DoubleSupplier value) {
+            this.name = Objects.requireNonNull(name);
+            this.memory = Objects.requireNonNull(memory);
+            this.cache = Objects.requireNonNull(cache);
+            this.value = Objects.requireNonNull(value);
+        }
+    }
+
+    static final class Candidate {
+        final Registration registration;
+        final double value;
+
+        Candidate(Registration registration, double value) {
+            this.registration = registration;
+            this.value = value;
+        }
+    }
+
+    // Reclaim when the heap used after GC is above 80% of the max heap, down to 65%
+    static final double HEAP_HIGH_RATIO = 0.80;
+    static final double HEAP_TARGET_RATIO = 0.65;
+    // Reclaim 5% more than the overflow of the native memory
+    static final double NATIVE_TARGET_RATIO = 0.95;
+    private static final long CHECK_PERIOD_MILLIS = 2000L;
+
+    // JVM property: the caches are created before the preferences are loaded
+    private static final MemoryGovernor INSTANCE =
+        new MemoryGovernor(Long.getLong("weasis.native.memory.max", 0L), //$NON-NLS-1$
+            Runtime.getRuntime().maxMemory(), MemoryGovernor::getHeapUsedAfterGC);
+
+    private final List<Registration> caches = new CopyOnWriteArrayList<>();
+    private final long maxNativeMemory;
+    private final long maxHeapMemory;
+    private final LongSupplier usedHeapMemory;
+    private volatile long lastReclaimHeapUsage = -1L;
+    private ExecutorService timer;
+
+    /**
+     * @param maxNativeMemory
+     *            the limit of the native memory, 0 for the sum of the capacities of the native caches
+     */
+    MemoryGovernor(long maxNativeMemory, long maxHeapMemory, LongSupplier usedHeapMemory) {
+        this.maxNativeMemory = maxNativeMemory;
+        this.maxHeapMemory = maxHeapMemory;
+        this.usedHeapMemory = Objects.requireNonNull(usedHeapMemory);
+    }
+
+    public static MemoryGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a cache.
+     *
+     * @param name
+     *            the name of the cache (for logging)
+     * @param memory
+     *            the memory used by the entries of the cache
+     * @param cache
+     *            the cache
+     * @param value
+     *            the value of one byte of the cache, the cache having the lowest value is reclaimed first
+     */
+    public void register(String name, Memory memory, Reclaimable cache, DoubleSupplier value) {
+        caches.add(new Registration(name, memory, cache, value));
+    }
+
+    public void unregister(Reclaimable cache) {
+        caches.removeIf(r -> r.cache == cache);
+    }
+
+    /**
+     * @return the limit of the native memory used by the caches
+     */
+    public long getMaxNativeMemory() {
+        if (maxNativeMemory > 0) {
+            return maxNativeMemory;
+        }
+        long capacity = 0;
+        for (Registration r : caches) {
+            if (r.memory == Memory.NATIVE) {
+                long c = r.cache.getCapacity();
+                if (c <= 0) {
+                    // A cache without limit
+                    return Long.MAX_VALUE;
+                }
+                capacity += c;
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * @return the number of bytes used by the caches of this type of memory
+     */
+    public long getUsedMemory(Memory memory) {
+        long used = 0;
+        for (Registration r : caches) {
+            if (r.memory == memory) {
+                used += r.cache.getUsedMemory();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Reclaims memory from the least valuable caches first.
+     *
+     * @param memory
+     *            the type of memory to free
+     * @param bytes
+     *            the number of bytes to free
+     * @return the number of bytes freed
+     */
+    public long reclaim(Memory memory, long bytes) {
+        if (bytes <= 0) {
+            return 0;
+        }
+        // Evaluate the values once before sorting
+        List<Candidate> list = new ArrayList<>();
+        for (Registration r : caches) {
+            if (r.memory == memory) {
+                list.add(new Candidate(r, r.value.getAsDouble()));
+            }
+        }
+        list.sort(Comparator.comparingDouble(c -> c.value));
+
+        long freed = 0;
+        for (Candidate c : list) {
+            if (freed >= bytes) {
+                break;
+            }
+            Registration r = c.registration;
+            try {
+                long f = r.cache.reclaim(bytes - freed);
+                if (f > 0) {
+                    freed += f;
+                    LOGGER.debug("Reclaim {} bytes from {}", f, r.name); //$NON-NLS-1$
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Cannot reclaim memory from {}", r.name, e); //$NON-NLS-1$
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Checks the heap and the native memory and reclaims the overflow.
+     *
+     * @return the number of bytes freed
+     */
+    public synchronized long checkMemory() {
+        long freed = 0;
+        long heap = usedHeapMemory.getAsLong();
+        // The same usage means no collection since the last reclaim, the freed memory is not yet visible
+        if (heap > maxHeapMemory * HEAP_HIGH_RATIO && heap != lastReclaimHeapUsage) {
+            lastReclaimHeapUsage = heap;
+            freed += reclaim(Memory.HEAP, heap - (long) (maxHeapMemory * HEAP_TARGET_RATIO));
+        }
+        long nativeMem = getUsedMemory(Memory.NATIVE);
+        long maxNative = getMaxNativeMemory();
+        if (nativeMem > maxNative) {
+            freed += reclaim(Memory.NATIVE, nativeMem - (long) (maxNative * NATIVE_TARGET_RATIO));
+        }
+        return freed;
+    }
+
+    /**
+     * Starts checking periodically the memory.
+     */
+    public synchronized void start() {
+        if (timer == null) {
+            timer = ExecutorRegistry.getInstance().newFixedExecutor("Memory Governor", 1, Kind.CPU); //$NON-NLS-1$
+            timer.execute(this::watch);
+        }
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            // Do not hold a slot of the CPU budget between the checks
+            try (BudgetRelease release = MonitoredExecutor.releaseBudget()) {
+                Thread.sleep(CHECK_PERIOD_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            checkMemory();
+        }
+    }
+
+    /**
+     * @return the heap used after the last garbage collection (the current usage includes the garbage)
+     */
+    static long getHeapUsedAfterGC() {
+        long used = 0;
+        boolean collected = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                    collected = true;
+                }
+            }
+        }
+        if (!collected) {
+            Runtime runtime = Runtime.getRuntime();
+            used = runtime.totalMemory() - runtime.freeMemory();
+        }
+        return used;
+    }
+}
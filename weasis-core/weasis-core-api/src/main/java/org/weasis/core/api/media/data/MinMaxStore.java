@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent store of the minimum and maximum pixel values of the images, for not reading all the pixels again when
+ * reopening an image.
+ *
+ * @see FileStore
+ */
+public final class MinMaxStore extends FileStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MinMaxStore.class);
+
+    // A small file uses at least one block of the file system
+    private static final long BLOCK_SIZE = 4096L;
+
+    public MinMaxStore(File directory, long maxSize) {
+        super(directory, maxSize, ".minmax"); //$NON-NLS-1$
+    }
+
+    /**
+     * @return the minimum and maximum values or null when they are not in the store
+     */
+    public double[] getMinMax(String key) {
+        File file = get(key);
+        if (file == null) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath()); DataInputStream data = new DataInputStream(in)) {
+            double min = data.readDouble();
+            double max = data.readDouble();
+            return min < max ? new double[] { min, max } : null;
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read the min and max values {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    public File putMinMax(String key, double min, double max) {
+        return put(key, getWriter(min, max));
+    }
+
+    /**
+     * Writes the values in a background thread, the caller does not wait for the disk.
+     */
+    public CompletableFuture<File> putMinMaxAsync(String key, double min, double max) {
+        return putAsync(key, getWriter(min, max));
+    }
+
+    private static Predicate<File> getWriter(double min, double max) {
+        return f -> {
+            try (OutputStream out = Files.newOutputStream(f.toPath());
+                            DataOutputStream data = new DataOutputStream(out)) {
+                data.writeDouble(min);
+                data.writeDouble(max);
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Cannot write the min and max values {}", f, e); //$NON-NLS-1$
+                return false;
+            }
+        };
+    }
+
+    @Override
+    protected long getStoredLength(File file) {
+        return Math.max(BLOCK_SIZE, file.length());
+    }
+}
@@ -10,63 +10,147 @@
 package org.weasis.core.api.media.data;
 
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.weasis.opencv.data.PlanarImage;
 
+/**
+ * Cache of native images bounded by the number of bytes of the images.
+ *
+ * <p>
+ * The eviction policy is W-TinyLFU: a new entry goes first in a small LRU window (1% of the memory), then it must win
+ * against the victim of the main space for being kept. The main space is a segmented LRU (probation and protected
+ * segments) and the admission compares the access frequencies estimated by a {@link FrequencySketch}. A one-off scan
+ * through a large series cannot flush the images frequently displayed by the other viewers.
+ *
+ * <p>
+ * The lookups do not lock: the accesses are recorded in striped and lossy buffers which are replayed on the policy when
+ * the lock is free.
+ */
 public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
-    protected final Map<K, V> hash;
+    static final double WINDOW_RATIO = 0.01;
+    static final double PROTECTED_RATIO = 0.8;
+    // Average size of an image for sizing the frequency sketch
+    private static final long AVERAGE_ENTRY_SIZE = 256 * 1024L;
+
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 8;
+    private static final int READ_BUFFER_STRIPES =
+        FrequencySketch.ceilingPowerOfTwo(Math.min(64, 4 * Runtime.getRuntime().availableProcessors()));
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
     private final long maxNativeMemory;
-    private AtomicLong useNativeMemory;
+    private final long maxWindow;
+    private final long maxProtected;
+    private final AtomicLong useNativeMemory;
 
+    // Policy guarded by evictionLock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessDeque<K, V> window = new AccessDeque<>();
+    private final AccessDeque<K, V> probation = new AccessDeque<>();
+    private final AccessDeque<K, V> protectedSegment = new AccessDeque<>();
+    private long windowBytes;
+    private long protectedBytes;
+
+    private final ReadBuffer<K, V>[] readBuffers;
+
+    @SuppressWarnings("unchecked")
     public NativeCache(long maxNativeMemory) {
         this.maxNativeMemory = maxNativeMemory;
+        this.maxWindow = Math.max(1L, (long) (maxNativeMemory * WINDOW_RATIO));
+        this.maxProtected = (long) ((maxNativeMemory - maxWindow) * PROTECTED_RATIO);
         this.useNativeMemory = new AtomicLong(0);
-        this.hash = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true));
+        this.data = new ConcurrentHashMap<>(64);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, maxNativeMemory / AVERAGE_ENTRY_SIZE));
+        this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
     }
 
     @Override
     public V get(Object key) {
-        return hash.get(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        afterRead(node);
+        return node.value;
     }
 
     public boolean isMemoryAvailable() {
         return useNativeMemory.get() < maxNativeMemory;
     }
 
+    public long getMaxNativeMemory() {
+        return maxNativeMemory;
+    }
+
+    public long getUsedNativeMemory() {
+        return useNativeMemory.get();
+    }
+
+    /**
+     * When the memory limit is exceeded, removes the overflow plus 5% of the max memory.
+     */
     public void expungeStaleEntries() {
         if (!isMemoryAvailable()) {
-            synchronized (hash) {
-                List<K> remKeys = new ArrayList<>();
-                // 5% of max memory + diff
-                long maxfreeSize = maxNativeMemory / 20 + (useNativeMemory.get() - maxNativeMemory);
-                long freeSize = 0;
-                
-                for (Map.Entry<K, V> e : hash.entrySet()) {
-                    freeSize += physicalBytes(e.getValue());
-                    if (freeSize > maxfreeSize) {
-                        break;
-                    }
-                    remKeys.add(e.getKey());
-                }
-
-                for (K key : remKeys) {
-                    V val = hash.remove(key);
-                    useNativeMemory.addAndGet(- physicalBytes(val));
-                    afterEntryRemove(key, val);
-                }
+            List<Node<K, V>> evicted = new ArrayList<>();
+            evictionLock.lock();
+            try {
+                drainReadBuffers();
+                evictEntries(maxNativeMemory - maxNativeMemory / 20, null, evicted);
+            } finally {
+                evictionLock.unlock();
             }
+            notifyRemoval(evicted);
         }
     }
 
-    private long physicalBytes(V val) {
+    /**
+     * Removes the least valuable entries according to the eviction policy.
+     *
+     * @param bytes
+     *            the number of bytes to free
+     * @return the number of bytes freed
+     */
+    public long reclaim(long bytes) {
+        if (bytes <= 0) {
+            return 0;
+        }
+        List<Node<K, V>> evicted = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evictEntries(Math.max(0, useNativeMemory.get() - bytes), null, evicted);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoval(evicted);
+        long freed = 0;
+        for (Node<K, V> node : evicted) {
+            freed += node.weight;
+        }
+        return freed;
+    }
+
+    /**
+     * Returns the number of bytes of the value. By default, the physical bytes of the image.
+     */
+    protected long weigh(V val) {
         if (val != null) {
             return val.physicalBytes();
         }
@@ -77,65 +161,344 @@ public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<
 
     @Override
     public V put(K key, V value) {
-        expungeStaleEntries();
-        V result = hash.put(key, value);
-        useNativeMemory.addAndGet( physicalBytes(value));
-        useNativeMemory.addAndGet( -physicalBytes(result));
-        return result;
+        Node<K, V> node = new Node<>(key, value, weigh(value));
+        List<Node<K, V>> evicted = new ArrayList<>();
+        Node<K, V> old;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            old = data.put(key, node);
+            if (old != null) {
+                unlink(old);
+            }
+            sketch.increment(key);
+            node.segment = Segment.WINDOW;
+            window.addLast(node);
+            windowBytes += node.weight;
+            useNativeMemory.addAndGet(node.weight);
+            evictEntries(maxNativeMemory, node, evicted);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoval(evicted);
+        return old == null ? null : old.value;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public V remove(Object key) {
-        V val = hash.remove(key);
-        useNativeMemory.addAndGet(- physicalBytes(val));
-        afterEntryRemove((K) key, val);
+        Node<K, V> node;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        V val = node == null ? null : node.value;
+        afterEntryRemove(castKey(key), val);
         return val;
     }
 
+    @SuppressWarnings("unchecked")
+    private K castKey(Object key) {
+        return (K) key;
+    }
+
     @Override
     public void clear() {
-        hash.clear();
-        useNativeMemory.set(0);
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            windowBytes = 0;
+            protectedBytes = 0;
+            useNativeMemory.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     @Override
     public int size() {
-        return hash.size();
+        return data.size();
     }
 
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return hash.entrySet();
+        Set<Entry<K, V>> set = new LinkedHashSet<>();
+        for (Node<K, V> node : data.values()) {
+            set.add(new SimpleImmutableEntry<>(node.key, node.value));
+        }
+        return Collections.unmodifiableSet(set);
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return hash.containsKey(key);
+        return data.containsKey(key);
     }
 
-    @Override
-    public boolean containsValue(Object value) {
-        return hash.containsValue(value);
+    private void notifyRemoval(List<Node<K, V>> evicted) {
+        for (Node<K, V> node : evicted) {
+            afterEntryRemove(node.key, node.value);
+        }
     }
 
-    @Override
-    public int hashCode() {
-        return hash.hashCode();
+    private void afterRead(Node<K, V> node) {
+        int probe = (int) (Thread.currentThread().getId() * 0x9E3779B9L) >>> 16;
+        ReadBuffer<K, V> buffer = readBuffers[probe & (readBuffers.length - 1)];
+        if (buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj)
-            return true;
-        if (!super.equals(obj))
-            return false;
-        if (getClass() != obj.getClass())
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (!node.isAlive()) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.segment == Segment.WINDOW) {
+            window.moveToBack(node);
+        } else if (node.segment == Segment.PROBATION) {
+            // Promote to the protected segment and demote the overflow of the protected segment
+            probation.remove(node);
+            node.segment = Segment.PROTECTED;
+            protectedSegment.addLast(node);
+            protectedBytes += node.weight;
+            while (protectedBytes > maxProtected) {
+                Node<K, V> demoted = protectedSegment.pollFirst();
+                if (demoted == null) {
+                    break;
+                }
+                protectedBytes -= demoted.weight;
+                demoted.segment = Segment.PROBATION;
+                probation.addLast(demoted);
+            }
+        } else if (node.segment == Segment.PROTECTED) {
+            protectedSegment.moveToBack(node);
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.segment == Segment.WINDOW) {
+            window.remove(node);
+            windowBytes -= node.weight;
+        } else if (node.segment == Segment.PROBATION) {
+            probation.remove(node);
+        } else if (node.segment == Segment.PROTECTED) {
+            protectedSegment.remove(node);
+            protectedBytes -= node.weight;
+        }
+        if (node.segment != Segment.DEAD) {
+            useNativeMemory.addAndGet(-node.weight);
+        }
+        node.segment = Segment.DEAD;
+    }
+
+    private void evictEntries(long maxBytes, Node<K, V> pinned, List<Node<K, V>> evicted) {
+        // Candidates are the entries leaving the window, they must be admitted in the main space
+        Deque<Node<K, V>> candidates = new ArrayDeque<>();
+        while (windowBytes > maxWindow) {
+            Node<K, V> first = window.peekFirst();
+            if (first == null || first == pinned) {
+                break;
+            }
+            window.remove(first);
+            windowBytes -= first.weight;
+            first.segment = Segment.PROBATION;
+            probation.addLast(first);
+            candidates.addLast(first);
+        }
+
+        while (useNativeMemory.get() > maxBytes) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedSegment.peekFirst();
+            }
+            if (victim == null) {
+                victim = window.peekFirst();
+                if (victim == pinned) {
+                    victim = window.peekNext(victim);
+                }
+            }
+            if (victim == null) {
+                break;
+            }
+
+            Node<K, V> candidate = candidates.peekLast();
+            while (candidate != null && candidate.segment != Segment.PROBATION) {
+                candidates.pollLast();
+                candidate = candidates.peekLast();
+            }
+
+            Node<K, V> evict = victim;
+            if (candidate != null && candidate != victim
+                && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                // Reject the candidate when it is not more popular than the victim
+                evict = candidate;
+            }
+            if (evict == candidate) {
+                candidates.pollLast();
+            }
+            data.remove(evict.key, evict);
+            unlink(evict);
+            evicted.add(evict);
+        }
+    }
+
+    enum Segment {
+        WINDOW, PROBATION, PROTECTED, DEAD
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        // Guarded by the eviction lock
+        Segment segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        boolean isAlive() {
+            return segment != null && segment != Segment.DEAD;
+        }
+    }
+
+    /**
+     * Doubly-linked list using the links of the nodes, the first element is the least recently used.
+     */
+    static final class AccessDeque<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekNext(Node<K, V> node) {
+            return node == null ? null : node.next;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> prev = node.prev;
+            Node<K, V> next = node.next;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            Node<K, V> node = first;
+            while (node != null) {
+                Node<K, V> next = node.next;
+                node.prev = null;
+                node.next = null;
+                node.segment = Segment.DEAD;
+                node = next;
+            }
+            first = null;
+            last = null;
+        }
+    }
+
+    /**
+     * Lossy ring buffer recording the accesses of the readers. When full, the new accesses are dropped which only
+     * degrades the accuracy of the policy.
+     */
+    static final class ReadBuffer<K, V extends PlanarImage> {
+        private final AtomicReferenceArray<Node<K, V>> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCount = new AtomicLong();
+        private volatile long readCount;
+
+        /**
+         * @return true when the buffer should be drained
+         */
+        boolean offer(Node<K, V> node) {
+            long head = readCount;
+            long tail = writeCount.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                return true;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+                return size + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+            }
             return false;
-        @SuppressWarnings("rawtypes")
-        NativeCache other = (NativeCache) obj;
-        return hash.equals(other.hash);
+        }
+
+        // Must be called with the eviction lock
+        void drainTo(NativeCache<K, V> cache) {
+            long head = readCount;
+            long tail = writeCount.get();
+            while (head < tail) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node<K, V> node = buffer.get(index);
+                if (node == null) {
+                    // Not yet published by the writer
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+                head++;
+            }
+            readCount = head;
+        }
     }
-    
-    
 }
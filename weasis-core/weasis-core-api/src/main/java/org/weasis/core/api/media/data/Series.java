@@ -19,12 +19,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.SwingUtilities;
 
@@ -48,7 +48,9 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
 
     private PropertyChangeSupport propertyChange = null;
     protected final List<E> medias;
-    protected final Map<Comparator<E>, List<E>> sortedMedias = new HashMap<>(6);
+    // Sorted views of medias, the new medias are merged in batch at the next read
+    protected final Map<Comparator<E>, SortedView<E>> sortedMedias = new ConcurrentHashMap<>(6);
+    private final Object sortedMediasLock = new Object();
     protected final Comparator<E> mediaOrder;
     protected SeriesImporter seriesLoader;
     private long fileSize;
@@ -88,8 +90,95 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     }
 
     protected void resetSortedMediasMap() {
-        if (!sortedMedias.isEmpty()) {
-            sortedMedias.clear();
+        synchronized (sortedMediasLock) {
+            if (!sortedMedias.isEmpty()) {
+                sortedMedias.clear();
+            }
+        }
+    }
+
+    /**
+     * Medias sorted by a comparator. The sorted list is published as an immutable snapshot, so it is read without lock.
+     * The medias added since the last read are pending and merged at the next read (one linear merge for a batch of
+     * insertions instead of one array copy per insertion).
+     */
+    protected static final class SortedView<E> {
+        private final Comparator<E> comparator;
+        private final List<E> pending = new ArrayList<>();
+        // Size of the pending list, read without lock
+        private volatile int pendingSize;
+        private volatile List<E> sorted;
+
+        SortedView(Comparator<E> comparator, List<E> medias) {
+            this.comparator = comparator;
+            List<E> list = new ArrayList<>(medias);
+            Collections.sort(list, comparator);
+            this.sorted = list;
+        }
+
+        /**
+         * Must be called with the sortedMediasLock.
+         */
+        void add(E media) {
+            pending.add(media);
+            pendingSize = pending.size();
+        }
+
+        /**
+         * Must be called with the sortedMediasLock.
+         */
+        void remove(E media) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (pending.get(i) == media) {
+                    pending.remove(i);
+                    pendingSize = pending.size();
+                    return;
+                }
+            }
+            List<E> list = sorted;
+            int index = indexOfSorted(list, media, comparator);
+            if (index >= 0) {
+                List<E> copy = new ArrayList<>(list);
+                copy.remove(index);
+                sorted = copy;
+            }
+        }
+
+        boolean hasPending() {
+            return pendingSize > 0;
+        }
+
+        /**
+         * Merges the pending medias after the equal elements, in their insertion order. Must be called with the
+         * sortedMediasLock.
+         */
+        List<E> merge() {
+            if (pending.isEmpty()) {
+                return sorted;
+            }
+            // Stable sort: the equal elements keep the insertion order
+            pending.sort(comparator);
+            List<E> list = sorted;
+            List<E> merged = new ArrayList<>(list.size() + pending.size());
+            int i = 0;
+            for (E media : pending) {
+                int index = insertionIndex(list, media, comparator);
+                while (i < index) {
+                    merged.add(list.get(i++));
+                }
+                merged.add(media);
+            }
+            while (i < list.size()) {
+                merged.add(list.get(i++));
+            }
+            pending.clear();
+            sorted = merged;
+            pendingSize = 0;
+            return merged;
+        }
+
+        List<E> getSorted() {
+            return sorted;
         }
     }
 
@@ -97,37 +186,113 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     public List<E> getSortedMedias(Comparator<E> comparator) {
         // Do not sort when it is the default order.
         if (comparator != null && !comparator.equals(mediaOrder)) {
-            return sortedMedias.computeIfAbsent(comparator, k -> {
-                List<E> sorted = new ArrayList<>(medias);
-                Collections.sort(sorted, comparator);
-                return sorted;
-            });
+            SortedView<E> view = sortedMedias.get(comparator);
+            if (view == null || view.hasPending()) {
+                synchronized (sortedMediasLock) {
+                    return sortedMedias.computeIfAbsent(comparator, k -> new SortedView<>(k, medias)).merge();
+                }
+            }
+            return view.getSorted();
         }
         return medias;
     }
 
+    /**
+     * Adds the media to all the sorted views. Must be called with the sortedMediasLock.
+     */
+    private void insertInSortedMedias(E media) {
+        for (SortedView<E> view : sortedMedias.values()) {
+            view.add(media);
+        }
+    }
+
+    /**
+     * @return the index after the last element equal to the media for keeping the insertion order
+     */
+    static <E> int insertionIndex(List<E> list, E media, Comparator<E> comparator) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(list.get(mid), media) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the media in the sorted list or -1
+     */
+    static <E> int indexOfSorted(List<E> list, E media, Comparator<E> comparator) {
+        int index = Collections.binarySearch(list, media, comparator);
+        if (index >= 0) {
+            // Search the same instance among the equal elements
+            for (int i = index; i >= 0 && comparator.compare(list.get(i), media) == 0; i--) {
+                if (list.get(i) == media) {
+                    return i;
+                }
+            }
+            for (int i = index + 1; i < list.size() && comparator.compare(list.get(i), media) == 0; i++) {
+                if (list.get(i) == media) {
+                    return i;
+                }
+            }
+        }
+        // The sorting values have been modified after insertion
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == media) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public void add(E media) {
-        medias.add(media);
-        resetSortedMediasMap();
+        synchronized (sortedMediasLock) {
+            medias.add(media);
+            insertInSortedMedias(media);
+        }
     }
 
     @Override
     public void add(int index, E media) {
-        medias.add(index, media);
-        resetSortedMediasMap();
+        synchronized (sortedMediasLock) {
+            medias.add(index, media);
+            insertInSortedMedias(media);
+        }
     }
 
     @Override
     public void addAll(Collection<? extends E> c) {
-        medias.addAll(c);
-        resetSortedMediasMap();
+        synchronized (sortedMediasLock) {
+            medias.addAll(c);
+            resetSortedMediasMap();
+        }
     }
 
     @Override
     public void addAll(int index, Collection<? extends E> c) {
-        medias.addAll(index, c);
-        resetSortedMediasMap();
+        synchronized (sortedMediasLock) {
+            medias.addAll(index, c);
+            resetSortedMediasMap();
+        }
+    }
+
+    @Override
+    public boolean remove(E media) {
+        synchronized (sortedMediasLock) {
+            boolean removed = medias.remove(media);
+            if (removed) {
+                for (SortedView<E> view : sortedMedias.values()) {
+                    view.remove(media);
+                }
+            }
+            return removed;
+        }
     }
 
     @Override
@@ -198,6 +363,32 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
         return -1;
     }
 
+    /**
+     * Returns the index of the media in the list sorted by the comparator. The position is found by binary search when
+     * the order of the list is known.
+     *
+     * @return the index of the media or -1
+     */
+    protected int indexOfSortedMedia(E media, Comparator<E> sort) {
+        if (media == null) {
+            return -1;
+        }
+        List<E> sortedList = getSortedMedias(sort);
+        Comparator<E> comparator = sort == null ? mediaOrder : sort;
+        // The list of the medias in the default order is synchronized on itself, the sorted views are immutable
+        synchronized (sortedList) {
+            if (comparator == null) {
+                for (int i = 0; i < sortedList.size(); i++) {
+                    if (sortedList.get(i) == media) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            return indexOfSorted(sortedList, media, comparator);
+        }
+    }
+
     @Override
     public final Iterable<E> getMedias(Filter<E> filter, Comparator<E> sort) {
         List<E> sortedList = getSortedMedias(sort);
@@ -245,8 +436,10 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
             m.dispose();
         });
 
-        medias.clear();
-        resetSortedMediasMap();
+        synchronized (sortedMediasLock) {
+            medias.clear();
+            resetSortedMediasMap();
+        }
 
         Optional.ofNullable((Thumbnail) getTagValue(TagW.Thumbnail)).ifPresent(t -> t.dispose());
         if (propertyChange != null) {
@@ -14,16 +14,21 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ToLongFunction;
 
 public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
     private static final long serialVersionUID = -1374929894464993435L;
 
-    /** The internal HashMap that will hold the SoftReference. */
-    protected final transient Map<K, SoftReference<V>> hash = new HashMap<>();
+    /** The internal map that will hold the SoftReference, in access order (for reclaiming the eldest entries). */
+    protected final transient Map<K, SoftReference<V>> hash = new LinkedHashMap<>(16, 0.75f, true);
 
     protected final transient Map<SoftReference<V>, K> reverseLookup = new HashMap<>();
 
@@ -31,7 +36,7 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
     private final transient ReferenceQueue<V> queue = new ReferenceQueue<>();
 
     @Override
-    public V get(Object key) {
+    public synchronized V get(Object key) {
         expungeStaleEntries();
         V result = null;
         // We get the SoftReference represented by that key
@@ -48,14 +53,14 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
         return result;
     }
 
-    public void removeElement(Reference<? extends V> soft) {
+    public synchronized void removeElement(Reference<? extends V> soft) {
         K key = reverseLookup.remove(soft);
         if (key != null) {
             hash.remove(key);
         }
     }
 
-    public void expungeStaleEntries() {
+    public synchronized void expungeStaleEntries() {
         Reference<? extends V> sv;
         while ((sv = queue.poll()) != null) {
             removeElement(sv);
@@ -63,7 +68,7 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
     }
 
     @Override
-    public V put(K key, V value) {
+    public synchronized V put(K key, V value) {
         expungeStaleEntries();
         SoftReference<V> softRef = new SoftReference<>(value, queue);
         reverseLookup.put(softRef, key);
@@ -76,7 +81,7 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
     }
 
     @Override
-    public V remove(Object key) {
+    public synchronized V remove(Object key) {
         expungeStaleEntries();
         SoftReference<V> result = hash.remove(key);
         if (result == null) {
@@ -87,23 +92,69 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         hash.clear();
         reverseLookup.clear();
     }
 
     @Override
-    public int size() {
+    public synchronized int size() {
         expungeStaleEntries();
         return hash.size();
     }
 
+    /**
+     * @param weigher
+     *            the function returning the number of bytes of a value
+     * @return the number of bytes of the values not yet garbage collected
+     */
+    public synchronized long getWeight(ToLongFunction<? super V> weigher) {
+        expungeStaleEntries();
+        long weight = 0;
+        for (SoftReference<V> ref : hash.values()) {
+            V value = ref.get();
+            if (value != null) {
+                weight += weigher.applyAsLong(value);
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Removes the least recently used entries.
+     *
+     * @param bytes
+     *            the number of bytes to free
+     * @param weigher
+     *            the function returning the number of bytes of a value
+     * @return the number of bytes freed
+     */
+    public synchronized long reclaim(long bytes, ToLongFunction<? super V> weigher) {
+        expungeStaleEntries();
+        List<SoftReference<V>> removed = new ArrayList<>();
+        long freed = 0;
+        Iterator<SoftReference<V>> it = hash.values().iterator();
+        while (freed < bytes && it.hasNext()) {
+            SoftReference<V> ref = it.next();
+            V value = ref.get();
+            if (value != null) {
+                freed += weigher.applyAsLong(value);
+            }
+            removed.add(ref);
+        }
+        for (SoftReference<V> ref : removed) {
+            // Call removeElement() which can be overridden for releasing the key
+            removeElement(ref);
+        }
+        return freed;
+    }
+
     /**
      * Returns a copy of the key/values in the map at the point of calling. However, setValue still sets the value in
      * the actual SoftHashMap.
      */
     @Override
-    public Set<Entry<K, V>> entrySet() {
+    public synchronized Set<Entry<K, V>> entrySet() {
         expungeStaleEntries();
         Set<Entry<K, V>> result = new LinkedHashSet<>();
         for (final Entry<K, SoftReference<V>> entry : hash.entrySet()) {
@@ -133,7 +184,7 @@ public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable
     }
 
     @Override
-    public boolean containsKey(Object key) {
+    public synchronized boolean containsKey(Object key) {
         expungeStaleEntries();
         SoftReference<V> softRef = hash.get(key);
         if (softRef != null) {
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.weasis.core.api.media.data.TagSchema.Slot;
+
+/**
+ * Compact map of tag values. The values are stored in a flat array indexed by the slots of a shared
+ * {@link TagSchema}, without entry objects. Immutable values equal to a recent value of the same tag are shared
+ * between the maps.
+ *
+ * <p>
+ * Like HashMap, a tag can be set with a null value. Null keys are not permitted. This class is not thread-safe.
+ */
+public class TagMap extends AbstractMap<TagW, Object> {
+
+    // Tag set with a null value
+    private static final Object NULL_VALUE = new Object();
+    private static final Object[] EMPTY = {};
+
+    private final TagSchema schema;
+    private Object[] values = EMPTY;
+    private int size;
+    private transient Set<Entry<TagW, Object>> entrySet;
+
+    public TagMap() {
+        this(TagSchema.MEDIA);
+    }
+
+    public TagMap(TagSchema schema) {
+        this.schema = Objects.requireNonNull(schema);
+    }
+
+    /**
+     * Creates a copy of the map. The schema of a TagMap is kept, otherwise the media schema is used.
+     */
+    public TagMap(Map<? extends TagW, ?> map) {
+        this(map instanceof TagMap ? ((TagMap) map).schema : TagSchema.MEDIA);
+        if (map instanceof TagMap) {
+            TagMap m = (TagMap) map;
+            this.values = m.values.length == 0 ? EMPTY : m.values.clone();
+            this.size = m.size;
+        } else {
+            putAll(map);
+        }
+    }
+
+    public TagSchema getSchema() {
+        return schema;
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL_VALUE ? null : value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Slot slot = schema.getSlot(key);
+        return slot != null && slot.index < values.length && values[slot.index] != null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Slot slot = schema.getSlot(key);
+        if (slot == null || slot.index >= values.length) {
+            return null;
+        }
+        return unmask(values[slot.index]);
+    }
+
+    @Override
+    public Object put(TagW key, Object value) {
+        Slot slot = schema.getOrCreateSlot(Objects.requireNonNull(key));
+        int index = slot.index;
+        if (index >= values.length) {
+            // Grow progressively: the maps of the same schema use the slots in the same order
+            int length = Math.max(index + 1, Math.min(schema.size(), values.length + (values.length >> 1) + 4));
+            values = Arrays.copyOf(values, length);
+        }
+        Object old = values[index];
+        values[index] = value == null ? NULL_VALUE : slot.intern(value);
+        if (old == null) {
+            size++;
+        }
+        return unmask(old);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Slot slot = schema.getSlot(key);
+        if (slot == null || slot.index >= values.length) {
+            return null;
+        }
+        Object old = values[slot.index];
+        if (old != null) {
+            values[slot.index] = null;
+            size--;
+        }
+        return unmask(old);
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        Set<Entry<TagW, Object>> es = entrySet;
+        if (es == null) {
+            es = new EntrySet();
+            entrySet = es;
+        }
+        return es;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<TagW, Object>> {
+
+        @Override
+        public Iterator<Entry<TagW, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            TagMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<TagW, Object>> {
+        private final Object[] array = values;
+        private int next = -1;
+        private int current = -1;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < array.length && array[next] == null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < array.length;
+        }
+
+        @Override
+        public Entry<TagW, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            advance();
+            return new TagEntry(schema.getSlot(current));
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            TagMap.this.remove(schema.getSlot(current).tag);
+            current = -1;
+        }
+    }
+
+    private final class TagEntry extends SimpleEntry<TagW, Object> {
+        private static final long serialVersionUID = 1L;
+
+        TagEntry(Slot slot) {
+            super(slot.tag, unmask(values[slot.index]));
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
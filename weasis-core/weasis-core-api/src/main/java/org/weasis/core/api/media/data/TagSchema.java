@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Layout shared by the {@link TagMap} of the same kind of objects: each tag has a fixed slot in the value array of the
+ * maps. The slots are assigned in the order the tags are first set, so the objects carrying the same tags (e.g. the
+ * instances of a series) have dense value arrays.
+ *
+ * <p>
+ * Each slot also keeps the last distinct values stored in it. An equal immutable value set in another map is replaced
+ * by the kept instance, so the values identical for all the instances of a series are stored only once.
+ */
+public final class TagSchema {
+
+    /** Schema of the media elements and their readers */
+    public static final TagSchema MEDIA = new TagSchema("media"); //$NON-NLS-1$
+    /** Schema of the patient, study and series nodes */
+    public static final TagSchema GROUP = new TagSchema("group"); //$NON-NLS-1$
+
+    private static final int INTERN_SIZE = 4;
+
+    private final String name;
+    private final ConcurrentHashMap<TagW, Slot> slots = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Slot> slotList = new CopyOnWriteArrayList<>();
+
+    public TagSchema(String name) {
+        this.name = Objects.requireNonNull(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the slot of the tag or null when the tag has never been set in a map of this schema
+     */
+    Slot getSlot(Object tag) {
+        return tag instanceof TagW ? slots.get(tag) : null;
+    }
+
+    Slot getOrCreateSlot(TagW tag) {
+        Slot slot = slots.get(tag);
+        if (slot == null) {
+            synchronized (slotList) {
+                slot = slots.get(tag);
+                if (slot == null) {
+                    slot = new Slot(tag, slotList.size());
+                    slotList.add(slot);
+                    slots.put(tag, slot);
+                }
+            }
+        }
+        return slot;
+    }
+
+    Slot getSlot(int index) {
+        return slotList.get(index);
+    }
+
+    public int size() {
+        return slotList.size();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    static final class Slot {
+        final TagW tag;
+        final int index;
+        private final Object[] recent = new Object[INTERN_SIZE];
+        private int next;
+
+        Slot(TagW tag, int index) {
+            this.tag = tag;
+            this.index = index;
+        }
+
+        /**
+         * @return the instance of an equal value already stored in this slot, or the value itself
+         */
+        Object intern(Object value) {
+            if (!isInternable(value)) {
+                return value;
+            }
+            synchronized (recent) {
+                for (Object v : recent) {
+                    if (value.equals(v)) {
+                        return v;
+                    }
+                }
+                recent[next] = value;
+                next = (next + 1) % INTERN_SIZE;
+            }
+            return value;
+        }
+
+        private static boolean isInternable(Object value) {
+            // Only immutable values can be shared
+            return value instanceof String || value instanceof Integer || value instanceof Double
+                || value instanceof Float || value instanceof Long || value instanceof Boolean
+                || value instanceof LocalDate || value instanceof LocalTime || value instanceof LocalDateTime;
+        }
+    }
+}
@@ -23,9 +23,7 @@ import java.awt.geom.AffineTransform;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.Icon;
@@ -42,6 +40,9 @@ import org.weasis.core.api.Messages;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.media.MimeInspector;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.util.FileUtil;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.ThreadUtil;
@@ -55,7 +56,11 @@ public class Thumbnail extends JLabel implements Thumbnailable {
 
     public static final File THUMBNAIL_CACHE_DIR =
         AppProperties.buildAccessibleTempDirectory(AppProperties.FILE_CACHE_DIR.getName(), "thumb"); //$NON-NLS-1$
-    public static final ExecutorService THUMB_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Thumbnail Loader"); //$NON-NLS-1$
+    public static final ThumbnailStore THUMBNAIL_STORE =
+        new ThumbnailStore(new File(AppProperties.WEASIS_PATH, "cache" + File.separator + "thumbnails"), //$NON-NLS-1$ //$NON-NLS-2$
+            BundleTools.SYSTEM_PREFERENCES.getLongProperty("weasis.thumbnail.store.size", 256_000_000L)); //$NON-NLS-1$
+    // Own pool: the thumbnails are decoded at a reduced resolution without using the image loader of the viewers
+    public static final ExecutorService THUMB_LOADER = ThreadUtil.buildNewFixedThreadExecutor(2, "Thumbnail Loader"); //$NON-NLS-1$
 
     public static final RenderingHints DownScaleQualityHints =
         new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
@@ -75,6 +80,12 @@ public class Thumbnail extends JLabel implements Thumbnailable {
             }
         };
 
+    static {
+        // Rebuilt from the thumbnail store or decoded at a reduced resolution
+        MemoryGovernor.getInstance().register("Thumbnails", Memory.NATIVE, //$NON-NLS-1$
+            Reclaimable.of(mCache::getUsedNativeMemory, mCache::reclaim, mCache.getMaxNativeMemory()), () -> 1.0);
+    }
+
     protected volatile boolean readable = true;
     protected AtomicBoolean loading = new AtomicBoolean(false);
     protected File thumbnailPath = null;
@@ -249,14 +260,30 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                     }
                 }
             }
+            // Only the thumbnails with the default rendering are stored
+            String key = opManager == null && media instanceof ImageElement
+                ? ThumbnailStore.buildKey(media, "size=" + MAX_SIZE) : null; //$NON-NLS-1$
+            if (noPath && key != null) {
+                File stored = THUMBNAIL_STORE.get(key);
+                if (stored != null) {
+                    media.setTag(TagW.ThumbnailPath, stored.getPath());
+                    thumbnailPath = stored;
+                    file = stored;
+                    noPath = false;
+                }
+            }
             if (noPath) {
                 if (media instanceof ImageElement) {
                     final ImageElement image = (ImageElement) media;
-                    PlanarImage imgPl = image.getImage(opManager);
-                    if (imgPl != null) {
-                        PlanarImage img = image.getRenderedImage(imgPl);
+                    // Read at a reduced resolution when possible, without loading the full image in the cache
+                    PlanarImage img = opManager == null ? image.getRenderedPreview(MAX_SIZE) : null;
+                    if (img == null) {
+                        PlanarImage imgPl = image.getImage(opManager);
+                        img = imgPl == null ? null : image.getRenderedImage(imgPl);
+                    }
+                    if (img != null) {
                         final PlanarImage thumb = createThumbnail(img);
-                        if (thumb != null) {
+                        if (thumb != null && key == null) {
                             try {
                                 file = File.createTempFile("tumb_", ".jpg", Thumbnail.THUMBNAIL_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
                             } catch (IOException e) {
@@ -264,7 +291,15 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                             }
                         }
                         try {
-                            if (thumb != null && file != null) {
+                            if (thumb != null && key != null) {
+                                // Written in the persistent store, reused by the next sessions
+                                file = THUMBNAIL_STORE.put(key, thumb);
+                                if (file != null) {
+                                    image.setTag(TagW.ThumbnailPath, file.getPath());
+                                    thumbnailPath = file;
+                                    return;
+                                }
+                            } else if (thumb != null && file != null) {
                                 MatOfInt map = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 80);
                                 if (ImageProcessor.writeImage(thumb.toMat(), file, map)) {
                                     /*
@@ -298,12 +333,10 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                     }
                 }
             } else {
-                Load ref = new Load(file);
-                // loading images sequentially, only one thread pool
-                Future<PlanarImage> future = ImageElement.IMAGE_LOADER.submit(ref);
+                // Read in the thumbnail thread, not competing with the images of the viewers
                 PlanarImage thumb = null;
                 try {
-                    PlanarImage img = future.get();
+                    PlanarImage img = new Load(file).call();
                     if (img == null) {
                         thumb = null;
                     } else {
@@ -317,12 +350,7 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                         }
                     }
 
-                } catch (InterruptedException e) {
-                    // Re-assert the thread's interrupted status
-                    Thread.currentThread().interrupt();
-                    // We don't need the result, so cancel the task too
-                    future.cancel(true);
-                } catch (ExecutionException e) {
+                } catch (Exception e) {
                     LOGGER.error("Cannot read thumbnail pixel data!: {}", file, e);//$NON-NLS-1$
                 }
                 if ((thumb == null && media != null) || (thumb != null && thumb.width() <= 0)) {
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.File;
+
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.ImageProcessor;
+
+/**
+ * Persistent store of the thumbnails. A thumbnail is identified by the image and the rendering parameters.
+ *
+ * @see FileStore
+ */
+public final class ThumbnailStore extends FileStore {
+
+    public ThumbnailStore(File directory, long maxSize) {
+        super(directory, maxSize, ".jpg"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes the thumbnail in JPEG format.
+     *
+     * @return the file of the thumbnail or null when it cannot be written
+     */
+    public File put(String key, PlanarImage thumbnail) {
+        if (thumbnail == null) {
+            return null;
+        }
+        MatOfInt map = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 80);
+        return put(key, f -> ImageProcessor.writeImage(thumbnail.toMat(), f, map));
+    }
+}
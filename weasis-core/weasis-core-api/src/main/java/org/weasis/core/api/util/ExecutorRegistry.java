@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the thread pools of the application. The pools are named, bounded and instrumented (see
+ * {@link MonitoredExecutorMXBean}); their metrics are published in JMX.
+ *
+ * <p>
+ * The pools of the same kind share a budget: the number of processors for the CPU-bound tasks and a larger number for
+ * the IO-bound tasks. The budget is the maximum number of tasks of this kind running at the same time in all the
+ * pools. An idle thread takes a slot of the budget before taking a task, so the tasks wait in the queue of their pool
+ * (where they keep their order and can be removed) until a slot is free. A task waiting for other tasks of the budget
+ * must give back its slot while waiting (see {@link MonitoredExecutor#releaseBudget()}).
+ *
+ * <p>
+ * A pool stays registered until it is terminated, so a pool created for an object (e.g. a view) must be shut down with
+ * it; otherwise use a shared pool (see {@link #getSharedExecutor(String, int, Kind)}).
+ */
+public final class ExecutorRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorRegistry.class);
+
+    public enum Kind {
+        /** Tasks using mainly the processor (decoding, rendering...) */
+        CPU,
+        /** Tasks waiting mainly for the disk or the network */
+        IO
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+    private static final String JMX_DOMAIN = "weasis"; //$NON-NLS-1$
+
+    // JVM properties: the pools can be created before the preferences are loaded
+    private static final ExecutorRegistry INSTANCE = new ExecutorRegistry(
+        Integer.getInteger("weasis.executor.cpu.budget", Runtime.getRuntime().availableProcessors()), //$NON-NLS-1$
+        Integer.getInteger("weasis.executor.io.budget", 16), //$NON-NLS-1$
+        true);
+
+    private final Map<String, MonitoredExecutor> executors = new ConcurrentHashMap<>();
+    // Pools of getSharedExecutor() by requested name, the registered name can have a suffix
+    private final Map<String, MonitoredExecutor> sharedExecutors = new HashMap<>();
+    private final int cpuBudget;
+    private final int ioBudget;
+    // Slots of the budgets shared by all the pools of the same kind
+    private final Semaphore cpuPermits;
+    private final Semaphore ioPermits;
+    private final boolean jmx;
+
+    ExecutorRegistry(int cpuBudget, int ioBudget, boolean jmx) {
+        this.cpuBudget = Math.max(1, cpuBudget);
+        this.ioBudget = Math.max(1, ioBudget);
+        this.cpuPermits = new Semaphore(this.cpuBudget);
+        this.ioPermits = new Semaphore(this.ioBudget);
+        this.jmx = jmx;
+    }
+
+    /**
+     * The registry is also registered as an OSGi service by the core API bundle for the modules looking up the
+     * services. The static accessor is required for the pools created in static initializers, before the bundles are
+     * started, and both return the same instance, so the budgets are shared.
+     *
+     * @return the registry of the application
+     */
+    public static ExecutorRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the maximum number of tasks of this kind running at the same time in all the pools
+     */
+    public int getBudget(Kind kind) {
+        return kind == Kind.IO ? ioBudget : cpuBudget;
+    }
+
+    /**
+     * @return the number of tasks of this kind running in all the pools
+     */
+    public int getRunningTasks(Kind kind) {
+        return getBudget(kind) - getPermits(kind).availablePermits();
+    }
+
+    Semaphore getPermits(Kind kind) {
+        return kind == Kind.IO ? ioPermits : cpuPermits;
+    }
+
+    /**
+     * Creates a pool of at most nThreads threads operating off an unbounded queue. The idle threads are stopped after
+     * a delay, so a pool used occasionally does not keep threads.
+     *
+     * @param name
+     *            the name of the pool, used as prefix of the thread names
+     * @param nThreads
+     *            the maximum number of threads, limited by the budget of the kind
+     * @param kind
+     *            the kind of concurrency budget
+     * @return the new pool
+     */
+    public ExecutorService newFixedExecutor(String name, int nThreads, Kind kind) {
+        MonitoredExecutor executor = new MonitoredExecutor(this, name, kind, nThreads, nThreads, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingDeque<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the pool shared under this name or a new pool when it does not exist or has been shut down
+     * @see #newFixedExecutor(String, int, Kind)
+     */
+    public ExecutorService getSharedExecutor(String name, int nThreads, Kind kind) {
+        synchronized (sharedExecutors) {
+            MonitoredExecutor executor = sharedExecutors.get(name);
+            if (executor == null || executor.isShutdown()) {
+                executor = (MonitoredExecutor) newFixedExecutor(name, nThreads, kind);
+                sharedExecutors.put(name, executor);
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * @return the pools in activity
+     */
+    public List<MonitoredExecutorMXBean> getExecutors() {
+        return new ArrayList<>(executors.values());
+    }
+
+    /**
+     * @return the name under which the pool is registered (a suffix is added when the name is already used)
+     */
+    String register(String name, MonitoredExecutor executor) {
+        String key = name;
+        synchronized (executors) {
+            for (int i = 2; executors.containsKey(key); i++) {
+                key = name + " #" + i; //$NON-NLS-1$
+            }
+            executors.put(key, executor);
+        }
+        if (jmx) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(executor, getObjectName(key));
+            } catch (JMException | RuntimeException e) {
+                LOGGER.debug("Cannot register the executor {} in JMX", key, e); //$NON-NLS-1$
+            }
+        }
+        return key;
+    }
+
+    void unregister(String name, MonitoredExecutor executor) {
+        if (executors.remove(name, executor) && jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName(name));
+            } catch (JMException | RuntimeException e) {
+                LOGGER.debug("Cannot unregister the executor {} from JMX", name, e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static ObjectName getObjectName(String name) throws JMException {
+        return ObjectName.getInstance(JMX_DOMAIN + ":type=Executor,name=" + ObjectName.quote(name)); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+
+/**
+ * Thread pool which measures the waiting and running times of its tasks. Its number of threads is limited by the
+ * budget of its kind (see {@link ExecutorRegistry#getBudget(Kind)}) and each running task takes a slot of this budget,
+ * which is shared by all the pools of the same kind. The tasks are always queued: a thread takes a task only when it
+ * has a slot.
+ *
+ * @see ExecutorRegistry
+ */
+public class MonitoredExecutor extends ThreadPoolExecutor implements MonitoredExecutorMXBean {
+    // Slot of the budget held by the task running in the current thread
+    private static final ThreadLocal<Semaphore> HELD_PERMIT = new ThreadLocal<>();
+
+    private final ExecutorRegistry registry;
+    private final String name;
+    private final Kind kind;
+
+    // Weak keys: a task removed from the queue is not kept
+    private final Map<Runnable, Long> enqueueTimes = Collections.synchronizedMap(new WeakHashMap<>());
+    private final ThreadLocal<long[]> startTime = ThreadLocal.withInitial(() -> new long[1]);
+    private final AtomicLong executedTasks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    /**
+     * Creates a pool registered in the {@link ExecutorRegistry}.
+     *
+     * @param name
+     *            the name of the pool, used as prefix of the thread names
+     * @param kind
+     *            the kind of concurrency budget, it limits the pool sizes
+     */
+    public MonitoredExecutor(String name, Kind kind, int corePoolSize, int maximumPoolSize, long keepAliveTime,
+        TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        this(ExecutorRegistry.getInstance(), name, kind, corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+    }
+
+    MonitoredExecutor(ExecutorRegistry registry, String name, Kind kind, int corePoolSize, int maximumPoolSize,
+        long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        super(Math.min(corePoolSize, registry.getBudget(kind)), Math.min(maximumPoolSize, registry.getBudget(kind)),
+            keepAliveTime, unit, new BudgetQueue(workQueue, registry.getPermits(kind)),
+            ThreadUtil.getThreadFactory(name));
+        this.registry = registry;
+        this.kind = Objects.requireNonNull(kind);
+        this.name = registry.register(name, this);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getKind() {
+        return kind.name();
+    }
+
+    @Override
+    public int getQueueLength() {
+        return getQueue().size();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command);
+        // Keep the first time when the task is submitted again (e.g. when its priority changes)
+        enqueueTimes.putIfAbsent(command, System.nanoTime());
+        // A new thread would run its first task without taking a slot of the budget: queue the task and start an idle
+        // thread. The default behavior is kept for rejecting a task (a bounded queue runs it outside the budget).
+        if (isShutdown() || !getQueue().offer(command)) {
+            super.execute(command);
+            return;
+        }
+        prestartCoreThread();
+        if (isShutdown() && remove(command)) {
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        long now = System.nanoTime();
+        Long enqueue = enqueueTimes.remove(r);
+        if (enqueue != null) {
+            long wait = now - enqueue;
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+        }
+        startTime.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        totalRunNanos.addAndGet(System.nanoTime() - startTime.get()[0]);
+        executedTasks.incrementAndGet();
+        super.afterExecute(r, t);
+        releaseHeldPermit();
+    }
+
+    private static Semaphore releaseHeldPermit() {
+        Semaphore permit = HELD_PERMIT.get();
+        if (permit != null) {
+            HELD_PERMIT.remove();
+            permit.release();
+        }
+        return permit;
+    }
+
+    /**
+     * Gives back the slot of the budget held by the current task until the returned object is closed. A task waiting
+     * for other tasks of the same budget must call it, otherwise all the slots could be held by waiting tasks:
+     *
+     * <pre>
+     * try (BudgetRelease release = MonitoredExecutor.releaseBudget()) {
+     *     future.get();
+     * }
+     * </pre>
+     *
+     * Nothing is done when the current thread is not running a task of a pool.
+     *
+     * @return the object taking again a slot when closed
+     */
+    public static BudgetRelease releaseBudget() {
+        return new BudgetRelease(releaseHeldPermit());
+    }
+
+    public static final class BudgetRelease implements AutoCloseable {
+        private Semaphore permit;
+
+        private BudgetRelease(Semaphore permit) {
+            this.permit = permit;
+        }
+
+        /**
+         * Waits for a slot of the budget, the task continues as soon as another task of the same kind ends.
+         */
+        @Override
+        public void close() {
+            if (permit != null) {
+                permit.acquireUninterruptibly();
+                HELD_PERMIT.set(permit);
+                permit = null;
+            }
+        }
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        registry.unregister(name, this);
+    }
+
+    @Override
+    public double getAverageWaitMillis() {
+        long n = executedTasks.get();
+        return n == 0 ? 0.0 : totalWaitNanos.get() / (n * 1_000_000.0);
+    }
+
+    @Override
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    @Override
+    public double getAverageRunMillis() {
+        long n = executedTasks.get();
+        return n == 0 ? 0.0 : totalRunNanos.get() / (n * 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%s] threads: %d/%d, active: %d, queued: %d, completed: %d, wait: %.1f ms, run: %.1f ms", //$NON-NLS-1$
+            name, kind, getPoolSize(), getMaximumPoolSize(), getActiveCount(), getQueueLength(),
+            getCompletedTaskCount(), getAverageWaitMillis(), getAverageRunMillis());
+    }
+
+    /**
+     * Queue of a pool which gives a task to a thread only with a slot of the budget. Otherwise the task is put back in
+     * the queue, where it keeps its order and can still be removed, and the thread waits for a slot.
+     */
+    private static final class BudgetQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+        private final BlockingQueue<Runnable> queue;
+        private final Semaphore permits;
+
+        BudgetQueue(BlockingQueue<Runnable> queue, Semaphore permits) {
+            this.queue = Objects.requireNonNull(queue);
+            this.permits = Objects.requireNonNull(permits);
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            Runnable task;
+            do {
+                task = hold(queue.take(), Long.MAX_VALUE);
+            } while (task == null);
+            return task;
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (long nanos = unit.toNanos(timeout); nanos > 0; nanos = deadline - System.nanoTime()) {
+                Runnable task = queue.poll(nanos, TimeUnit.NANOSECONDS);
+                if (task == null) {
+                    return null;
+                }
+                task = hold(task, deadline - System.nanoTime());
+                if (task != null) {
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the task to run with a slot of the budget, or null when no task can be run in the delay
+         */
+        private Runnable hold(Runnable task, long nanos) throws InterruptedException {
+            Runnable r = task;
+            if (!permits.tryAcquire()) {
+                if (queue instanceof BlockingDeque) {
+                    ((BlockingDeque<Runnable>) queue).offerFirst(r);
+                } else {
+                    queue.offer(r);
+                }
+                if (!permits.tryAcquire(nanos, TimeUnit.NANOSECONDS)) {
+                    return null;
+                }
+                // The task may have been taken by another thread or removed
+                r = queue.poll();
+                if (r == null) {
+                    permits.release();
+                    return null;
+                }
+            }
+            HELD_PERMIT.set(permits);
+            return r;
+        }
+
+        @Override
+        public boolean offer(Runnable e) {
+            return queue.offer(e);
+        }
+
+        @Override
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.offer(e, timeout, unit);
+        }
+
+        @Override
+        public void put(Runnable e) throws InterruptedException {
+            queue.put(e);
+        }
+
+        @Override
+        public Runnable poll() {
+            return queue.poll();
+        }
+
+        @Override
+        public Runnable peek() {
+            return queue.peek();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        @Override
+        public Iterator<Runnable> iterator() {
+            return queue.iterator();
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return queue.remove(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return queue.contains(o);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return queue.toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+            return queue.toArray(a);
+        }
+
+        @Override
+        public void clear() {
+            queue.clear();
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return queue.remainingCapacity();
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return queue.drainTo(c);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            return queue.drainTo(c, maxElements);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+/**
+ * Metrics of an executor, published in JMX under the domain "weasis".
+ */
+public interface MonitoredExecutorMXBean {
+
+    String getName();
+
+    /**
+     * @return the kind of concurrency budget (CPU or IO)
+     */
+    String getKind();
+
+    int getPoolSize();
+
+    int getMaximumPoolSize();
+
+    int getActiveCount();
+
+    int getQueueLength();
+
+    long getCompletedTaskCount();
+
+    /**
+     * @return the average time in the queue before being executed
+     */
+    double getAverageWaitMillis();
+
+    long getMaxWaitMillis();
+
+    double getAverageRunMillis();
+}
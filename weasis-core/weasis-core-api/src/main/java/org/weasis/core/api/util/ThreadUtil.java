@@ -12,7 +12,11 @@ package org.weasis.core.api.util;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 
 public class ThreadUtil {
 
@@ -21,10 +25,8 @@ public class ThreadUtil {
     }
 
     /**
-     * Creates an Executor that uses a single worker thread operating off an unbounded queue, and uses the provided
-     * ThreadFactory to create a new thread when needed. Unlike the otherwise equivalent
-     * {@code newFixedThreadPool(1, threadFactory)} the returned executor is guaranteed not to be reconfigurable to use
-     * additional threads.
+     * Creates an Executor that uses a single worker thread operating off an unbounded queue. The executor is registered
+     * in the {@link ExecutorRegistry} with the CPU budget.
      *
      * @param name
      *            the name of the new thread
@@ -35,8 +37,21 @@ public class ThreadUtil {
      */
 
     public static final ExecutorService buildNewSingleThreadExecutor(final String name) {
-        return Executors.newSingleThreadExecutor(getThreadFactory(name));
+        return buildNewSingleThreadExecutor(name, Kind.CPU);
+    }
 
+    /**
+     * Creates an Executor that uses a single worker thread operating off an unbounded queue. The executor is registered
+     * in the {@link ExecutorRegistry}.
+     *
+     * @param name
+     *            the name of the new thread
+     * @param kind
+     *            the kind of concurrency budget
+     * @return the newly created single-threaded Executor
+     */
+    public static final ExecutorService buildNewSingleThreadExecutor(final String name, Kind kind) {
+        return new MonitoredExecutor(name, kind, 1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<>());
     }
 
     /**
@@ -45,7 +60,8 @@ public class ThreadUtil {
      * active processing tasks. If additional tasks are submitted when all threads are active, they will wait in the
      * queue until a thread is available. If any thread terminates due to a failure during execution prior to shutdown,
      * a new one will take its place if needed to execute subsequent tasks. The threads in the pool will exist until it
-     * is explicitly {@link ExecutorService#shutdown shutdown}.
+     * is explicitly {@link ExecutorService#shutdown shutdown}. The executor is registered in the {@link ExecutorRegistry}
+     * with the CPU budget.
      *
      * @param nThreads
      *            the number of threads in the pool
@@ -58,8 +74,24 @@ public class ThreadUtil {
      *             if {@code nThreads <= 0}
      */
     public static final ExecutorService buildNewFixedThreadExecutor(int nThreads, final String name) {
-        return Executors.newFixedThreadPool(nThreads, getThreadFactory(name));
+        return buildNewFixedThreadExecutor(nThreads, name, Kind.CPU);
+    }
 
+    /**
+     * Creates a thread pool that reuses a fixed number of threads operating off a shared unbounded queue. The executor
+     * is registered in the {@link ExecutorRegistry}.
+     *
+     * @param nThreads
+     *            the number of threads in the pool
+     * @param name
+     *            the name of the new thread
+     * @param kind
+     *            the kind of concurrency budget
+     * @return the newly created thread pool
+     */
+    public static final ExecutorService buildNewFixedThreadExecutor(int nThreads, final String name, Kind kind) {
+        return new MonitoredExecutor(name, kind, nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingDeque<>());
     }
 
     /**
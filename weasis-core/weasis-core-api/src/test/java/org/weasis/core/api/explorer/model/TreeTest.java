@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.explorer.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TreeTest {
+
+    private static final String ROOT = "root"; //$NON-NLS-1$
+
+    @Test
+    public void testHierarchy() {
+        Tree<String> tree = new Tree<>(ROOT);
+        tree.addLeaf(ROOT, "patient"); //$NON-NLS-1$
+        tree.addLeaf("patient", "study"); //$NON-NLS-1$ //$NON-NLS-2$
+        tree.addLeaf("study", "series1"); //$NON-NLS-1$ //$NON-NLS-2$
+        tree.addLeaf("study", "series2"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        assertThat(tree.getSuccessors("study")).containsExactly("series1", "series2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertThat(tree.getTree("series1").getParent().getHead()).isEqualTo("study"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertThat(tree.getTree("study").getParent().getParent()).isSameAs(tree); //$NON-NLS-1$
+        assertThat(tree.getTree(null)).isNull();
+        assertThat(tree.getSuccessors(null)).isEmpty();
+        tree.removeLeaf(null);
+
+        // Removing a node removes its subtree
+        tree.removeLeaf("study"); //$NON-NLS-1$
+        assertThat(tree.getSuccessors("patient")).isEmpty(); //$NON-NLS-1$
+        assertThat(tree.getTree("series1")).isNull(); //$NON-NLS-1$
+
+        tree.clear();
+        assertThat(tree.getSuccessors(ROOT)).isEmpty();
+        assertThat(tree.getTree(ROOT)).isSameAs(tree);
+    }
+
+    @Test
+    public void testOneWriterManyReaders() throws InterruptedException {
+        Tree<String> tree = new Tree<>(ROOT);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        int nbReaders = 6;
+        CountDownLatch done = new CountDownLatch(nbReaders);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < nbReaders; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        // Same traversal as the explorer: patients, studies and series with their parents
+                        for (String patient : tree.getSuccessors(ROOT)) {
+                            for (String study : tree.getSuccessors(patient)) {
+                                for (String series : tree.getSuccessors(study)) {
+                                    Tree<String> node = tree.getTree(series);
+                                    if (node != null) {
+                                        Tree<String> parent = node.getParent();
+                                        // Null when the series has been removed in the meantime
+                                        if (parent != null) {
+                                            assertThat(parent.getHead()).isEqualTo(study);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                        for (Tree<String> sub : tree.getSubTrees()) {
+                            assertThat(sub.getHead()).startsWith("patient"); //$NON-NLS-1$
+                        }
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            readers.add(t);
+            t.start();
+        }
+
+        for (int p = 0; p < 200; p++) {
+            String patient = "patient" + p; //$NON-NLS-1$
+            tree.addLeaf(ROOT, patient);
+            for (int s = 0; s < 3; s++) {
+                String study = patient + ".study" + s; //$NON-NLS-1$
+                tree.addLeaf(patient, study);
+                for (int k = 0; k < 5; k++) {
+                    tree.addLeaf(study, study + ".series" + k); //$NON-NLS-1$
+                }
+            }
+            if (p % 3 == 0) {
+                tree.removeLeaf("patient" + (p / 2)); //$NON-NLS-1$
+            }
+        }
+        running.set(false);
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(errors).isEmpty();
+        assertThat(reads.get()).isGreaterThan(0L);
+        for (String patient : tree.getSuccessors(ROOT)) {
+            assertThat(tree.getSuccessors(patient)).hasSize(3);
+            for (String study : tree.getSuccessors(patient)) {
+                assertThat(tree.getSuccessors(study)).hasSize(5);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+
+import org.junit.Test;
+
+public class AffineTransformOpTest {
+
+    private static Point2D transform(double[] m, double x, double y) {
+        // OpenCV matrix to Java2D matrix
+        return new AffineTransform(m[0], m[3], m[1], m[4], m[2], m[5]).transform(new Point2D.Double(x, y), null);
+    }
+
+    private static double[] getMatrix(double scale) {
+        // Zoom with a rotation of 90 degrees, a flip and a translation
+        AffineTransform t = AffineTransform.getScaleInstance(-scale, scale);
+        t.rotate(Math.toRadians(90));
+        t.translate(-120.0, 35.5);
+        double[] fmx = new double[6];
+        t.getMatrix(fmx);
+        return new double[] { fmx[0], fmx[2], fmx[4], fmx[1], fmx[3], fmx[5] };
+    }
+
+    @Test
+    public void testRegionMatrix() {
+        double[] matrix = getMatrix(2.5);
+
+        Rectangle region = new Rectangle(192, 64, 512, 320);
+        double[] m = AffineTransformOp.getSourceMatrix(matrix, region, null);
+        // A pixel of the region is displayed at the same position as the pixel of the whole image
+        for (int[] p : new int[][] { { 0, 0 }, { 10, 20 }, { 511, 319 } }) {
+            Point2D expected = transform(matrix, region.x + p[0], region.y + p[1]);
+            Point2D actual = transform(m, p[0], p[1]);
+            assertThat(actual.getX()).isCloseTo(expected.getX(), within(1e-9));
+            assertThat(actual.getY()).isCloseTo(expected.getY(), within(1e-9));
+        }
+        assertThat(AffineTransformOp.getSourceMatrix(matrix, null, null)).isSameAs(matrix);
+        assertThat(AffineTransformOp.getSourceMatrix(matrix, null, 0)).isSameAs(matrix);
+    }
+
+    @Test
+    public void testPyramidLevelMatrix() {
+        double[] matrix = getMatrix(0.2);
+        Rectangle region = new Rectangle(1024, 512, 4096, 2048);
+        int level = 2;
+        double[] m = AffineTransformOp.getSourceMatrix(matrix, region, level);
+        // A pixel of the reduced region corresponds to the pixel (x * 4, y * 4) of the region
+        for (int[] p : new int[][] { { 0, 0 }, { 10, 20 }, { 1023, 511 } }) {
+            Point2D expected = transform(matrix, region.x + p[0] * 4.0, region.y + p[1] * 4.0);
+            Point2D actual = transform(m, p[0], p[1]);
+            assertThat(actual.getX()).isCloseTo(expected.getX(), within(1e-9));
+            assertThat(actual.getY()).isCloseTo(expected.getY(), within(1e-9));
+        }
+    }
+}
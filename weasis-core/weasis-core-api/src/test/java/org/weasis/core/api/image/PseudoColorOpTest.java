@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.core.api.image.op.ByteLut;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageElementTest;
+import org.weasis.core.api.media.data.MediaReader;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.LookupTableCV;
+import org.weasis.opencv.data.PlanarImage;
+
+public class PseudoColorOpTest {
+
+    private static final MediaReader READER = (MediaReader) Proxy.newProxyInstance(
+        PseudoColorOpTest.class.getClassLoader(), new Class<?>[] { MediaReader.class }, (proxy, method, args) -> null);
+
+    private static boolean nativeLibrary;
+
+    @BeforeClass
+    public static void loadNativeLibrary() throws IOException {
+        // The OpenCV library is loaded by its bundle at runtime, the image tests are skipped when it is not available
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            nativeLibrary = true;
+        } catch (UnsatisfiedLinkError e) {
+            nativeLibrary = false;
+        }
+        if (nativeLibrary) {
+            ImageElementTest.setUp();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (nativeLibrary) {
+            ImageElementTest.tearDown();
+        }
+    }
+
+    /**
+     * Image rendered with a lookup table, like a DICOM image with a window/level.
+     */
+    static class LookupImage extends ImageElement {
+
+        LookupImage() {
+            super(READER, 0);
+        }
+
+        @Override
+        public LookupTableCV getDisplayLookup(PlanarImage imageSource, Map<String, Object> params) {
+            int size = CvType.depth(imageSource.type()) == CvType.CV_8U ? 256 : 65536;
+            byte[] values = new byte[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = (byte) Math.min(255, Math.max(0, size == 256 ? (i - 40) * 2 : (i - 1000) / 8));
+            }
+            return new LookupTableCV(values);
+        }
+
+        @Override
+        public PlanarImage getRenderedImage(PlanarImage imageSource, Map<String, Object> params) {
+            return getDisplayLookup(imageSource, params).lookup(imageSource.toMat());
+        }
+    }
+
+    private PseudoColorOp op;
+    private byte[][] colors;
+    private LookupTableCV display;
+
+    @Before
+    public void setUp() {
+        colors = new byte[3][256];
+        for (int i = 0; i < 256; i++) {
+            colors[0][i] = (byte) i;
+            colors[1][i] = (byte) (i * 7);
+            colors[2][i] = (byte) (255 - i / 2);
+        }
+        // Window/level of a signed 12-bit image
+        byte[] values = new byte[4096];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (byte) Math.min(255, Math.max(0, (i - 1000) / 3));
+        }
+        display = new LookupTableCV(values, -2048);
+
+        op = new PseudoColorOp();
+        op.setParam(PseudoColorOp.P_LUT, new ByteLut("test", colors)); //$NON-NLS-1$
+    }
+
+    private void assertColors(LookupTableCV combined, boolean inverse) {
+        assertThat(combined.getNumBands()).isEqualTo(3);
+        assertThat(combined.getOffset()).isEqualTo(-2048);
+        byte[] values = display.getByteData(0);
+        for (int b = 0; b < 3; b++) {
+            byte[] data = combined.getByteData(b);
+            assertThat(data.length).isEqualTo(values.length);
+            for (int i = 0; i < values.length; i++) {
+                int v = values[i] & 0xFF;
+                assertThat(data[i]).isEqualTo(colors[b][inverse ? 255 - v : v]);
+            }
+        }
+    }
+
+    @Test
+    public void testCombinedLookup() {
+        LookupTableCV combined = op.getCombinedLookup(display);
+        assertColors(combined, false);
+        // Same inputs: same table
+        assertThat(op.getCombinedLookup(display)).isSameAs(combined);
+
+        op.setParam(PseudoColorOp.P_LUT_INVERSE, true);
+        assertColors(op.getCombinedLookup(display), true);
+    }
+
+    @Test
+    public void testInverseWithoutLut() {
+        op.setParam(PseudoColorOp.P_LUT, new ByteLut("gray", null)); //$NON-NLS-1$
+        // The operation does not change the image
+        assertThat(op.getCombinedLookup(display)).isNull();
+
+        op.setParam(PseudoColorOp.P_LUT_INVERSE, true);
+        LookupTableCV combined = op.getCombinedLookup(display);
+        assertThat(combined.getNumBands()).isEqualTo(1);
+        byte[] values = display.getByteData(0);
+        byte[] data = combined.getByteData(0);
+        for (int i = 0; i < values.length; i++) {
+            assertThat(data[i] & 0xFF).isEqualTo(255 - (values[i] & 0xFF));
+        }
+    }
+
+    @Test
+    public void testNotCombined() {
+        assertThat(op.getCombinedLookup(null)).isNull();
+        assertThat(op.getCombinedLookup(new LookupTableCV(colors))).isNull();
+        assertThat(op.getCombinedLookup(new LookupTableCV(new short[256], 0, true))).isNull();
+        op.removeParam(PseudoColorOp.P_LUT);
+        assertThat(op.getCombinedLookup(display)).isNull();
+    }
+
+    private static byte[] getPixels(PlanarImage img) {
+        Mat mat = img.toMat();
+        assertThat(mat.depth()).isEqualTo(CvType.CV_8U);
+        byte[] data = new byte[(int) (mat.total() * mat.channels())];
+        mat.get(0, 0, data);
+        return data;
+    }
+
+    /**
+     * The window/level and the pseudo-color combined in a single lookup give the same image as both operations, with
+     * the same order of the color bands.
+     */
+    @Test
+    public void testCombinedLookupImage() throws Exception {
+        assumeTrue(nativeLibrary);
+        Random random = new Random(7);
+        LookupImage element = new LookupImage();
+        ByteLut[] luts = { new ByteLut("test", colors), new ByteLut("gray", null) }; //$NON-NLS-1$ //$NON-NLS-2$
+        for (int type : new int[] { CvType.CV_8UC1, CvType.CV_16UC1 }) {
+            // Not square for checking the layout of the pixels
+            ImageCV source = new ImageCV(48, 64, type);
+            int max = type == CvType.CV_8UC1 ? 256 : 4096;
+            if (type == CvType.CV_8UC1) {
+                byte[] data = new byte[48 * 64];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) random.nextInt(max);
+                }
+                source.put(0, 0, data);
+            } else {
+                short[] data = new short[48 * 64];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (short) random.nextInt(max);
+                }
+                source.put(0, 0, data);
+            }
+
+            for (ByteLut lut : luts) {
+                for (boolean inverse : new boolean[] { false, true }) {
+                    if (lut.getLutTable() == null && !inverse) {
+                        // Nothing to combine
+                        continue;
+                    }
+                    WindowOp window = new WindowOp();
+                    window.setParam(WindowOp.P_IMAGE_ELEMENT, element);
+                    PseudoColorOp color = new PseudoColorOp();
+                    color.setParam(PseudoColorOp.P_LUT, lut);
+                    color.setParam(PseudoColorOp.P_LUT_INVERSE, inverse);
+
+                    SimpleOpManager manager = new SimpleOpManager("test"); //$NON-NLS-1$
+                    manager.addImageOperationAction(window);
+                    manager.addImageOperationAction(color);
+                    manager.setFirstNode(source);
+                    PlanarImage combined = manager.process();
+                    // The window/level image has not been built
+                    assertThat(window.getParam(Param.OUTPUT_IMG)).isNull();
+
+                    WindowOp window2 = new WindowOp();
+                    window2.setParam(WindowOp.P_IMAGE_ELEMENT, element);
+                    window2.setParam(Param.INPUT_IMG, source);
+                    window2.process();
+                    PseudoColorOp color2 = new PseudoColorOp();
+                    color2.setParam(PseudoColorOp.P_LUT, lut);
+                    color2.setParam(PseudoColorOp.P_LUT_INVERSE, inverse);
+                    color2.setParam(Param.INPUT_IMG, window2.getParam(Param.OUTPUT_IMG));
+                    color2.process();
+                    PlanarImage expected = (PlanarImage) color2.getParam(Param.OUTPUT_IMG);
+
+                    assertThat(combined.width()).isEqualTo(expected.width());
+                    assertThat(combined.height()).isEqualTo(expected.height());
+                    assertThat(combined.channels()).isEqualTo(expected.channels());
+                    assertThat(getPixels(combined)).isEqualTo(getPixels(expected));
+                }
+            }
+        }
+    }
+}
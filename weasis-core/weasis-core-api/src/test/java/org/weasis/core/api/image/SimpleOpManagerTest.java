@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.opencv.data.PlanarImage;
+
+public class SimpleOpManagerTest {
+
+    private static final long MB = 1024 * 1024L;
+
+    /**
+     * Operation counting its executions and producing a new image of 1 MB.
+     */
+    static class CountingOp extends AbstractOp {
+        int runs;
+        Object state;
+
+        CountingOp(String name) {
+            setName(name);
+        }
+
+        CountingOp(CountingOp op) {
+            super(op);
+        }
+
+        @Override
+        public CountingOp copy() {
+            return new CountingOp(this);
+        }
+
+        @Override
+        protected Object getExternalState() {
+            return state;
+        }
+
+        @Override
+        public void process() throws Exception {
+            runs++;
+            params.put(Param.OUTPUT_IMG, buildImage(MB));
+        }
+    }
+
+    private SimpleOpManager manager;
+    private CountingOp window;
+    private CountingOp filter;
+    private CountingOp color;
+    private CountingOp zoom;
+
+    @Before
+    public void setUp() {
+        manager = new SimpleOpManager("test"); //$NON-NLS-1$
+        window = new CountingOp("window"); //$NON-NLS-1$
+        filter = new CountingOp("filter"); //$NON-NLS-1$
+        color = new CountingOp("color"); //$NON-NLS-1$
+        zoom = new CountingOp("zoom"); //$NON-NLS-1$
+        manager.addImageOperationAction(window);
+        manager.addImageOperationAction(filter);
+        manager.addImageOperationAction(color);
+        manager.addImageOperationAction(zoom);
+        manager.setFirstNode(buildImage(MB));
+    }
+
+    private void assertRuns(int w, int f, int c, int z) {
+        assertThat(new int[] { window.runs, filter.runs, color.runs, zoom.runs }).containsExactly(w, f, c, z);
+    }
+
+    @Test
+    public void testOnlyChangedStagesRun() {
+        PlanarImage out = manager.process();
+        assertRuns(1, 1, 1, 1);
+        assertThat(manager.needProcessing()).isFalse();
+
+        // Nothing has changed
+        assertThat(manager.process()).isSameAs(out);
+        assertRuns(1, 1, 1, 1);
+
+        // Zoom: only the last stage
+        manager.setParamValue("zoom", "scale", 2.0); //$NON-NLS-1$ //$NON-NLS-2$
+        assertThat(manager.needProcessing()).isTrue();
+        manager.process();
+        assertRuns(1, 1, 1, 2);
+
+        // Same value: nothing runs
+        manager.setParamValue("zoom", "scale", 2.0); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertRuns(1, 1, 1, 2);
+
+        // Window/level: the first stage and all the following ones
+        manager.setParamValue("window", "level", 40.0); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertRuns(2, 2, 2, 3);
+
+        // Disable the filter: from the filter
+        filter.setEnabled(false);
+        manager.process();
+        assertRuns(2, 2, 3, 4);
+
+        // Remove a parameter of the pseudo-color
+        manager.setParamValue("color", "lut", "hot"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        manager.removeParam("color", "lut"); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertRuns(2, 2, 4, 5);
+
+        // New source image: all the stages
+        manager.setFirstNode(buildImage(MB));
+        manager.process();
+        assertRuns(3, 2, 5, 6);
+    }
+
+    @Test
+    public void testArrayParamsAndExternalState() {
+        zoom.setParam("matrix", new double[] { 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 }); //$NON-NLS-1$
+        manager.process();
+        assertRuns(1, 1, 1, 1);
+
+        // An equal array is the same value
+        zoom.setParam("matrix", new double[] { 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 }); //$NON-NLS-1$
+        manager.process();
+        assertRuns(1, 1, 1, 1);
+
+        zoom.setParam("matrix", new double[] { 2.0, 0.0, 0.0, 0.0, 2.0, 0.0 }); //$NON-NLS-1$
+        manager.process();
+        assertRuns(1, 1, 1, 2);
+
+        // The state of an object given as parameter (e.g. the pixel min and max of the image element)
+        window.state = Arrays.asList(0.0, 255.0);
+        manager.process();
+        assertRuns(2, 2, 2, 3);
+
+        window.state = Arrays.asList(0.0, 255.0);
+        manager.process();
+        assertRuns(2, 2, 2, 3);
+
+        window.state = Arrays.asList(-1024.0, 3071.0);
+        manager.process();
+        assertRuns(3, 3, 3, 4);
+    }
+
+    @Test
+    public void testChangesOfTheChain() {
+        manager.process();
+        manager.removeImageOperationAction(filter);
+        manager.process();
+        // The input of the pseudo-color has changed
+        assertRuns(1, 1, 2, 2);
+
+        manager.resetLastNodeOutputImage();
+        manager.process();
+        assertRuns(1, 1, 2, 3);
+
+        manager.clearNodeIOCache();
+        manager.setFirstNode(buildImage(MB));
+        manager.process();
+        assertRuns(2, 1, 3, 4);
+    }
+
+    @Test
+    public void testCacheSize() {
+        // Keep only one intermediate image (besides the input of the last stage)
+        manager.setCacheSize(MB);
+        manager.process();
+        assertRuns(1, 1, 1, 1);
+        assertThat(filter.getParam(Param.OUTPUT_IMG)).isNotNull();
+        assertThat(window.getParam(Param.OUTPUT_IMG)).isNull();
+        assertThat(filter.getParam(Param.INPUT_IMG)).isNull();
+        assertThat(color.getParam(Param.OUTPUT_IMG)).isNotNull();
+
+        // The released image is rebuilt from the source
+        manager.setParamValue("filter", "kernel", "sharpen"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        manager.process();
+        assertRuns(2, 2, 2, 2);
+
+        // The kept images are reused
+        manager.setParamValue("color", "lut", "hot"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        manager.process();
+        assertRuns(2, 2, 3, 3);
+        manager.setParamValue("zoom", "scale", 0.5); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertRuns(2, 2, 3, 4);
+
+        // No cache: the input of the last stage is always kept
+        manager.setCacheSize(0);
+        manager.setParamValue("color", "lut", "gray"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        manager.process();
+        assertRuns(2, 2, 4, 5);
+        manager.setParamValue("zoom", "scale", 1.0); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertRuns(2, 2, 4, 6);
+        manager.setParamValue("color", "lut", "hot"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        manager.process();
+        assertRuns(3, 3, 5, 7);
+    }
+
+    @Test
+    public void testCopyRunsAllStages() {
+        manager.process();
+        SimpleOpManager copy = manager.copy();
+        copy.setFirstNode(manager.getFirstNodeInputImage());
+        assertThat(copy.needProcessing()).isTrue();
+        assertThat(manager.needProcessing()).isFalse();
+    }
+
+    static PlanarImage buildImage(long size) {
+        return (PlanarImage) Proxy.newProxyInstance(SimpleOpManagerTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "physicalBytes": //$NON-NLS-1$
+                        return size;
+                    case "width": //$NON-NLS-1$
+                    case "height": //$NON-NLS-1$
+                        return 512;
+                    case "hashCode": //$NON-NLS-1$
+                        return System.identityHashCode(proxy);
+                    case "equals": //$NON-NLS-1$
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image.cv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.weasis.core.api.image.OpManager;
+import org.weasis.core.api.image.util.KernelData;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageElementTest;
+import org.weasis.core.api.media.data.ImageLoader.Priority;
+import org.weasis.core.api.media.data.MediaReader;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+public class CvUtilTest {
+
+    private static final MediaReader READER = (MediaReader) Proxy.newProxyInstance(
+        CvUtilTest.class.getClassLoader(), new Class<?>[] { MediaReader.class }, (proxy, method, args) -> null);
+
+    private static boolean nativeLibrary;
+
+    @BeforeClass
+    public static void loadNativeLibrary() throws IOException {
+        // The OpenCV library is loaded by its bundle at runtime, the image tests are skipped when it is not available
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            nativeLibrary = true;
+        } catch (UnsatisfiedLinkError e) {
+            nativeLibrary = false;
+        }
+        if (nativeLibrary) {
+            ImageElementTest.setUp();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (nativeLibrary) {
+            ImageElementTest.tearDown();
+        }
+    }
+
+    /**
+     * Image of a stack, already decoded.
+     */
+    static class StackImage extends ImageElement {
+        private final ImageCV image;
+        private final AtomicInteger requests;
+
+        StackImage(ImageCV image, AtomicInteger requests) {
+            super(READER, 0);
+            this.image = image;
+            this.requests = requests;
+        }
+
+        @Override
+        public PlanarImage getImage(OpManager manager, boolean findMinMax) {
+            return image;
+        }
+
+        @Override
+        public CompletableFuture<PlanarImage> getImageAsync(Priority priority) {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(image);
+        }
+    }
+
+    private static AtomicIntegerArray coverage(int height, int width, Set<Thread> threads) {
+        AtomicIntegerArray rows = new AtomicIntegerArray(height);
+        CvUtil.forEachBand(height, width, (start, end) -> {
+            threads.add(Thread.currentThread());
+            for (int y = start; y < end; y++) {
+                rows.incrementAndGet(y);
+            }
+        });
+        return rows;
+    }
+
+    @Test
+    public void testBandsCoverAllRowsOnce() {
+        for (int[] dim : new int[][] { { 512, 512 }, { 2048, 2048 }, { 3, 100_000 }, { 1, 1 }, { 1001, 997 } }) {
+            AtomicIntegerArray rows = coverage(dim[0], dim[1], ConcurrentHashMap.newKeySet());
+            for (int y = 0; y < rows.length(); y++) {
+                assertThat(rows.get(y)).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallImageInCallerThread() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        coverage(64, 64, threads);
+        assertThat(threads).containsExactly(Thread.currentThread());
+
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            threads.clear();
+            for (int i = 0; i < 20; i++) {
+                coverage(4096, 4096, threads);
+            }
+            assertThat(threads.size()).isGreaterThan(1);
+        }
+    }
+
+    // Reflected border without repeating the edge pixel (default border of OpenCV)
+    private static int reflect(int p, int size) {
+        if (size == 1) {
+            return 0;
+        }
+        int v = p;
+        while (v < 0 || v >= size) {
+            v = v < 0 ? -v : 2 * size - v - 2;
+        }
+        return v;
+    }
+
+    /**
+     * Correlation of the image with the kernel centered on each pixel, like the 2D filter of OpenCV.
+     */
+    private static float[] correlate(float[] img, int width, int height, float[] kernel, int kw, int kh) {
+        float[] out = new float[img.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double sum = 0.0;
+                for (int j = 0; j < kh; j++) {
+                    for (int i = 0; i < kw; i++) {
+                        int sx = reflect(x + i - kw / 2, width);
+                        int sy = reflect(y + j - kh / 2, height);
+                        sum += kernel[j * kw + i] * img[sy * width + sx];
+                    }
+                }
+                out[y * width + x] = (float) sum;
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void testSeparableKernels() {
+        int width = 67;
+        int height = 41;
+        Random random = new Random(7);
+        float[] img = new float[width * height];
+        for (int i = 0; i < img.length; i++) {
+            img[i] = random.nextInt(4096);
+        }
+
+        List<KernelData> separables = new ArrayList<>();
+        for (KernelData kernel : KernelData.getAllFilters()) {
+            float[][] sep = CvUtil.getSeparableKernel(kernel);
+            if (sep == null) {
+                continue;
+            }
+            separables.add(kernel);
+            // Two 1D passes give the result of the 2D kernel
+            int kw = kernel.getWidth();
+            int kh = kernel.getHeight();
+            float[] expected = correlate(img, width, height, kernel.getData(), kw, kh);
+            float[] actual = correlate(correlate(img, width, height, sep[0], kw, 1), width, height, sep[1], 1, kh);
+            for (int i = 0; i < img.length; i++) {
+                assertThat((double) actual[i]).isCloseTo(expected[i], within(1.0E-2));
+            }
+        }
+        assertThat(separables).containsExactly(KernelData.MEAN, KernelData.GAUSSIAN3, KernelData.GAUSSIAN5,
+            KernelData.GAUSSIAN7, KernelData.GAUSSIAN9);
+    }
+
+    /**
+     * CvUtil.filter() (separable passes and parallel bands) gives the result of the 2D filter of OpenCV on the whole
+     * image.
+     */
+    @Test
+    public void testFilterMatchesFilter2D() {
+        assumeTrue(nativeLibrary);
+        int width = 701;
+        int height = 523;
+        Random random = new Random(5);
+        for (int type : new int[] { CvType.CV_8UC1, CvType.CV_16UC1, CvType.CV_32FC1 }) {
+            float[] values = new float[width * height];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = type == CvType.CV_8UC1 ? random.nextInt(256) : random.nextInt(4096);
+            }
+            Mat floatImg = new Mat(height, width, CvType.CV_32FC1);
+            floatImg.put(0, 0, values);
+            Mat source = new Mat();
+            floatImg.convertTo(source, type);
+
+            for (KernelData kernel : KernelData.getAllFilters()) {
+                if (kernel.getData() == null || kernel.equals(KernelData.NONE)) {
+                    continue;
+                }
+                Mat k = new Mat(kernel.getHeight(), kernel.getWidth(), CvType.CV_32F);
+                k.put(0, 0, kernel.getData());
+                Mat expected = new Mat();
+                Imgproc.filter2D(source, expected, -1, k);
+                ImageCV actual = CvUtil.filter(source, kernel);
+                assertThat(actual.type()).isEqualTo(type);
+
+                float[] e = floatData(expected);
+                float[] a = floatData(actual);
+                // The integer images are filtered in one 2D pass, the separable passes round differently
+                double tolerance = type == CvType.CV_32FC1 ? 1.0E-2 : 0.0;
+                for (int i = 0; i < e.length; i++) {
+                    assertThat((double) a[i]).isCloseTo(e[i], within(tolerance));
+                }
+            }
+        }
+    }
+
+    private static List<ImageElement> buildStack(int size, int nb, int type, AtomicInteger requests) {
+        Random random = new Random(11);
+        List<ImageElement> stack = new ArrayList<>();
+        for (int n = 0; n < nb; n++) {
+            short[] values = new short[size * size];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (short) random.nextInt(4096);
+            }
+            ImageCV img = new ImageCV(size, size, type);
+            img.put(0, 0, values);
+            stack.add(new StackImage(img, requests));
+        }
+        return stack;
+    }
+
+    private static float[] floatData(Mat mat) {
+        Mat floatMat = new Mat();
+        mat.convertTo(floatMat, CvType.CV_32F);
+        float[] data = new float[(int) floatMat.total()];
+        floatMat.get(0, 0, data);
+        floatMat.release();
+        return data;
+    }
+
+    @Test
+    public void testParallelReductionIsExact() {
+        assumeTrue(nativeLibrary);
+        // Large enough to be accumulated by several bands
+        int size = 1024;
+        AtomicInteger requests = new AtomicInteger();
+        List<ImageElement> stack = buildStack(size, 9, CvType.CV_16SC1, requests);
+
+        // Sequential accumulation of the whole images
+        Mat mean = new Mat();
+        Mat min = new Mat();
+        Mat max = new Mat();
+        stack.get(0).getImage(null, false).toMat().convertTo(mean, CvType.CV_32F);
+        stack.get(0).getImage(null, false).toMat().copyTo(min);
+        stack.get(0).getImage(null, false).toMat().copyTo(max);
+        for (ImageElement img : stack.subList(1, stack.size())) {
+            Mat mat = img.getImage(null, false).toMat();
+            Mat floatImage = new Mat();
+            mat.convertTo(floatImage, CvType.CV_32F);
+            Imgproc.accumulate(floatImage, mean);
+            floatImage.release();
+            Core.min(min, mat, min);
+            Core.max(max, mat, max);
+        }
+        Core.divide(mean, new Scalar(stack.size()), mean);
+        Mat expectedMean = new Mat();
+        mean.convertTo(expectedMean, CvType.CV_16SC1);
+
+        assertThat(floatData(CvUtil.meanStack(stack))).isEqualTo(floatData(expectedMean));
+        assertThat(floatData(CvUtil.minStack(stack))).isEqualTo(floatData(min));
+        assertThat(floatData(CvUtil.maxStack(stack))).isEqualTo(floatData(max));
+        // The next images are requested in advance
+        assertThat(requests.get()).isEqualTo(3 * (stack.size() - 1));
+    }
+}
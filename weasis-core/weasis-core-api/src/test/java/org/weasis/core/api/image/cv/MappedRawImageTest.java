@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image.cv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.weasis.core.api.image.cv.MappedRawImage.MappedImageCV;
+import org.weasis.core.api.image.cv.MappedRawImage.Mapping;
+import org.weasis.core.util.FileUtil;
+import org.weasis.opencv.data.FileRawImage;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+public class MappedRawImageTest {
+    private static final int SLICES = 512;
+    private static final int SIZE = 256;
+
+    private static boolean nativeLibrary;
+
+    private File dir;
+
+    @BeforeClass
+    public static void loadNativeLibrary() {
+        // The OpenCV library is loaded by its bundle at runtime, the image tests are skipped when it is not available
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            nativeLibrary = true;
+        } catch (UnsatisfiedLinkError e) {
+            nativeLibrary = false;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mapped").toFile(); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir, true);
+    }
+
+    private File writeSlice(int index) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(FileRawImage.HEADER_LENGTH + SIZE * SIZE * 2).order(ByteOrder.nativeOrder());
+        buf.position(FileRawImage.HEADER_LENGTH);
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            buf.putShort((short) (index + i % SIZE));
+        }
+        File file = new File(dir, "mpr_" + (index + 1) + ".wcv"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(file.toPath(), buf.array());
+        return file;
+    }
+
+    @Test
+    public void testReferenceCounting() throws IOException {
+        File file = writeSlice(3);
+        long dataLength = SIZE * SIZE * 2L;
+
+        Mapping m1 = MappedRawImage.acquire(file, dataLength);
+        Mapping m2 = MappedRawImage.acquire(file, dataLength);
+        assertThat(m1).isNotNull();
+        assertThat(m2).isSameAs(m1);
+        assertThat(m1.refCount).isEqualTo(2);
+        assertThat(m1.buffer.order(ByteOrder.nativeOrder()).getShort(2)).isEqualTo((short) 4);
+
+        // Not the expected layout
+        assertThat(MappedRawImage.acquire(file, dataLength / 2)).isNull();
+
+        int mappings = MappedRawImage.getMappingNumber();
+        MappedRawImage.release(m1);
+        assertThat(MappedRawImage.getMappingNumber()).isEqualTo(mappings);
+        MappedRawImage.release(m2);
+        assertThat(MappedRawImage.getMappingNumber()).isEqualTo(mappings - 1);
+
+        // Copy-on-write: the file is not modified
+        Mapping m3 = MappedRawImage.acquire(file, dataLength);
+        assertThat(m3).isNotSameAs(m1);
+        m3.buffer.putShort(0, (short) -1);
+        MappedRawImage.release(m3);
+        Mapping m4 = MappedRawImage.acquire(file, dataLength);
+        assertThat(m4.buffer.order(ByteOrder.nativeOrder()).getShort(0)).isEqualTo((short) 3);
+        MappedRawImage.release(m4);
+    }
+
+    @Test
+    public void testMappedPixels() throws IOException {
+        long dataLength = SIZE * SIZE * 2L;
+        for (int i = 0; i < SLICES; i += 64) {
+            File file = writeSlice(i);
+            byte[] data = new byte[(int) dataLength];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) { //$NON-NLS-1$
+                raf.seek(FileRawImage.HEADER_LENGTH);
+                raf.readFully(data);
+            }
+            Mapping m = MappedRawImage.acquire(file, dataLength);
+            ByteBuffer pixels = m.buffer.duplicate();
+            byte[] mapped = new byte[(int) dataLength];
+            pixels.get(mapped);
+            MappedRawImage.release(m);
+            assertThat(mapped).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void testMappedImage() throws IOException {
+        assumeTrue(nativeLibrary);
+        short[] values = new short[SIZE * SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (short) (i * 31);
+        }
+        ImageCV source = new ImageCV(SIZE, SIZE, CvType.CV_16UC1);
+        source.put(0, 0, values);
+        File file = new File(dir, "image.wcv"); //$NON-NLS-1$
+        assertThat(new FileRawImage(file).write(source)).isTrue();
+        source.release();
+
+        int mappings = MappedRawImage.getMappingNumber();
+        PlanarImage mapped = MappedRawImage.read(file, SIZE, SIZE, CvType.CV_16UC1);
+        assertThat(mapped).isInstanceOf(MappedImageCV.class);
+        assertThat(MappedRawImage.getMappingNumber()).isEqualTo(mappings + 1);
+        ImageCV read = new FileRawImage(file).read();
+
+        assertThat(mapped.width()).isEqualTo(read.width());
+        assertThat(mapped.height()).isEqualTo(read.height());
+        assertThat(mapped.type()).isEqualTo(read.type());
+        short[] mappedValues = new short[SIZE * SIZE];
+        short[] readValues = new short[SIZE * SIZE];
+        mapped.toMat().get(0, 0, mappedValues);
+        read.get(0, 0, readValues);
+        assertThat(mappedValues).isEqualTo(readValues).isEqualTo(values);
+
+        read.release();
+        mapped.release();
+        assertThat(MappedRawImage.getMappingNumber()).isEqualTo(mappings);
+    }
+}
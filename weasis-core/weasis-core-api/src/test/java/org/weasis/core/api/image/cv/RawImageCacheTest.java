@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.image.cv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.weasis.core.util.FileUtil;
+
+public class RawImageCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rawcache").toFile(); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir, true);
+    }
+
+    private void writeEntry(RawImageCache cache, String key, int size) throws IOException {
+        Files.write(new File(dir, key + RawImageCache.RAW_EXTENSION).toPath(), new byte[size]);
+        cache.register(key);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        RawImageCache cache = new RawImageCache(dir, 3000L, false);
+        writeEntry(cache, "a", 1000); //$NON-NLS-1$
+        writeEntry(cache, "b", 1000); //$NON-NLS-1$
+        writeEntry(cache, "c", 1000); //$NON-NLS-1$
+        assertThat(cache.getSize()).isEqualTo(3000L);
+
+        // "a" becomes the most recently used, "b" is evicted
+        assertThat(cache.get("a")).isNotNull(); //$NON-NLS-1$
+        writeEntry(cache, "d", 1000); //$NON-NLS-1$
+        assertThat(cache.get("b")).isNull(); //$NON-NLS-1$
+        assertThat(new File(dir, "b" + RawImageCache.RAW_EXTENSION).exists()).isFalse(); //$NON-NLS-1$
+        assertThat(cache.getNumberOfImages()).isEqualTo(3);
+
+        // The order is restored from the index file, "c" is the least recently used
+        RawImageCache reopened = new RawImageCache(dir, 3000L, false);
+        assertThat(reopened.getSize()).isEqualTo(3000L);
+        writeEntry(reopened, "e", 1000); //$NON-NLS-1$
+        assertThat(reopened.get("c")).isNull(); //$NON-NLS-1$
+        assertThat(reopened.get("a")).isNotNull(); //$NON-NLS-1$
+        assertThat(reopened.get("d")).isNotNull(); //$NON-NLS-1$
+
+        // A file deleted externally is removed from the cache
+        Files.delete(new File(dir, "d" + RawImageCache.RAW_EXTENSION).toPath()); //$NON-NLS-1$
+        assertThat(reopened.get("d")).isNull(); //$NON-NLS-1$
+        assertThat(reopened.getSize()).isEqualTo(2000L);
+    }
+
+    @Test
+    public void testUnindexedFilesAreEvictedFirst() throws IOException {
+        RawImageCache cache = new RawImageCache(dir, 2500L, false);
+        writeEntry(cache, "a", 1000); //$NON-NLS-1$
+        // Written by a process which has not updated the index
+        Files.write(new File(dir, "orphan" + RawImageCache.RAW_EXTENSION).toPath(), new byte[1000]); //$NON-NLS-1$
+
+        RawImageCache reopened = new RawImageCache(dir, 2500L, false);
+        writeEntry(reopened, "b", 1000); //$NON-NLS-1$
+        assertThat(reopened.get("orphan")).isNull(); //$NON-NLS-1$
+        assertThat(reopened.get("a")).isNotNull(); //$NON-NLS-1$
+        assertThat(reopened.get("b")).isNotNull(); //$NON-NLS-1$
+    }
+
+    private static short[] buildImage(int width, int height) {
+        // Smooth content with noise, like a radiograph
+        Random random = new Random(42);
+        short[] data = new short[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[y * width + x] = (short) (1000 + x / 2 + y / 3 + random.nextInt(16));
+            }
+        }
+        return data;
+    }
+
+    private static short[] readCompressed(File file) throws IOException {
+        short[][] out = new short[1][];
+        RawImageCache.readCompressed(file, (w, h, type) -> {
+            assertThat(type).isEqualTo(CvType.CV_16UC1);
+            out[0] = new short[w * h];
+            return (row, src) -> src.asShortBuffer().get(out[0], row * w, w);
+        });
+        return out[0];
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws IOException {
+        int width = 300;
+        int height = 200;
+        short[] data = buildImage(width, height);
+        File file = new File(dir, "img" + RawImageCache.COMPRESSED_EXTENSION); //$NON-NLS-1$
+        RawImageCache.writeCompressed(file, width, height, CvType.CV_16UC1, width * 2,
+            (row, dst) -> dst.asShortBuffer().put(data, row * width, width));
+
+        assertThat(file.length()).isLessThan(width * height * 2L);
+        short[] result = readCompressed(file);
+        for (int i = 0; i < data.length; i++) {
+            assertThat(result[i]).isEqualTo(data[i]);
+        }
+        assertThat(RawImageCache.getDepthSize(CvType.CV_16UC1)).isEqualTo(2);
+        assertThat(RawImageCache.getDepthSize(CvType.CV_8UC3)).isEqualTo(1);
+    }
+
+    /**
+     * The image is read in a single pass: the rows are given in order to the target from one buffer of a row, without
+     * an intermediate copy of the whole image.
+     */
+    @Test
+    public void testCompressedReadStreamsRows() throws IOException {
+        int width = 512;
+        int height = 384;
+        short[] data = buildImage(width, height);
+        File cached = new File(dir, "cached" + RawImageCache.COMPRESSED_EXTENSION); //$NON-NLS-1$
+        RawImageCache.writeCompressed(cached, width, height, CvType.CV_16UC1, width * 2,
+            (row, dst) -> dst.asShortBuffer().put(data, row * width, width));
+        assertThat(cached.length()).isLessThan(width * height * 2L);
+
+        List<Integer> rows = new ArrayList<>();
+        Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        short[] result = new short[data.length];
+        RawImageCache.readCompressed(cached, (w, h, type) -> {
+            assertThat(new int[] { w, h, type }).containsExactly(width, height, CvType.CV_16UC1);
+            return (row, src) -> {
+                rows.add(row);
+                buffers.add(src);
+                assertThat(src.remaining()).isEqualTo(width * 2);
+                src.asShortBuffer().get(result, row * width, width);
+            };
+        });
+        assertThat(rows).hasSize(height);
+        for (int i = 0; i < height; i++) {
+            assertThat(rows.get(i)).isEqualTo(i);
+        }
+        assertThat(buffers).hasSize(1);
+        assertThat(result).isEqualTo(data);
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.weasis.core.util.FileUtil;
+
+public class ImageElementTest {
+
+    private static final String[] DIR_PROPERTIES =
+        { "weasis.path", "weasis.pref.dir", "weasis.resources.path" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private static File dir;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        // The class initializes the preferences and the caches of the application, keep them out of the user directory
+        dir = Files.createTempDirectory("imageelement").toFile(); //$NON-NLS-1$
+        for (String key : DIR_PROPERTIES) {
+            if (System.getProperty(key) == null) {
+                System.setProperty(key, dir.getPath());
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (dir != null) {
+            FileUtil.recursiveDelete(dir, true);
+            dir = null;
+        }
+    }
+
+    /**
+     * The level selected for a zoom is the most reduced one whose resolution is not lower than the zoom.
+     */
+    @Test
+    public void testPyramidLevel() {
+        assertThat(ImageElement.getPyramidLevel(0.1)).isEqualTo(3);
+        assertThat(ImageElement.getPyramidLevel(0.25)).isEqualTo(2);
+        assertThat(ImageElement.getPyramidLevel(0.5)).isEqualTo(1);
+
+        assertThat(ImageElement.getPyramidLevel(1.0)).isZero();
+        assertThat(ImageElement.getPyramidLevel(2.0)).isZero();
+        assertThat(ImageElement.getPyramidLevel(0.51)).isZero();
+        assertThat(ImageElement.getPyramidLevel(0.49)).isEqualTo(1);
+        assertThat(ImageElement.getPyramidLevel(0.001)).isEqualTo(ImageElement.MAX_PYRAMID_LEVEL);
+        // Undefined zoom
+        assertThat(ImageElement.getPyramidLevel(0.0)).isZero();
+    }
+}
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.weasis.core.api.media.data.ImageLoader.Priority;
+import org.weasis.opencv.data.PlanarImage;
+
+public class ImageLoaderTest {
+
+    private static final int SLICES = 64;
+
+    private ImageLoader loader;
+
+    @BeforeClass
+    public static void setUpDirectories() throws IOException {
+        ImageElementTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDownDirectories() {
+        ImageElementTest.tearDown();
+    }
+
+    @After
+    public void tearDown() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * Proxy returning the default value of the primitive types and null for the objects.
+     */
+    private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+        return type.cast(Proxy.newProxyInstance(ImageLoaderTest.class.getClassLoader(), new Class<?>[] { type },
+            (p, method, args) -> {
+                Object value = values.get(method.getName());
+                if (value instanceof Callable) {
+                    return ((Callable<?>) value).call();
+                }
+                if (value == null && method.getReturnType().isPrimitive()) {
+                    return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+                }
+                return value;
+            }));
+    }
+
+    @Test
+    public void testParallelDecode() throws Exception {
+        loader = new ImageLoader("Test Loader", 4); //$NON-NLS-1$
+        // The number of threads is limited by the CPU budget of the registry
+        int nThreads = loader.getMaximumPoolSize();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        // Each decode waits until the workers are all busy
+        CountDownLatch allBusy = new CountDownLatch(nThreads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < SLICES; i++) {
+            int slice = i;
+            futures.add(loader.submit(Integer.valueOf(i), Priority.PRELOAD, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                allBusy.countDown();
+                allBusy.await(5, TimeUnit.SECONDS);
+                running.decrementAndGet();
+                return slice;
+            }));
+        }
+        for (int i = 0; i < SLICES; i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        assertThat(allBusy.getCount()).isZero();
+        assertThat(maxRunning.get()).isEqualTo(nThreads);
+    }
+
+    /**
+     * The images of a reader requested through the image elements are decoded by all the workers of the loader at the
+     * same time, and only once.
+     */
+    @Test
+    public void testReaderDecodeThroughput() throws Exception {
+        int nThreads = ImageElement.IMAGE_LOADER.getMaximumPoolSize();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger decodes = new AtomicInteger();
+        // Each decode waits until the workers are all busy
+        CountDownLatch allBusy = new CountDownLatch(nThreads);
+        Map<String, Object> imageValues = new HashMap<>();
+        imageValues.put("width", 1); //$NON-NLS-1$
+        imageValues.put("height", 1); //$NON-NLS-1$
+        imageValues.put("physicalBytes", 1L); //$NON-NLS-1$
+        PlanarImage image = proxy(PlanarImage.class, imageValues);
+        Callable<PlanarImage> decode = () -> {
+            decodes.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            allBusy.countDown();
+            allBusy.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return image;
+        };
+        MediaReader reader =
+            proxy(MediaReader.class, Collections.singletonMap("getImageFragment", decode)); //$NON-NLS-1$
+
+        List<ImageElement> images = new ArrayList<>();
+        List<CompletableFuture<PlanarImage>> futures = new ArrayList<>();
+        for (int i = 0; i < SLICES; i++) {
+            images.add(new ImageElement(reader, i));
+        }
+        for (ImageElement img : images) {
+            futures.add(img.getImageAsync(Priority.PRELOAD));
+        }
+        // Requested again while in flight or in cache: shared with the first decoding
+        for (ImageElement img : images) {
+            futures.add(img.getImageAsync(Priority.NEIGHBOR));
+        }
+        for (CompletableFuture<PlanarImage> f : futures) {
+            assertThat(f.get(5, TimeUnit.SECONDS)).isSameAs(image);
+        }
+        assertThat(decodes.get()).isEqualTo(SLICES);
+        assertThat(allBusy.getCount()).isZero();
+        assertThat(maxRunning.get()).isEqualTo(nThreads);
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        loader.submit("blocker", Priority.VISIBLE, () -> { //$NON-NLS-1$
+            block.await();
+            return null;
+        });
+
+        AtomicInteger decodes = new AtomicInteger();
+        Object key = new Object();
+        Future<Integer> f1 = loader.submit(key, Priority.PRELOAD, decodes::incrementAndGet);
+        Future<Integer> f2 = loader.submit(key, Priority.VISIBLE, decodes::incrementAndGet);
+        assertThat(f2).isSameAs(f1);
+        assertThat(loader.isInFlight(key)).isTrue();
+
+        block.countDown();
+        assertThat(f1.get()).isEqualTo(1);
+        assertThat(decodes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        loader.submit("blocker", Priority.VISIBLE, () -> { //$NON-NLS-1$
+            block.await();
+            return null;
+        });
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<Boolean>> futures = new ArrayList<>();
+        futures.add(loader.submit("preload", Priority.PRELOAD, () -> order.add("preload"))); //$NON-NLS-1$ //$NON-NLS-2$
+        futures.add(loader.submit("neighbor", Priority.NEIGHBOR, () -> order.add("neighbor"))); //$NON-NLS-1$ //$NON-NLS-2$
+        futures.add(loader.submit("visible", Priority.VISIBLE, () -> order.add("visible"))); //$NON-NLS-1$ //$NON-NLS-2$
+        // Promote a queued preload request
+        futures.add(loader.submit("promoted", Priority.PRELOAD, () -> order.add("promoted"))); //$NON-NLS-1$ //$NON-NLS-2$
+        loader.submit("promoted", Priority.VISIBLE, () -> order.add("duplicate")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        block.countDown();
+        for (Future<Boolean> f : futures) {
+            f.get();
+        }
+        assertThat(order).containsExactly("visible", "promoted", "neighbor", "preload"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    @Test
+    public void testCancelStaleRequests() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        loader.submit("blocker", Priority.VISIBLE, () -> { //$NON-NLS-1$
+            block.await();
+            return null;
+        });
+
+        AtomicInteger decodes = new AtomicInteger();
+        Future<Integer> neighbor = loader.submit("n1", Priority.NEIGHBOR, decodes::incrementAndGet); //$NON-NLS-1$
+        Future<Integer> p1 = loader.submit("p1", Priority.PRELOAD, decodes::incrementAndGet); //$NON-NLS-1$
+        Future<Integer> p2 = loader.submit("p2", Priority.PRELOAD, decodes::incrementAndGet); //$NON-NLS-1$
+
+        // Another view has promoted the neighbor to a displayed image
+        Future<Integer> promoted = loader.submit("n2", Priority.NEIGHBOR, decodes::incrementAndGet); //$NON-NLS-1$
+        loader.submit("n2", Priority.VISIBLE, decodes::incrementAndGet); //$NON-NLS-1$
+
+        // Two callers of the same priority: each one withdraws its own request
+        Future<Integer> p3 = loader.submit("p3", Priority.PRELOAD, decodes::incrementAndGet); //$NON-NLS-1$
+        loader.submit("p3", Priority.PRELOAD, decodes::incrementAndGet); //$NON-NLS-1$
+
+        assertThat(loader.cancel("p1", Priority.PRELOAD)).isTrue(); //$NON-NLS-1$
+        // Only the caller of the neighbor gives up, the view displaying the image is still waiting
+        assertThat(loader.cancel("n2", Priority.NEIGHBOR)).isFalse(); //$NON-NLS-1$
+        assertThat(loader.isInFlight("n2")).isTrue(); //$NON-NLS-1$
+        // No caller with this priority
+        assertThat(loader.cancel("n1", Priority.PRELOAD)).isFalse(); //$NON-NLS-1$
+        assertThat(loader.isInFlight("n1")).isTrue(); //$NON-NLS-1$
+
+        assertThat(loader.cancel("p3", Priority.PRELOAD)).isFalse(); //$NON-NLS-1$
+        assertThat(loader.isInFlight("p3")).isTrue(); //$NON-NLS-1$
+        assertThat(loader.cancel("p3", Priority.PRELOAD)).isTrue(); //$NON-NLS-1$
+        assertThat(loader.cancel("p3", Priority.PRELOAD)).isFalse(); //$NON-NLS-1$
+
+        assertThat(loader.cancelAll(Priority.PRELOAD)).isEqualTo(1);
+        assertThat(loader.isInFlight("p2")).isFalse(); //$NON-NLS-1$
+
+        block.countDown();
+        // The promoted request runs first
+        assertThat(promoted.get()).isEqualTo(1);
+        assertThat(neighbor.get()).isEqualTo(2);
+        assertThat(p1.isCancelled()).isTrue();
+        assertThat(p2.isCancelled()).isTrue();
+        assertThat(p3.isCancelled()).isTrue();
+        assertThat(decodes.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAsyncSharedDecode() throws Exception {
+        loader = new ImageLoader("Test Loader", 2); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        AtomicInteger decodes = new AtomicInteger();
+        Callable<Integer> decode = () -> {
+            block.await();
+            return decodes.incrementAndGet();
+        };
+        CompletableFuture<Integer> w1 = loader.submitAsync("img", Priority.NEIGHBOR, decode); //$NON-NLS-1$
+        CompletableFuture<Integer> w2 = loader.submitAsync("img", Priority.VISIBLE, decode); //$NON-NLS-1$
+        AtomicInteger callback = new AtomicInteger();
+        CompletableFuture<Void> done = w2.thenAccept(callback::set);
+
+        // Cancelling one waiter does not cancel the decoding shared with the other one
+        assertThat(w1.cancel(false)).isTrue();
+        block.countDown();
+        assertThat(w2.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        done.get(5, TimeUnit.SECONDS);
+        assertThat(callback.get()).isEqualTo(1);
+        assertThat(decodes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAsyncCancelLastWaiter() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        loader.submit("blocker", Priority.VISIBLE, () -> { //$NON-NLS-1$
+            block.await();
+            return null;
+        });
+        AtomicInteger decodes = new AtomicInteger();
+        CompletableFuture<Integer> w1 = loader.submitAsync("img", Priority.NEIGHBOR, decodes::incrementAndGet); //$NON-NLS-1$
+        assertThat(loader.isInFlight("img")).isTrue(); //$NON-NLS-1$
+
+        // No other waiter: the queued task is cancelled
+        w1.cancel(false);
+        assertThat(loader.isInFlight("img")).isFalse(); //$NON-NLS-1$
+
+        // A failure is propagated to the waiters
+        CompletableFuture<Integer> w2 = loader.submitAsync("bad", Priority.NEIGHBOR, () -> { //$NON-NLS-1$
+            throw new IllegalStateException();
+        });
+        block.countDown();
+        try {
+            w2.get(5, TimeUnit.SECONDS);
+            fail("Exception expected"); //$NON-NLS-1$
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(decodes.get()).isZero();
+    }
+
+    @Test
+    public void testAsyncCancelDemotes() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        CountDownLatch block = new CountDownLatch(1);
+        loader.submit("blocker", Priority.VISIBLE, () -> { //$NON-NLS-1$
+            block.await();
+            return null;
+        });
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<Boolean> preload = loader.submitAsync("img", Priority.PRELOAD, () -> order.add("img")); //$NON-NLS-1$ //$NON-NLS-2$
+        CompletableFuture<Boolean> visible = loader.submitAsync("img", Priority.VISIBLE, () -> order.add("img")); //$NON-NLS-1$ //$NON-NLS-2$
+        Future<Boolean> neighbor = loader.submit("other", Priority.NEIGHBOR, () -> order.add("other")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        // The displayed frame has changed: the shared task gets back the priority of the preloading
+        assertThat(visible.cancel(false)).isTrue();
+        assertThat(loader.isInFlight("img")).isTrue(); //$NON-NLS-1$
+        block.countDown();
+        assertThat(preload.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(neighbor.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly("other", "img"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
+import org.weasis.opencv.data.PlanarImage;
+
+public class MemoryGovernorTest {
+
+    private static final long MB = 1024 * 1024L;
+
+    /**
+     * Heap cache made of entries of 1 MB, recording the order of the reclaims.
+     */
+    static class TestCache implements Reclaimable {
+        final String name;
+        final List<String> log;
+        long used;
+
+        TestCache(String name, long used, List<String> log) {
+            this.name = name;
+            this.used = used;
+            this.log = log;
+        }
+
+        @Override
+        public long getUsedMemory() {
+            return used;
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            long freed = Math.min(used, (bytes + MB - 1) / MB * MB);
+            if (freed > 0) {
+                used -= freed;
+                log.add(name);
+            }
+            return freed;
+        }
+    }
+
+    @Test
+    public void testHeapPressureReclaimsLeastValuableFirst() {
+        List<String> log = new ArrayList<>();
+        AtomicLong heap = new AtomicLong(50 * MB);
+        MemoryGovernor governor = new MemoryGovernor(100 * MB, 100 * MB, heap::get);
+        TestCache icons = new TestCache("icons", 10 * MB, log);
+        TestCache luts = new TestCache("luts", 10 * MB, log);
+        TestCache headers = new TestCache("headers", 10 * MB, log);
+        governor.register("headers", Memory.HEAP, headers, () -> 3.0);
+        governor.register("icons", Memory.HEAP, icons, () -> 1.0);
+        governor.register("luts", Memory.HEAP, luts, () -> 2.0);
+
+        // No pressure
+        assertThat(governor.checkMemory()).isZero();
+        assertThat(log).isEmpty();
+
+        // 82% of the heap: reclaim down to 65%, the icons are not enough, then the LUTs
+        heap.set(82 * MB);
+        long freed = governor.checkMemory();
+        assertThat(freed).isGreaterThanOrEqualTo(82 * MB - (long) (100 * MB * MemoryGovernor.HEAP_TARGET_RATIO));
+        assertThat(log).containsExactly("icons", "luts");
+        assertThat(icons.used).isZero();
+        assertThat(luts.used).isEqualTo(3 * MB);
+        assertThat(headers.used).isEqualTo(10 * MB);
+
+        // Same usage after GC: the freed memory is not yet visible, nothing more is reclaimed
+        assertThat(governor.checkMemory()).isZero();
+    }
+
+    @Test
+    public void testNativeOverflowAndDynamicValue() {
+        List<String> log = new ArrayList<>();
+        MemoryGovernor governor = new MemoryGovernor(100 * MB, 100 * MB, () -> 0L);
+        TestCache images = new TestCache("images", 90 * MB, log);
+        TestCache thumbnails = new TestCache("thumbnails", 20 * MB, log);
+        double[] imageValue = { 4.0 };
+        governor.register("images", Memory.NATIVE, images, () -> imageValue[0]);
+        governor.register("thumbnails", Memory.NATIVE, thumbnails, () -> 1.0);
+        // A heap cache is never reclaimed for the native memory
+        TestCache heapCache = new TestCache("heap", 10 * MB, log);
+        governor.register("heap", Memory.HEAP, heapCache, () -> 0.0);
+
+        assertThat(governor.getUsedMemory(Memory.NATIVE)).isEqualTo(110 * MB);
+        governor.checkMemory();
+        assertThat(log).containsExactly("thumbnails");
+        assertThat(governor.getUsedMemory(Memory.NATIVE)).isLessThanOrEqualTo(95 * MB);
+
+        // The value is evaluated at each reclaim
+        log.clear();
+        imageValue[0] = 0.5;
+        governor.reclaim(Memory.NATIVE, 5 * MB);
+        assertThat(log).containsExactly("images");
+
+        governor.unregister(images);
+        assertThat(governor.getUsedMemory(Memory.NATIVE)).isEqualTo(thumbnails.used);
+    }
+
+    @Test
+    public void testNativeLimitFromCapacities() {
+        List<String> log = new ArrayList<>();
+        MemoryGovernor governor = new MemoryGovernor(0L, 100 * MB, () -> 0L);
+        TestCache images = new TestCache("images", 90 * MB, log);
+        TestCache thumbnails = new TestCache("thumbnails", 20 * MB, log);
+        governor.register("images", Memory.NATIVE, Reclaimable.of(images::getUsedMemory, images::reclaim, 100 * MB),
+            () -> 4.0);
+        governor.register("thumbnails", Memory.NATIVE,
+            Reclaimable.of(thumbnails::getUsedMemory, thumbnails::reclaim, 30 * MB), () -> 1.0);
+        assertThat(governor.getMaxNativeMemory()).isEqualTo(130 * MB);
+
+        // Each cache is below its capacity: nothing is reclaimed
+        assertThat(governor.checkMemory()).isZero();
+        assertThat(log).isEmpty();
+
+        // A cache without capacity: no limit
+        governor.register("other", Memory.NATIVE, new TestCache("other", 50 * MB, log), () -> 0.0);
+        assertThat(governor.getMaxNativeMemory()).isEqualTo(Long.MAX_VALUE);
+        assertThat(governor.checkMemory()).isZero();
+        assertThat(log).isEmpty();
+    }
+
+    @Test
+    public void testNativeCacheReclaim() {
+        List<Integer> removed = new ArrayList<>();
+        NativeCache<Integer, PlanarImage> cache = new NativeCache<Integer, PlanarImage>(100 * MB) {
+            @Override
+            protected void afterEntryRemove(Integer key, PlanarImage val) {
+                removed.add(key);
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, NativeCacheTest.buildImage(MB));
+        }
+        assertThat(cache.reclaim(3 * MB)).isEqualTo(3 * MB);
+        assertThat(cache.getUsedNativeMemory()).isEqualTo(7 * MB);
+        assertThat(removed).hasSize(3);
+    }
+
+    @Test
+    public void testSoftHashMapReclaim() {
+        SoftHashMap<Integer, byte[]> map = new SoftHashMap<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            byte[] val = new byte[1000];
+            values.add(val);
+            map.put(i, val);
+        }
+        // Access 0 and 1: they become the most recently used
+        map.get(0);
+        map.get(1);
+        assertThat(map.getWeight(v -> v.length)).isEqualTo(5000);
+        assertThat(map.reclaim(2500, v -> v.length)).isEqualTo(3000);
+        assertThat(map.keySet()).containsOnly(0, 1);
+        assertThat(values).hasSize(5);
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.util.FileUtil;
+
+public class MinMaxStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("minmaxstore").toFile(); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir, true);
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        MinMaxStore store = new MinMaxStore(dir, 1_000_000L);
+        String key = FileStore.digest("uid:1.2.3#0|1|minmax"); //$NON-NLS-1$
+        assertThat(store.getMinMax(key)).isNull();
+
+        assertThat(store.putMinMax(key, -1024.0, 3071.0)).isNotNull();
+        // Persistent: read by the next session
+        double[] values = new MinMaxStore(dir, 1_000_000L).getMinMax(key);
+        assertThat(values).isNotNull();
+        assertThat(values[0]).isEqualTo(-1024.0);
+        assertThat(values[1]).isEqualTo(3071.0);
+
+        // A small file uses a block of the file system
+        assertThat(store.getSize()).isEqualTo(4096L);
+
+        // Corrupted file
+        Files.write(store.getFile(key).toPath(), new byte[3]);
+        assertThat(store.getMinMax(key)).isNull();
+    }
+
+    @Test
+    public void testEviction() {
+        MinMaxStore store = new MinMaxStore(dir, 10 * 4096L);
+        for (int i = 0; i < 20; i++) {
+            store.putMinMax(FileStore.digest("key" + i), 0.0, i + 1.0); //$NON-NLS-1$
+        }
+        assertThat(store.getSize()).isLessThanOrEqualTo(10 * 4096L);
+        assertThat(store.getMinMax(FileStore.digest("key19"))).isNotNull(); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testPutAsync() throws Exception {
+        MinMaxStore store = new MinMaxStore(dir, 1_000_000L);
+        String key = FileStore.digest("uid:1.2.3#1|1|minmax"); //$NON-NLS-1$
+        File file = store.putMinMaxAsync(key, 0.0, 4095.0).get(10, TimeUnit.SECONDS);
+        assertThat(file).isEqualTo(store.getFile(key));
+        assertThat(store.getMinMax(key)).isEqualTo(new double[] { 0.0, 4095.0 });
+        assertThat(store.getSize()).isEqualTo(4096L);
+        assertThat(store.putMinMaxAsync(null, 0.0, 1.0).get()).isNull();
+    }
+}
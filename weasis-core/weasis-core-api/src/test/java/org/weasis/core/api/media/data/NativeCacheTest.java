@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.weasis.opencv.data.PlanarImage;
+
+public class NativeCacheTest {
+
+    private static final long SLICE_SIZE = 512 * 1024L;
+    private static final long CACHE_SIZE = 200 * SLICE_SIZE;
+
+    static PlanarImage buildImage(long size) {
+        return (PlanarImage) Proxy.newProxyInstance(NativeCacheTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "physicalBytes": //$NON-NLS-1$
+                        return size;
+                    case "hashCode": //$NON-NLS-1$
+                        return System.identityHashCode(proxy);
+                    case "equals": //$NON-NLS-1$
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    static class TestCache extends NativeCache<Integer, PlanarImage> {
+        final AtomicInteger removed = new AtomicInteger();
+
+        TestCache(long maxNativeMemory) {
+            super(maxNativeMemory);
+        }
+
+        @Override
+        protected void afterEntryRemove(Integer key, PlanarImage val) {
+            removed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Previous policy: access ordered LRU removing 5% of the memory plus the overflow before each insertion.
+     */
+    static class LruCache {
+        private final Map<Integer, Long> map = new LinkedHashMap<>(64, 0.75f, true);
+        private final long maxMemory;
+        private long used;
+
+        LruCache(long maxMemory) {
+            this.maxMemory = maxMemory;
+        }
+
+        boolean get(Integer key) {
+            return map.get(key) != null;
+        }
+
+        void put(Integer key, long size) {
+            if (used >= maxMemory) {
+                long maxfreeSize = maxMemory / 20 + (used - maxMemory);
+                long freeSize = 0;
+                Iterator<Map.Entry<Integer, Long>> it = map.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Integer, Long> e = it.next();
+                    freeSize += e.getValue();
+                    if (freeSize > maxfreeSize) {
+                        break;
+                    }
+                    used -= e.getValue();
+                    it.remove();
+                }
+            }
+            map.put(key, size);
+            used += size;
+        }
+    }
+
+    /**
+     * Builds a replayable trace: four viewers scrolling around their own slices (random walk) while another viewer
+     * goes once through a 3000-slice series.
+     */
+    static int[] buildTrace(long seed) {
+        Random random = new Random(seed);
+        int viewers = 4;
+        int slicesPerViewer = 40;
+        int scanLength = 3000;
+        int[] position = new int[viewers];
+        List<Integer> trace = new ArrayList<>();
+        int scan = 0;
+        while (scan < scanLength) {
+            for (int v = 0; v < viewers; v++) {
+                position[v] = Math.floorMod(position[v] + random.nextInt(5) - 2, slicesPerViewer);
+                trace.add(v * slicesPerViewer + position[v]);
+            }
+            // The scan keys are after the keys of the viewers
+            trace.add(viewers * slicesPerViewer + scan++);
+            trace.add(viewers * slicesPerViewer + scan++);
+        }
+        return trace.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testHitRatioAgainstLru() {
+        int[] trace = buildTrace(42L);
+
+        TestCache cache = new TestCache(CACHE_SIZE);
+        LruCache lru = new LruCache(CACHE_SIZE);
+        int hits = 0;
+        int lruHits = 0;
+        for (int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, buildImage(SLICE_SIZE));
+            }
+            if (lru.get(key)) {
+                lruHits++;
+            } else {
+                lru.put(key, SLICE_SIZE);
+            }
+        }
+        double ratio = (double) hits / trace.length;
+        double lruRatio = (double) lruHits / trace.length;
+        assertThat(ratio).isGreaterThan(lruRatio);
+        assertThat(cache.getUsedNativeMemory()).isLessThanOrEqualTo(CACHE_SIZE);
+    }
+
+    @Test
+    public void testWeightedEviction() {
+        TestCache cache = new TestCache(10 * SLICE_SIZE);
+        for (int i = 0; i < 9; i++) {
+            cache.put(i, buildImage(SLICE_SIZE));
+        }
+        assertThat(cache.size()).isEqualTo(9);
+        assertThat(cache.isMemoryAvailable()).isTrue();
+
+        // A big image evicts several small ones but is always kept after the insertion
+        PlanarImage big = buildImage(5 * SLICE_SIZE);
+        cache.put(100, big);
+        assertThat(cache.get(100)).isSameAs(big);
+        assertThat(cache.getUsedNativeMemory()).isLessThanOrEqualTo(10 * SLICE_SIZE);
+        assertThat(cache.removed.get()).isEqualTo(4);
+
+        assertThat(cache.remove(100)).isSameAs(big);
+        assertThat(cache.getUsedNativeMemory()).isEqualTo(5 * SLICE_SIZE);
+        assertThat(cache.removed.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        TestCache cache = new TestCache(50 * SLICE_SIZE);
+        int nThreads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            long seed = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 20_000; i++) {
+                    int key = random.nextInt(200);
+                    if (cache.get(key) == null) {
+                        cache.put(key, buildImage(SLICE_SIZE));
+                    } else if (random.nextInt(50) == 0) {
+                        cache.remove(key);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long weight = 0;
+        for (Map.Entry<Integer, PlanarImage> e : cache.entrySet()) {
+            weight += e.getValue().physicalBytes();
+        }
+        assertThat(cache.getUsedNativeMemory()).isEqualTo(weight);
+        assertThat(cache.getUsedNativeMemory()).isLessThanOrEqualTo(50 * SLICE_SIZE);
+    }
+}
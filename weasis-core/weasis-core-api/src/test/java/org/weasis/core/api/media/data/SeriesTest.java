@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.weasis.core.api.media.data.TagW.TagType;
+
+public class SeriesTest {
+
+    private static final TagW SLICE = new TagW("TestSliceNumber", TagType.INTEGER); //$NON-NLS-1$
+    private static final Comparator<MediaElement> SLICE_ORDER =
+        Comparator.comparingInt(m -> (Integer) m.getTagValue(SLICE));
+
+    private static final MediaReader READER = (MediaReader) Proxy.newProxyInstance(
+        SeriesTest.class.getClassLoader(), new Class<?>[] { MediaReader.class }, (proxy, method, args) -> null);
+
+    static class TestSeries extends Series<MediaElement> {
+
+        TestSeries() {
+            super(TagW.Group, "test", null); //$NON-NLS-1$
+        }
+
+        @Override
+        public void addMedia(MediaElement media) {
+            add(media);
+        }
+
+        @Override
+        public String getMimeType() {
+            return "test"; //$NON-NLS-1$
+        }
+    }
+
+    static MediaElement buildMedia(int slice) {
+        MediaElement media = new MediaElement(READER, slice);
+        media.setTag(SLICE, slice);
+        return media;
+    }
+
+    static List<MediaElement> buildShuffledMedias(int size, long seed) {
+        List<MediaElement> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(buildMedia(i));
+        }
+        Collections.shuffle(list, new Random(seed));
+        return list;
+    }
+
+    static void assertSorted(List<MediaElement> list) {
+        for (int i = 1; i < list.size(); i++) {
+            assertThat(SLICE_ORDER.compare(list.get(i - 1), list.get(i))).isLessThanOrEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testSortedInsertion() {
+        TestSeries series = new TestSeries();
+        assertThat(series.getSortedMedias(SLICE_ORDER)).isEmpty();
+        List<MediaElement> instances = buildShuffledMedias(500, 7L);
+        for (MediaElement m : instances) {
+            series.addMedia(m);
+        }
+        List<MediaElement> sorted = series.getSortedMedias(SLICE_ORDER);
+        assertThat(sorted).hasSize(500);
+        assertSorted(sorted);
+        // No new media: the same snapshot is returned
+        assertThat(series.getSortedMedias(SLICE_ORDER)).isSameAs(sorted);
+
+        // Equal elements keep the insertion order
+        MediaElement duplicate = buildMedia(100);
+        series.addMedia(duplicate);
+        sorted = series.getSortedMedias(SLICE_ORDER);
+        assertThat(sorted.get(101)).isSameAs(duplicate);
+
+        assertThat(series.remove(duplicate)).isTrue();
+        assertThat(series.getSortedMedias(SLICE_ORDER)).hasSize(500).doesNotContain(duplicate);
+        assertThat(series.remove(instances.get(0))).isTrue();
+        sorted = series.getSortedMedias(SLICE_ORDER);
+        assertThat(sorted).hasSize(499).doesNotContain(instances.get(0));
+        assertThat(series.remove(duplicate)).isFalse();
+        assertSorted(sorted);
+    }
+
+    @Test
+    public void testPendingMedias() {
+        TestSeries series = new TestSeries();
+        List<MediaElement> instances = buildShuffledMedias(300, 3L);
+        series.getSortedMedias(SLICE_ORDER);
+        List<MediaElement> expected = new ArrayList<>();
+        Random random = new Random(5L);
+        for (MediaElement m : instances) {
+            series.addMedia(m);
+            expected.add(m);
+            // Remove pending and already merged medias
+            if (random.nextInt(10) == 0) {
+                MediaElement removed = expected.remove(random.nextInt(expected.size()));
+                assertThat(series.remove(removed)).isTrue();
+            }
+            if (random.nextInt(5) == 0) {
+                List<MediaElement> list = new ArrayList<>(expected);
+                list.sort(SLICE_ORDER);
+                assertThat(series.getSortedMedias(SLICE_ORDER)).isEqualTo(list);
+            }
+        }
+        expected.sort(SLICE_ORDER);
+        assertThat(series.getSortedMedias(SLICE_ORDER)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testBatchMerge() {
+        int size = 5000;
+        int batch = 100;
+        AtomicInteger comparisons = new AtomicInteger();
+        Comparator<MediaElement> order = (m1, m2) -> {
+            comparisons.incrementAndGet();
+            return SLICE_ORDER.compare(m1, m2);
+        };
+        TestSeries series = new TestSeries();
+        List<MediaElement> instances = buildShuffledMedias(size + batch, 13L);
+        for (MediaElement m : instances.subList(0, size)) {
+            series.addMedia(m);
+        }
+        series.getSortedMedias(order);
+
+        comparisons.set(0);
+        for (MediaElement m : instances.subList(size, size + batch)) {
+            series.addMedia(m);
+        }
+        List<MediaElement> sorted = series.getSortedMedias(order);
+        assertThat(sorted).hasSize(size + batch);
+        assertSorted(sorted);
+        // Sort of the batch and one binary search per new media, the existing medias are not compared again
+        int log2 = 32 - Integer.numberOfLeadingZeros(size + batch);
+        assertThat(comparisons.get()).isLessThanOrEqualTo(batch * 2 * log2);
+    }
+
+    @Test
+    public void testConcurrentAddAndIterate() throws Exception {
+        TestSeries series = new TestSeries();
+        List<MediaElement> instances = buildShuffledMedias(3000, 11L);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (done.getCount() > 0) {
+                        // Iterate without lock and without copy
+                        MediaElement previous = null;
+                        for (MediaElement m : series.getSortedMedias(SLICE_ORDER)) {
+                            if (previous != null && SLICE_ORDER.compare(previous, m) > 0) {
+                                throw new IllegalStateException("Not sorted"); //$NON-NLS-1$
+                            }
+                            previous = m;
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (MediaElement m : instances) {
+            series.addMedia(m);
+        }
+        done.countDown();
+        for (Thread reader : readers) {
+            reader.join(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        assertThat(error.get()).isNull();
+        List<MediaElement> sorted = series.getSortedMedias(SLICE_ORDER);
+        assertThat(sorted).hasSize(instances.size());
+        assertSorted(sorted);
+    }
+}
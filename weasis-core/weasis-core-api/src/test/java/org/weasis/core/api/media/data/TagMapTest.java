@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.weasis.core.api.media.data.TagW.TagType;
+
+public class TagMapTest {
+
+    private static final int SERIES = 5;
+    private static final int INSTANCES = 1000;
+    private static final List<TagW> STRING_TAGS = new ArrayList<>();
+    private static final List<TagW> NUMBER_TAGS = new ArrayList<>();
+    private static final TagW SOP_UID = new TagW("TestSOPInstanceUID", TagType.STRING); //$NON-NLS-1$
+    private static final TagW INSTANCE_NB = new TagW("TestInstanceNumber", TagType.INTEGER); //$NON-NLS-1$
+    private static final TagW POSITION = new TagW("TestImagePosition", TagType.DOUBLE, 3, 3); //$NON-NLS-1$
+    private static final TagW DATE = new TagW("TestStudyDate", TagType.DATE); //$NON-NLS-1$
+
+    static {
+        for (int i = 0; i < 25; i++) {
+            STRING_TAGS.add(new TagW("TestString" + i, TagType.STRING)); //$NON-NLS-1$
+        }
+        for (int i = 0; i < 20; i++) {
+            NUMBER_TAGS.add(new TagW("TestNumber" + i, TagType.DOUBLE)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Fills the tags as a reader parsing the headers of a study: the values are new objects for each instance, most
+     * of them are identical in a series.
+     */
+    static List<Map<TagW, Object>> buildStudy(Supplier<Map<TagW, Object>> factory) {
+        List<Map<TagW, Object>> study = new ArrayList<>(SERIES * INSTANCES);
+        for (int s = 0; s < SERIES; s++) {
+            for (int i = 0; i < INSTANCES; i++) {
+                Map<TagW, Object> tags = factory.get();
+                for (int k = 0; k < STRING_TAGS.size(); k++) {
+                    tags.put(STRING_TAGS.get(k), new String("1.2.840.10008.5.1.4.1.1.2." + s + "." + k)); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                for (int k = 0; k < NUMBER_TAGS.size(); k++) {
+                    tags.put(NUMBER_TAGS.get(k), Double.valueOf(k * 0.5 + s));
+                }
+                tags.put(SOP_UID, "1.2.840.10008.5.1.4.1.1.2." + s + "." + i); //$NON-NLS-1$ //$NON-NLS-2$
+                tags.put(INSTANCE_NB, i + 1);
+                tags.put(POSITION, new double[] { -125.0, -125.0, i * 1.25 });
+                tags.put(DATE, LocalDate.of(2020, 1, 1 + s));
+                study.add(tags);
+            }
+        }
+        return study;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long footprint(Supplier<Map<TagW, Object>> factory) {
+        long before = usedMemory();
+        List<Map<TagW, Object>> study = buildStudy(factory);
+        long size = usedMemory() - before;
+        assertThat(study).hasSize(SERIES * INSTANCES);
+        return size;
+    }
+
+    @Test
+    public void testHeapFootprint() {
+        // Register the slots of the schema
+        buildStudy(TagMap::new);
+
+        long hashMap = footprint(HashMap::new);
+        long tagMap = footprint(TagMap::new);
+        assertThat(tagMap).isLessThan(hashMap / 2);
+    }
+
+    @Test
+    public void testSameBehaviorAsHashMap() {
+        List<Map<TagW, Object>> maps = buildStudy(TagMap::new);
+        List<Map<TagW, Object>> expected = buildStudy(HashMap::new);
+        for (int i = 0; i < maps.size(); i += 97) {
+            assertThat(maps.get(i).size()).isEqualTo(expected.get(i).size());
+            for (Entry<TagW, Object> e : expected.get(i).entrySet()) {
+                if (e.getValue() instanceof double[]) {
+                    assertThat(Arrays.equals((double[]) maps.get(i).get(e.getKey()), (double[]) e.getValue())).isTrue();
+                } else {
+                    assertThat(maps.get(i).get(e.getKey())).isEqualTo(e.getValue());
+                }
+            }
+        }
+        // Identical values are shared
+        assertThat(maps.get(1).get(STRING_TAGS.get(0))).isSameAs(maps.get(2).get(STRING_TAGS.get(0)));
+
+        TagMap tags = new TagMap();
+        TagW unknown = new TagW("TestUnknown", TagType.STRING); //$NON-NLS-1$
+        assertThat(tags.get(unknown)).isNull();
+        assertThat(tags.containsKey(unknown)).isFalse();
+
+        // A null value is a set tag
+        tags.put(unknown, null);
+        assertThat(tags.containsKey(unknown)).isTrue();
+        assertThat(tags.size()).isEqualTo(1);
+        tags.put(INSTANCE_NB, 5);
+        assertThat(tags.put(INSTANCE_NB, 6)).isEqualTo(5);
+        assertThat(tags.size()).isEqualTo(2);
+
+        TagMap copy = new TagMap(tags);
+        assertThat(copy).isEqualTo(tags);
+        assertThat(copy.remove(INSTANCE_NB)).isEqualTo(6);
+        assertThat(copy.containsKey(INSTANCE_NB)).isFalse();
+        assertThat(tags.get(INSTANCE_NB)).isEqualTo(6);
+
+        Iterator<Entry<TagW, Object>> it = tags.entrySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Entry<TagW, Object> e = it.next();
+            if (e.getKey().equals(unknown)) {
+                it.remove();
+            } else {
+                e.setValue(7);
+            }
+            count++;
+        }
+        assertThat(count).isEqualTo(2);
+        assertThat(tags.size()).isEqualTo(1);
+        assertThat(tags.get(INSTANCE_NB)).isEqualTo(7);
+
+        tags.clear();
+        assertThat(tags.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.util.FileUtil;
+
+public class ThumbnailStoreTest {
+
+    private static final int FILE_SIZE = 1000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("thumbstore").toFile(); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir, true);
+    }
+
+    private static Predicate<File> writer(byte value) {
+        return f -> {
+            byte[] data = new byte[FILE_SIZE];
+            Arrays.fill(data, value);
+            try {
+                Files.write(f.toPath(), data);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ThumbnailStore store = new ThumbnailStore(dir, 100_000L);
+        String key = ThumbnailStore.digest("uid:1.2.3#0|1|size=256"); //$NON-NLS-1$
+        assertThat(key).isEqualTo(ThumbnailStore.digest("uid:1.2.3#0|1|size=256")); //$NON-NLS-1$
+        assertThat(key).isNotEqualTo(ThumbnailStore.digest("uid:1.2.3#1|1|size=256")); //$NON-NLS-1$
+        assertThat(store.get(key)).isNull();
+
+        File file = store.put(key, writer((byte) 1));
+        assertThat(file).isNotNull();
+        assertThat(store.get(key)).isEqualTo(file);
+        assertThat(file.length()).isEqualTo((long) FILE_SIZE);
+        assertThat(store.getSize()).isEqualTo((long) FILE_SIZE);
+
+        // Persistent: another store on the same directory (next session or another instance)
+        assertThat(new ThumbnailStore(dir, 100_000L).get(key)).isEqualTo(file);
+
+        // A failed write leaves no file
+        String other = ThumbnailStore.digest("other"); //$NON-NLS-1$
+        assertThat(store.put(other, f -> false)).isNull();
+        assertThat(store.get(other)).isNull();
+        assertThat(file.getParentFile().list()).hasSize(1);
+    }
+
+    @Test
+    public void testLruEviction() {
+        ThumbnailStore store = new ThumbnailStore(dir, 10L * FILE_SIZE);
+        List<String> keys = new ArrayList<>();
+        long time = System.currentTimeMillis() - 3_600_000L;
+        for (int i = 0; i < 10; i++) {
+            String key = ThumbnailStore.digest("key" + i); //$NON-NLS-1$
+            keys.add(key);
+            File f = store.put(key, writer((byte) i));
+            // Older files first
+            assertThat(f.setLastModified(time + i * 10_000L)).isTrue();
+        }
+        // Accessing the oldest one makes it the most recently used
+        assertThat(store.get(keys.get(0))).isNotNull();
+
+        store.put(ThumbnailStore.digest("key10"), writer((byte) 10)); //$NON-NLS-1$
+        assertThat(store.getSize()).isLessThanOrEqualTo(8L * FILE_SIZE);
+        assertThat(store.get(keys.get(0))).isNotNull();
+        assertThat(store.get(keys.get(1))).isNull();
+        assertThat(store.get(keys.get(2))).isNull();
+        assertThat(store.get(keys.get(3))).isNull();
+        assertThat(store.get(keys.get(9))).isNotNull();
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        // Two instances writing the same thumbnail
+        ThumbnailStore store1 = new ThumbnailStore(dir, 1_000_000L);
+        ThumbnailStore store2 = new ThumbnailStore(dir, 1_000_000L);
+        String key = ThumbnailStore.digest("same"); //$NON-NLS-1$
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                ThumbnailStore store = i % 2 == 0 ? store1 : store2;
+                results.add(executor.submit(() -> store.put(key, writer((byte) 7))));
+                results.add(executor.submit(() -> store.get(key)));
+            }
+            for (Future<File> f : results) {
+                File file = f.get();
+                // Never a partial file
+                if (file != null) {
+                    assertThat(file.length()).isEqualTo((long) FILE_SIZE);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // No temporary file left
+        assertThat(store1.get(key).getParentFile().list()).hasSize(1);
+    }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+
+public class ExecutorRegistryTest {
+
+    @Test
+    public void testMetricsAndUnregister() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry(4, 4, false);
+        MonitoredExecutor executor = (MonitoredExecutor) registry.newFixedExecutor("test", 1, Kind.CPU);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        Future<?> queued = executor.submit(() -> sleep(5));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.getActiveCount()).isEqualTo(1);
+        assertThat(executor.getQueueLength()).isEqualTo(1);
+
+        sleep(20);
+        release.countDown();
+        queued.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(executor.getCompletedTaskCount()).isEqualTo(2);
+        assertThat(executor.getMaxWaitMillis()).isGreaterThanOrEqualTo(20);
+        assertThat(executor.getAverageRunMillis()).isGreaterThan(0.0);
+        assertThat(registry.getExecutors()).isEmpty();
+    }
+
+    @Test
+    public void testUniqueNames() {
+        ExecutorRegistry registry = new ExecutorRegistry(4, 4, false);
+        ExecutorService e1 = registry.newFixedExecutor("pool", 1, Kind.IO);
+        ExecutorService e2 = registry.newFixedExecutor("pool", 1, Kind.IO);
+        try {
+            assertThat(((MonitoredExecutor) e1).getName()).isEqualTo("pool");
+            assertThat(((MonitoredExecutor) e2).getName()).isEqualTo("pool #2");
+            assertThat(registry.getExecutors()).hasSize(2);
+        } finally {
+            e1.shutdownNow();
+            e2.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedExecutor() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry(4, 4, false);
+        ExecutorService shared = registry.getSharedExecutor("shared", 1, Kind.IO);
+        assertThat(registry.getSharedExecutor("shared", 1, Kind.IO)).isSameAs(shared);
+
+        // Shut down but not terminated: the new pool is registered with another name and is reused
+        CountDownLatch release = new CountDownLatch(1);
+        shared.execute(() -> await(release));
+        shared.shutdown();
+        ExecutorService next = registry.getSharedExecutor("shared", 1, Kind.IO);
+        assertThat(next).isNotSameAs(shared);
+        assertThat(((MonitoredExecutor) next).getName()).isEqualTo("shared #2");
+        assertThat(registry.getSharedExecutor("shared", 1, Kind.IO)).isSameAs(next);
+        assertThat(registry.getExecutors()).hasSize(2);
+
+        release.countDown();
+        assertThat(shared.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        next.shutdown();
+        assertThat(next.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.getExecutors()).isEmpty();
+    }
+
+    /**
+     * The number of threads and the running tasks of a pool are limited by the budget of its kind.
+     */
+    @Test
+    public void testBudget() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry(2, 8, false);
+        MonitoredExecutor cpu = (MonitoredExecutor) registry.newFixedExecutor("cpu", 4, Kind.CPU);
+        MonitoredExecutor io = (MonitoredExecutor) registry.newFixedExecutor("io", 4, Kind.IO);
+        assertThat(cpu.getMaximumPoolSize()).isEqualTo(2);
+        assertThat(cpu.getCorePoolSize()).isEqualTo(2);
+        assertThat(io.getMaximumPoolSize()).isEqualTo(4);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch allStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            cpu.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                allStarted.countDown();
+                await(release);
+                running.decrementAndGet();
+            });
+        }
+        // Two tasks are running and the others are waiting in the queue
+        assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(cpu.getActiveCount()).isEqualTo(2);
+        assertThat(cpu.getQueueLength()).isEqualTo(6);
+        release.countDown();
+        cpu.shutdown();
+        io.shutdown();
+        assertThat(cpu.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(io.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(cpu.getCompletedTaskCount()).isEqualTo(8);
+    }
+
+    /**
+     * The budget is shared by the pools of the same kind, the other tasks wait in the queue of their pool.
+     */
+    @Test
+    public void testBudgetSharedByPools() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry(2, 8, false);
+        MonitoredExecutor pool1 = (MonitoredExecutor) registry.newFixedExecutor("pool1", 2, Kind.CPU);
+        MonitoredExecutor pool2 = (MonitoredExecutor) registry.newFixedExecutor("pool2", 2, Kind.CPU);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch allStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            allStarted.countDown();
+            await(release);
+            running.decrementAndGet();
+        };
+        for (int i = 0; i < 4; i++) {
+            pool1.execute(task);
+            pool2.execute(task);
+        }
+        assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.getRunningTasks(Kind.CPU)).isEqualTo(2);
+        assertThat(pool1.getQueueLength() + pool2.getQueueLength()).isEqualTo(6);
+        // Queued tasks can still be removed
+        Runnable removed = () -> running.incrementAndGet();
+        pool2.execute(removed);
+        assertThat(pool2.remove(removed)).isTrue();
+
+        release.countDown();
+        pool1.shutdown();
+        pool2.shutdown();
+        assertThat(pool1.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(pool2.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(pool1.getCompletedTaskCount() + pool2.getCompletedTaskCount()).isEqualTo(8);
+        assertThat(registry.getRunningTasks(Kind.CPU)).isZero();
+    }
+
+    /**
+     * A task waiting for another task of the same budget gives back its slot.
+     */
+    @Test
+    public void testReleaseBudget() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry(1, 1, false);
+        ExecutorService outer = registry.newFixedExecutor("outer", 1, Kind.CPU);
+        ExecutorService inner = registry.newFixedExecutor("inner", 1, Kind.CPU);
+        Future<Integer> result = outer.submit(() -> {
+            Future<Integer> f = inner.submit(() -> registry.getRunningTasks(Kind.CPU));
+            try (MonitoredExecutor.BudgetRelease release = MonitoredExecutor.releaseBudget()) {
+                return f.get(5, TimeUnit.SECONDS);
+            }
+        });
+        // Only the inner task was running
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        outer.shutdown();
+        inner.shutdown();
+        assertThat(outer.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(inner.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.getRunningTasks(Kind.CPU)).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
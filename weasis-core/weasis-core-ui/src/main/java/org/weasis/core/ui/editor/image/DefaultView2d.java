@@ -43,6 +43,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -58,6 +59,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 import javax.swing.TransferHandler;
 import javax.swing.border.BevelBorder;
@@ -91,6 +93,7 @@ import org.weasis.core.api.image.util.KernelData;
 import org.weasis.core.api.image.util.MeasurableLayer;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesComparator;
@@ -152,6 +155,9 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
     public static final String PROP_LAYER_OFFSET = "layer.offset"; //$NON-NLS-1$
 
+    /** Number of images loaded in advance on each side of the current image */
+    public static final int NEIGHBOR_LOADING = 2;
+
     public static final GraphicClipboard GRAPHIC_CLIPBOARD = new GraphicClipboard();
 
     public static final Object antialiasingOff = RenderingHints.VALUE_ANTIALIAS_OFF;
@@ -164,7 +170,18 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
     public static final Cursor MOVE_CURSOR = DefaultView2d.getNewCursor(Cursor.MOVE_CURSOR);
     public static final Cursor DEFAULT_CURSOR = DefaultView2d.getNewCursor(Cursor.DEFAULT_CURSOR);
 
+    /**
+     * Delay in milliseconds without interaction after which the full quality is rendered again (see
+     * RenderedImageLayer.setInteractive()).
+     */
+    public static final String P_INTERACTION_IDLE_DELAY = "weasis.interaction.idle.delay"; //$NON-NLS-1$
+    // Mouse actions rendered at a reduced cost while dragging
+    private static final List<ActionW> INTERACTIVE_ACTIONS = Arrays.asList(ActionW.WINLEVEL, ActionW.WINDOW,
+        ActionW.LEVEL, ActionW.ZOOM, ActionW.PAN, ActionW.ROTATION, ActionW.SCROLL_SERIES);
+
     protected final FocusHandler focusHandler = new FocusHandler();
+    private final Timer qualityTimer;
+    private boolean interacting;
     protected GraphicMouseHandler<E> graphicMouseHandler;
 
     private final PanPoint highlightedPosition = new PanPoint(State.CENTER);
@@ -188,6 +205,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
     protected int tileOffset;
 
     protected final ImageViewerEventManager<E> eventManager;
+    private final List<E> neighborRequests = new ArrayList<>();
 
     public DefaultView2d(ImageViewerEventManager<E> eventManager) {
         this(eventManager, null);
@@ -200,6 +218,9 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         this.tileOffset = 0;
 
         imageLayer = new RenderedImageLayer<>();
+        imageLayer.setVisibleRegionProcessing(true);
+        qualityTimer = new Timer(250, e -> endInteraction());
+        qualityTimer.setRepeats(false);
         actionsInView.put(ActionW.LENS.cmd(), false);
         initActionWState();
         graphicMouseHandler = new GraphicMouseHandler<>(this);
@@ -315,6 +336,9 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
     @Override
     public PixelInfo getPixelInfo(final Point p) {
         PixelInfo pixelInfo = new PixelInfo();
+        if (imageLayer.isImageLoading()) {
+            return pixelInfo;
+        }
         E imageElement = imageLayer.getSourceImage();
         PlanarImage image = imageLayer.getSourceRenderedImage();
         if (imageElement != null && image != null) {
@@ -412,6 +436,8 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
             this.remove(lens);
             actionsInView.put(ActionW.LENS.cmd(), false);
             lens = null;
+            imageLayer.setReducedResolution(true);
+            imageLayer.updateDisplayOperations();
         }
     }
 
@@ -512,13 +538,17 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
     protected Rectangle getImageBounds(E img) {
         if (img != null) {
-            PlanarImage source = getPreprocessedImage(img);
+            Dimension size = img.getImageDimension();
+            // Do not wait for loading the image when its size is known
+            boolean sizeKnown =
+                size != null && !img.isImageInCache() && actionsInView.get(ActionW.PREPROCESSING.cmd()) == null;
+            PlanarImage source = sizeKnown ? null : getPreprocessedImage(img);
             // Get the displayed width (adapted in case of the aspect ratio is not 1/1)
             boolean nosquarePixel = MathUtil.isDifferent(img.getRescaleX(), img.getRescaleY());
             int width = source == null || nosquarePixel
-                ? img.getRescaleWidth(getImageSize(img, TagW.ImageWidth, TagW.get("Columns"))) : source.width(); //$NON-NLS-1$
+                ? img.getRescaleWidth(size == null ? ImageFiler.TILESIZE : size.width) : source.width();
             int height = source == null || nosquarePixel
-                ? img.getRescaleHeight(getImageSize(img, TagW.ImageHeight, TagW.get("Rows"))) : source.height(); //$NON-NLS-1$
+                ? img.getRescaleHeight(size == null ? ImageFiler.TILESIZE : size.height) : source.height();
             return new Rectangle(0, 0, width, height);
         }
         return new Rectangle(0, 0, 512, 512);
@@ -587,22 +617,25 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
                 resetZoom();
 
                 imageLayer.setImage(img, (OpManager) actionsInView.get(ActionW.PREPROCESSING.cmd()));
+                requestNeighborImages();
 
                 if (AuditLog.LOGGER.isInfoEnabled()) {
-                    PlanarImage image = img.getImage();
-                    if (image != null) {
-                        int elemSize = CvType.ELEM_SIZE(image.type());
-                        int channels = CvType.channels(image.type());
-                        int bpp = (elemSize * 8) / channels;
-                        String[] elements = new String[channels];
-                        for (int i = 0; i < elements.length; i++) {
-                            elements[i] = Integer.toString(bpp);
+                    // Do not wait for the image
+                    img.getImageAsync(ImageLoader.Priority.VISIBLE).thenAccept(image -> {
+                        if (image != null) {
+                            int elemSize = CvType.ELEM_SIZE(image.type());
+                            int channels = CvType.channels(image.type());
+                            int bpp = (elemSize * 8) / channels;
+                            String[] elements = new String[channels];
+                            for (int i = 0; i < elements.length; i++) {
+                                elements[i] = Integer.toString(bpp);
+                            }
+                            String pixSize = String.join(",", elements); //$NON-NLS-1$
+
+                            AuditLog.LOGGER.info("open:image size:{},{} depth:{}", //$NON-NLS-1$
+                                new Object[] { image.width(), image.height(), pixSize });
                         }
-                        String pixSize = String.join(",", elements); //$NON-NLS-1$
-
-                        AuditLog.LOGGER.info("open:image size:{},{} depth:{}", //$NON-NLS-1$
-                            new Object[] { image.width(), image.height(), pixSize });
-                    }
+                    });
                 }
             }
             // Apply all image processing operation for visualization
@@ -630,6 +663,45 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         }
     }
     
+    /**
+     * Asks for loading the images around the current one and cancels the previous requests which are no longer in
+     * the neighborhood (when scrolling quickly).
+     */
+    protected void requestNeighborImages() {
+        List<E> neighbors = new ArrayList<>();
+        MediaSeries<E> s = series;
+        if (s != null) {
+            Filter<E> filter = (Filter<E>) actionsInView.get(ActionW.FILTERED_SERIES.cmd());
+            Comparator<E> sort = getCurrentSortComparator();
+            int index = getFrameIndex();
+            if (index >= 0) {
+                for (int i = 1; i <= NEIGHBOR_LOADING; i++) {
+                    addNeighbor(neighbors, s.getMedia(index + i, filter, sort));
+                    addNeighbor(neighbors, s.getMedia(index - i, filter, sort));
+                }
+            }
+        }
+        for (E img : neighborRequests) {
+            if (!neighbors.contains(img)) {
+                img.cancelImageRequest(ImageLoader.Priority.NEIGHBOR);
+            }
+        }
+        for (E img : neighbors) {
+            // Each request is withdrawn once, do not request again an image still in loading
+            if (!neighborRequests.contains(img) || !ImageElement.IMAGE_LOADER.isInFlight(img)) {
+                img.requestImage(ImageLoader.Priority.NEIGHBOR);
+            }
+        }
+        neighborRequests.clear();
+        neighborRequests.addAll(neighbors);
+    }
+
+    private static <E extends ImageElement> void addNeighbor(List<E> neighbors, E img) {
+        if (img != null && img.isReadable() && !img.isImageInCache()) {
+            neighbors.add(img);
+        }
+    }
+
     @Override
     public void updateGraphicSelectionListener(ImageViewerPlugin<E> viewerPlugin) {
         if (viewerPlugin != null) {
@@ -1169,6 +1241,9 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
                 actionsInView.put(command, showLens);
                 if (showLens) {
                     if (lens == null) {
+                        // The lens magnifies the image processed by the view, it requires the full resolution
+                        imageLayer.setReducedResolution(false);
+                        imageLayer.updateDisplayOperations();
                         lens = new ZoomWin<>(this);
                     }
                     // resize if to big
@@ -1230,6 +1305,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
     @Override
     public void disposeView() {
         disableMouseAndKeyListener();
+        qualityTimer.stop();
         removeFocusListener(this);
         ToolTipManager.sharedInstance().unregisterComponent(this);
         imageLayer.removeLayerChangeListener(this);
@@ -1443,6 +1519,10 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
             Optional<ActionW> action = eventManager.getMouseAction(evt.getModifiersEx());
             DefaultView2d.this.setCursor(action.isPresent() ? action.get().getCursor() : DefaultView2d.DEFAULT_CURSOR);
+            interacting = action.isPresent() && INTERACTIVE_ACTIONS.contains(action.get());
+            if (interacting) {
+                qualityTimer.setInitialDelay(eventManager.getOptions().getIntProperty(P_INTERACTION_IDLE_DELAY, 250));
+            }
         }
 
         @Override
@@ -1450,9 +1530,33 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
             showPixelInfos(e);
         }
 
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            if (interacting) {
+                // Registered before the listeners of the actions, the frame of this event is rendered at reduced cost
+                imageLayer.setInteractive(true);
+                qualityTimer.restart();
+            }
+        }
+
         @Override
         public void mouseReleased(MouseEvent e) {
             DefaultView2d.this.setCursor(DefaultView2d.DEFAULT_CURSOR);
+            if (interacting) {
+                interacting = false;
+                qualityTimer.restart();
+            }
+        }
+    }
+
+    /**
+     * Renders again the image in full quality after an interaction.
+     */
+    protected void endInteraction() {
+        qualityTimer.stop();
+        if (imageLayer.isInteractive()) {
+            imageLayer.setInteractive(false);
+            imageLayer.updateDisplayOperations();
         }
     }
 
@@ -344,6 +344,7 @@ public class ZoomWin<E extends ImageElement> extends GraphicsPane implements Ima
         ImageOpNode node = imageLayer.getDisplayOpManager().getNode(AffineTransformOp.OP_NAME);
         if (img != null && node != null) {
             node.setParam(Param.INPUT_IMG, getSourceImage());
+            node.setParam(Param.INPUT_REGION, getSourceRegion());
             actionsInView.put(ActionW.ZOOM.cmd(), viewScale);
             super.zoom(Math.abs(viewScale));
             updateAffineTransform();
@@ -370,6 +371,21 @@ public class ZoomWin<E extends ImageElement> extends GraphicsPane implements Ima
         return view2d.getImageLayer().getDisplayOpManager().getLastNodeOutputImage();
     }
 
+    /**
+     * @return the region of the original image corresponding to the source image, null for the whole image
+     */
+    protected Rectangle getSourceRegion() {
+        SyncType type = (SyncType) actionsInView.get(ZoomWin.FREEZE_CMD);
+        if (SyncType.PARENT_PARAMETERS.equals(type) || SyncType.PARENT_IMAGE.equals(type)) {
+            return null;
+        }
+        ImageOpNode node = view2d.getImageLayer().getDisplayOpManager().getNode(AffineTransformOp.OP_NAME);
+        if (node != null) {
+            return (Rectangle) node.getParam(Param.INPUT_REGION);
+        }
+        return null;
+    }
+
     public void setFreezeImage(SyncType type) {
         actionsInView.put(ZoomWin.FREEZE_CMD, type);
         if (Objects.isNull(type) || SyncType.NONE.equals(type)) {
@@ -10,18 +10,32 @@
 package org.weasis.core.ui.model.layer.imp;
 
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.swing.SwingUtilities;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionW;
+import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.image.AffineTransformOp;
 import org.weasis.core.api.image.ImageOpEvent;
 import org.weasis.core.api.image.ImageOpNode;
@@ -35,6 +49,7 @@ import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.ImageLayer;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.util.LangUtil;
@@ -45,6 +60,7 @@ import org.weasis.core.ui.model.utils.ImageLayerChangeListener;
 import org.weasis.core.ui.model.utils.imp.DefaultUUID;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
+import org.weasis.opencv.op.ImageProcessor;
 
 /**
  * The Class RenderedImageLayer.
@@ -56,17 +72,50 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RenderedImageLayer.class);
 
+    // The region is aligned on a grid and processed with an extension, so a small panning reuses the same region. The
+    // grid is a multiple of the maximum reduction of the pyramid.
+    private static final int REGION_GRID = 1 << ImageElement.MAX_PYRAMID_LEVEL;
+    // Above this part of the image, the whole image is processed
+    private static final double REGION_MAX_RATIO = 0.7;
+    // Processing time of an intermediate frame during an interaction (about 30 frames per second)
+    public static final long INTERACTIVE_FRAME_BUDGET_MS = 33L;
+
     private final SimpleOpManager disOpManager;
     private final List<ImageLayerChangeListener<E>> listenerList;
     private final List<OpEventListener> opListeners;
 
     private OpManager preprocessing;
     private E sourceImage;
+    // Image in loading, the previous frame is displayed until it is available
+    private E loadingImage;
+    private CompletableFuture<PlanarImage> loadingRequest;
     private PlanarImage displayImage;
+    // Conversion of the display image for Java2D, kept until the display image changes
+    private PlanarImage bufferedImageSource;
+    private BufferedImage bufferedImage;
+    private VolatileImage volatileImage;
+    private boolean volatileImageValid;
     private Boolean visible = true;
     private boolean enableDispOperations = true;
     private Point offset;
 
+    // Visible region of the image processed by the display operations
+    private boolean visibleRegionProcessing;
+    private boolean reducedResolution = true;
+    private PlanarImage regionSource;
+    private PlanarImage regionImage;
+    private Rectangle region;
+    private int level;
+    // Level of the pyramid in building, the full resolution is processed until it is available
+    private CompletableFuture<PlanarImage> pyramidRequest;
+    private PlanarImage pyramidRequestSource;
+    private int pyramidRequestLevel;
+
+    // Intermediate frames of an interaction rendered at a reduced cost
+    private boolean interactive;
+    private LongSummaryStatistics interactiveFrames = new LongSummaryStatistics();
+    private long overBudgetFrames;
+
     public RenderedImageLayer() {
         this(null);
     }
@@ -185,6 +234,10 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     @Override
     public void setImage(E image, OpManager preprocessing) {
         boolean init = (image != null && !image.equals(this.sourceImage)) || (image == null && sourceImage != null);
+        if (init) {
+            pyramidRequest = null;
+            pyramidRequestSource = null;
+        }
         this.sourceImage = image;
         this.preprocessing = preprocessing;
         // Rectify non square pixel image in the first operation
@@ -205,11 +258,59 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         }
 
         if (preprocessing != null || init) {
-            disOpManager.setFirstNode(getSourceRenderedImage());
-            updateDisplayOperations();
+            if (sourceImage != null && sourceImage.isReadable() && !sourceImage.isImageInCache()
+                && SwingUtilities.isEventDispatchThread()) {
+                loadImageAsync(sourceImage);
+            } else {
+                cancelImageLoading();
+                disOpManager.setFirstNode(getSourceRenderedImage());
+                updateDisplayOperations();
+            }
         }
     }
 
+    /**
+     * Loads the image without blocking the EDT. The previous frame (or nothing when there is no previous frame) is
+     * displayed while waiting.
+     */
+    private void loadImageAsync(E image) {
+        if (loadingImage == image) {
+            return;
+        }
+        // The previous frame is not displayed any more, its request keeps only the priority of the other callers
+        cancelImageLoading();
+        loadingImage = image;
+        CompletableFuture<PlanarImage> request = image.getImageAsync(ImageLoader.Priority.VISIBLE);
+        loadingRequest = request;
+        request.whenComplete((img, t) -> GuiExecutor.instance().execute(() -> {
+            if (loadingRequest == request) {
+                loadingImage = null;
+                loadingRequest = null;
+                if (sourceImage == image) {
+                    if (t != null && !(t instanceof CancellationException)) {
+                        // The image has been marked as not readable by the loading
+                        LOGGER.error("Cannot load the image: {}", image, t); //$NON-NLS-1$
+                    }
+                    disOpManager.setFirstNode(t == null ? image.getImage(img, preprocessing) : null);
+                    updateDisplayOperations();
+                }
+            }
+        }));
+    }
+
+    private void cancelImageLoading() {
+        CompletableFuture<PlanarImage> request = loadingRequest;
+        loadingImage = null;
+        loadingRequest = null;
+        if (request != null) {
+            request.cancel(false);
+        }
+    }
+
+    public boolean isImageLoading() {
+        return loadingImage != null;
+    }
+
     public void drawImage(Graphics2D g2d) {
         // Get the clipping rectangle
         if (!visible || displayImage == null) {
@@ -229,8 +330,10 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         }
 
         try {
-            g2d.drawRenderedImage(ImageConversion.toBufferedImage(displayImage),
-                AffineTransform.getTranslateInstance(0.0, 0.0));
+            BufferedImage img = getDisplayBufferedImage();
+            if (!drawVolatileImage(g2d, img)) {
+                g2d.drawRenderedImage(img, AffineTransform.getTranslateInstance(0.0, 0.0));
+            }
         } catch (Exception e) {
             LOGGER.error("Cannot draw the image", e);//$NON-NLS-1$
             if ("java.io.IOException: closed".equals(e.getMessage())) { //$NON-NLS-1$
@@ -250,6 +353,70 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
     }
 
+    /**
+     * @return the display image converted for Java2D, the conversion is done only when the display image has changed
+     */
+    private BufferedImage getDisplayBufferedImage() {
+        if (bufferedImage == null || bufferedImageSource != displayImage) {
+            bufferedImage = ImageConversion.toBufferedImage(displayImage);
+            bufferedImageSource = displayImage;
+            volatileImageValid = false;
+        }
+        return bufferedImage;
+    }
+
+    private void invalidateDisplayBuffer() {
+        bufferedImage = null;
+        bufferedImageSource = null;
+        volatileImageValid = false;
+        if (volatileImage != null) {
+            volatileImage.flush();
+            volatileImage = null;
+        }
+    }
+
+    /**
+     * Draws the image from a copy which can be accelerated by the graphics device (only when painting on the screen).
+     *
+     * @return false when the image cannot be drawn by this way
+     */
+    private boolean drawVolatileImage(Graphics2D g2d, BufferedImage img) {
+        GraphicsConfiguration gc = g2d.getDeviceConfiguration();
+        if (img == null || gc == null || gc.getDevice().getType() != GraphicsDevice.TYPE_RASTER_SCREEN) {
+            return false;
+        }
+        int width = img.getWidth();
+        int height = img.getHeight();
+        do {
+            int state = volatileImage == null ? VolatileImage.IMAGE_INCOMPATIBLE : volatileImage.validate(gc);
+            if (state == VolatileImage.IMAGE_INCOMPATIBLE || volatileImage.getWidth() != width
+                || volatileImage.getHeight() != height) {
+                if (volatileImage != null) {
+                    volatileImage.flush();
+                }
+                volatileImage = gc.createCompatibleVolatileImage(width, height);
+                if (volatileImage == null) {
+                    return false;
+                }
+                volatileImageValid = false;
+            } else if (state == VolatileImage.IMAGE_RESTORED) {
+                volatileImageValid = false;
+            }
+
+            if (!volatileImageValid) {
+                Graphics2D g = volatileImage.createGraphics();
+                try {
+                    g.drawImage(img, 0, 0, null);
+                } finally {
+                    g.dispose();
+                }
+                volatileImageValid = true;
+            }
+            g2d.drawImage(volatileImage, 0, 0, null);
+        } while (volatileImage.contentsLost());
+        return true;
+    }
+
     public void drawImageForPrinter(Graphics2D g2d, double viewScale, Canvas canvas) {
         // Get the clipping rectangle
         if (!visible || displayImage == null) {
@@ -347,27 +514,26 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         // Do not print lower than 72 dpi (drawRenderedImage can only decrease the size for printer not interpolate)
         imageResX = imageResX < ratioX ? ratioX : imageResX;
         imageResY = imageResY < ratioY ? ratioY : imageResY;
-        matrix[0] = imageResX;
-        matrix[4] = imageResY;
+        // The parameter values are not modified in place, the original matrix is restored after printing
+        double[] printMatrix = matrix.clone();
+        printMatrix[0] = imageResX;
+        printMatrix[4] = imageResY;
 
         double rx = ratioX / imageResX;
         double ry = ratioY / imageResY;
         Rectangle2D b =
             new Rectangle2D.Double(bound.getX() / rx, bound.getY() / ry, bound.getWidth() / rx, bound.getHeight() / ry);
-        matrix[2] = offsetX / rx;
-        matrix[5] = offsetY / ry;
-        disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_AFFINE_MATRIX, matrix);
+        printMatrix[2] = offsetX / rx;
+        printMatrix[5] = offsetY / ry;
+        disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_AFFINE_MATRIX, printMatrix);
         disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_DST_BOUNDS, b);
         PlanarImage img = bound.equals(b) ? displayImage : disOpManager.process();
 
-        matrix[0] = ratioX;
-        matrix[4] = ratioY;
-        matrix[2] = offsetX;
-        matrix[5] = offsetY;
         disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_AFFINE_MATRIX, matrix);
         disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_DST_BOUNDS, bound);
 
-        g2d.drawRenderedImage(ImageConversion.toBufferedImage(img), AffineTransform.getScaleInstance(rx, ry));
+        g2d.drawRenderedImage(img == displayImage ? getDisplayBufferedImage() : ImageConversion.toBufferedImage(img),
+            AffineTransform.getScaleInstance(rx, ry));
 
         g2d.setClip(clip);
     }
@@ -375,6 +541,10 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     public void dispose() {
         sourceImage = null;
         displayImage = null;
+        invalidateDisplayBuffer();
+        regionSource = null;
+        regionImage = null;
+        level = 0;
         listenerList.clear();
         opListeners.clear();
     }
@@ -430,12 +600,266 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
     @Override
     public void updateDisplayOperations() {
-        if (isEnableDispOperations()) {
+        // Keep the previous frame while the image is loading
+        if (isEnableDispOperations() && loadingImage == null) {
+            long start = System.nanoTime();
+            updateVisibleRegion();
             displayImage = disOpManager.process();
+            if (interactive) {
+                long time = (System.nanoTime() - start) / 1000000L;
+                interactiveFrames.accept(time);
+                if (time > INTERACTIVE_FRAME_BUDGET_MS) {
+                    overBudgetFrames++;
+                }
+            }
+            if (displayImage != bufferedImageSource) {
+                // Release the previous conversion
+                bufferedImage = null;
+                bufferedImageSource = null;
+            }
             fireImageChanged();
         }
     }
 
+    public boolean isVisibleRegionProcessing() {
+        return visibleRegionProcessing;
+    }
+
+    /**
+     * When enabled, the display operations preceding the affine transformation process only the region of the image
+     * visible in the view (plus a margin), so the window/level and the filters do not process the whole image when it
+     * is zoomed. Requires that all these operations support a region (see ImageOpNode.getRegionMargin()), otherwise the
+     * whole image is processed.
+     * <p>
+     * When the image is zoomed out, the operations also process the level of the image pyramid matching the zoom (see
+     * ImageElement.getPyramidLevel()) when they all support a reduced resolution.
+     */
+    public void setVisibleRegionProcessing(boolean visibleRegionProcessing) {
+        this.visibleRegionProcessing = visibleRegionProcessing;
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * When enabled, the display operations render intermediate frames of an interaction (zoom, pan, window/level...)
+     * at a reduced cost: nearest neighbor interpolation and a more reduced level of the image pyramid (see
+     * {@link #setReducedResolution(boolean)}). The full quality must be rendered again when the interaction ends.
+     */
+    public void setInteractive(boolean interactive) {
+        if (this.interactive != interactive) {
+            this.interactive = interactive;
+            disOpManager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_INTERACTIVE, interactive);
+            if (interactive) {
+                interactiveFrames = new LongSummaryStatistics();
+                overBudgetFrames = 0;
+            } else if (interactiveFrames.getCount() > 0) {
+                LOGGER.debug("Interactive frames: {}, average: {} ms, max: {} ms, over the budget of {} ms: {}", //$NON-NLS-1$
+                    interactiveFrames.getCount(), Math.round(interactiveFrames.getAverage()), interactiveFrames.getMax(),
+                    INTERACTIVE_FRAME_BUDGET_MS, overBudgetFrames);
+            }
+        }
+    }
+
+    /**
+     * @return the processing times in milliseconds of the intermediate frames of the current or the last interaction
+     */
+    public LongSummaryStatistics getInteractiveFrameStatistics() {
+        return interactiveFrames;
+    }
+
+    /**
+     * @return the number of intermediate frames of the current or the last interaction exceeding
+     *         {@link #INTERACTIVE_FRAME_BUDGET_MS}
+     */
+    public long getOverBudgetFrames() {
+        return overBudgetFrames;
+    }
+
+    public boolean isReducedResolution() {
+        return reducedResolution;
+    }
+
+    /**
+     * Allows processing a reduced resolution of the image when the visible region processing is enabled (see
+     * {@link #setVisibleRegionProcessing(boolean)}).
+     */
+    public void setReducedResolution(boolean reducedResolution) {
+        this.reducedResolution = reducedResolution;
+    }
+
+    private void updateVisibleRegion() {
+        if (!visibleRegionProcessing && regionImage == null) {
+            return;
+        }
+        PlanarImage input = disOpManager.getFirstNodeInputImage();
+        if (input != null && input == regionImage) {
+            input = regionSource;
+        }
+        int lvl = visibleRegionProcessing && input != null ? getResolutionLevel() : 0;
+        Rectangle visible = visibleRegionProcessing && input != null ? getVisibleRegion(input, lvl) : null;
+        if (visible == null || visible.isEmpty()) {
+            setRegion(input, null, lvl);
+        } else if (input != regionSource || region == null || !region.contains(visible)) {
+            int ext = Math.max(visible.width, visible.height) / 2;
+            int x = Math.floorDiv(visible.x - ext, REGION_GRID) * REGION_GRID;
+            int y = Math.floorDiv(visible.y - ext, REGION_GRID) * REGION_GRID;
+            Rectangle r = new Rectangle(x, y, visible.x + visible.width + ext - x, visible.y + visible.height + ext - y);
+            r = r.intersection(new Rectangle(0, 0, input.width(), input.height()));
+            if (r.width * (double) r.height > REGION_MAX_RATIO * input.width() * input.height()) {
+                r = null;
+            }
+            setRegion(input, r, lvl);
+        } else {
+            setRegion(input, region, lvl);
+        }
+    }
+
+    /**
+     * @return the level of the image pyramid matching the scale of the affine transformation or 0 when an operation
+     *         preceding the affine transformation requires the full resolution
+     */
+    private int getResolutionLevel() {
+        ImageOpNode affine = disOpManager.getNode(AffineTransformOp.OP_NAME);
+        if (!reducedResolution || affine == null || !affine.isEnabled() || sourceImage == null) {
+            return 0;
+        }
+        for (ImageOpNode op : disOpManager.getOperations()) {
+            if (op == affine) {
+                break;
+            }
+            if (op.isEnabled() && !op.isReducedResolutionSupported()) {
+                return 0;
+            }
+        }
+        double[] m = (double[]) affine.getParam(AffineTransformOp.P_AFFINE_MATRIX);
+        if (m == null) {
+            return 0;
+        }
+        double scale = Math.sqrt(Math.abs(m[0] * m[4] - m[1] * m[3]));
+        // During an interaction, subsample the image by one more level
+        return ImageElement.getPyramidLevel(interactive ? scale / 2.0 : scale);
+    }
+
+    /**
+     * @return the region of the image required to build the visible part of the view or null when the whole image must
+     *         be processed
+     */
+    private Rectangle getVisibleRegion(PlanarImage image, int lvl) {
+        ImageOpNode affine = disOpManager.getNode(AffineTransformOp.OP_NAME);
+        if (affine == null || !affine.isEnabled()) {
+            return null;
+        }
+        int margin = 0;
+        for (ImageOpNode op : disOpManager.getOperations()) {
+            if (op.isEnabled()) {
+                int m = op.getRegionMargin();
+                if (m < 0) {
+                    return null;
+                }
+                margin += m;
+            }
+            if (op == affine) {
+                break;
+            }
+        }
+
+        double[] m = (double[]) affine.getParam(AffineTransformOp.P_AFFINE_MATRIX);
+        Rectangle2D bounds = (Rectangle2D) affine.getParam(AffineTransformOp.P_DST_BOUNDS);
+        if (m == null || bounds == null || bounds.isEmpty()) {
+            return null;
+        }
+        try {
+            // OpenCV matrix to Java2D matrix
+            AffineTransform inverse = new AffineTransform(m[0], m[3], m[1], m[4], m[2], m[5]).createInverse();
+            Rectangle r = inverse
+                .createTransformedShape(new Rectangle2D.Double(0, 0, bounds.getWidth(), bounds.getHeight())).getBounds();
+            // The margin is in pixels of the processed level
+            r.grow(margin << lvl, margin << lvl);
+            return r.intersection(new Rectangle(0, 0, image.width(), image.height()));
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    private void setRegion(PlanarImage source, Rectangle r, int lvl) {
+        if (r == null && lvl == 0) {
+            regionImage = null;
+            regionSource = null;
+        } else if (source != regionSource || !Objects.equals(r, region) || lvl != level || regionImage == null) {
+            PlanarImage img = lvl == 0 ? source : getPyramidLevel(source, lvl);
+            if (img == null) {
+                // Level not available (e.g. preprocessed image, image too small or level in building)
+                setRegion(source, r, 0);
+                return;
+            }
+            if (r == null) {
+                regionImage = img;
+            } else {
+                // The region is aligned on the grid, its origin is a multiple of the reduction
+                Rectangle lr = new Rectangle(r.x >> lvl, r.y >> lvl, ((r.x + r.width - 1) >> lvl) - (r.x >> lvl) + 1,
+                    ((r.y + r.height - 1) >> lvl) - (r.y >> lvl) + 1);
+                lr = lr.intersection(new Rectangle(0, 0, img.width(), img.height()));
+                regionImage = ImageProcessor.crop(img.toMat(), lr);
+            }
+            regionSource = source;
+        }
+        region = r;
+        level = regionImage == null ? 0 : lvl;
+        disOpManager.setFirstNode(regionImage == null ? source : regionImage);
+
+        ImageOpNode affine = disOpManager.getNode(AffineTransformOp.OP_NAME);
+        boolean before = affine != null;
+        Integer levelValue = level == 0 ? null : level;
+        for (ImageOpNode op : disOpManager.getOperations()) {
+            Rectangle value = before ? r : null;
+            if (!Objects.equals(op.getParam(ImageOpNode.Param.INPUT_REGION), value)) {
+                op.setParam(ImageOpNode.Param.INPUT_REGION, value);
+            }
+            Integer l = before ? levelValue : null;
+            if (!Objects.equals(op.getParam(ImageOpNode.Param.INPUT_LEVEL), l)) {
+                op.setParam(ImageOpNode.Param.INPUT_LEVEL, l);
+            }
+            if (op == affine) {
+                before = false;
+            }
+        }
+    }
+
+    /**
+     * @return the level of the image pyramid or null when it is not available yet, the level is then built in
+     *         background and the image is processed again when it is available
+     */
+    private PlanarImage getPyramidLevel(PlanarImage source, int lvl) {
+        if (pyramidRequest != null && pyramidRequestSource == source && pyramidRequestLevel == lvl) {
+            if (!pyramidRequest.isDone()) {
+                return null;
+            }
+        } else {
+            pyramidRequest = sourceImage.getPyramidLevelAsync(source, lvl);
+            pyramidRequestSource = source;
+            pyramidRequestLevel = lvl;
+            if (!pyramidRequest.isDone()) {
+                CompletableFuture<PlanarImage> request = pyramidRequest;
+                E image = sourceImage;
+                request.whenComplete((img, t) -> GuiExecutor.instance().execute(() -> {
+                    if (pyramidRequest == request && sourceImage == image) {
+                        updateDisplayOperations();
+                    }
+                }));
+                return null;
+            }
+        }
+        try {
+            return pyramidRequest.getNow(null);
+        } catch (CompletionException | CancellationException e) {
+            LOGGER.error("Cannot build the level {} of the image pyramid", lvl, e); //$NON-NLS-1$
+            pyramidRequest = CompletableFuture.completedFuture(null);
+            return null;
+        }
+    }
+
     @Override
     public MeasurementsAdapter getMeasurementAdapter(Unit displayUnit) {
         if (hasContent()) {
@@ -9,8 +9,10 @@
  *******************************************************************************/
 package org.weasis.dicom.codec;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.CvType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.MathUtil;
@@ -18,32 +20,114 @@ import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.image.util.WindLevelParameters;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.MemoryGovernor;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
 import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.dicom.codec.display.PresetWindowLevel;
 import org.weasis.dicom.codec.geometry.GeometryOfSlice;
 import org.weasis.dicom.codec.utils.DicomImageUtils;
 import org.weasis.dicom.codec.utils.LutParameters;
+import org.weasis.dicom.codec.utils.VoiLutParameters;
 import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
 
+import java.awt.Dimension;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.RenderedImage;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class DicomImageElement extends ImageElement {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DicomImageElement.class);
 
     private static final SoftHashMap<LutParameters, LookupTableCV> LUT_Cache = new SoftHashMap<>();
+    // JVM properties: shared by all the images and the views
+    private static final int VOI_LUT_CACHE_SIZE = Integer.getInteger("weasis.voi.lut.cache.size", 64); //$NON-NLS-1$
+    private static final int FUSED_LUT_CACHE_SIZE = Integer.getInteger("weasis.fused.lut.cache.size", 64); //$NON-NLS-1$
+    private static final Map<VoiLutParameters, LookupTableCV> VOI_LUT_CACHE =
+        new LinkedHashMap<VoiLutParameters, LookupTableCV>(16, 0.75f, true) {
+            private static final long serialVersionUID = 4128545162165735457L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<VoiLutParameters, LookupTableCV> eldest) {
+                return size() > VOI_LUT_CACHE_SIZE;
+            }
+        };
+    private static final Map<FusedLutKey, LookupTableCV> FUSED_LUT_CACHE =
+        new LinkedHashMap<FusedLutKey, LookupTableCV>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2416290787311880113L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FusedLutKey, LookupTableCV> eldest) {
+                return size() > FUSED_LUT_CACHE_SIZE;
+            }
+        };
+
+    static {
+        // A modality LUT is quickly computed again
+        MemoryGovernor.getInstance().register("Modality LUTs", Memory.HEAP, //$NON-NLS-1$
+            Reclaimable.of(() -> LUT_Cache.getWeight(DicomImageElement::getLutSize),
+                bytes -> LUT_Cache.reclaim(bytes, DicomImageElement::getLutSize)),
+            () -> 2.0);
+        MemoryGovernor.getInstance().register("Fused display LUTs", Memory.HEAP, //$NON-NLS-1$
+            Reclaimable.of(() -> getLutCacheSize(FUSED_LUT_CACHE), bytes -> reclaimLutCache(FUSED_LUT_CACHE, bytes)),
+            () -> 2.0);
+        MemoryGovernor.getInstance().register("VOI LUTs", Memory.HEAP, //$NON-NLS-1$
+            Reclaimable.of(() -> getLutCacheSize(VOI_LUT_CACHE), bytes -> reclaimLutCache(VOI_LUT_CACHE, bytes)),
+            () -> 2.0);
+    }
+
+    /**
+     * Parameters of the composition of the modality, VOI and presentation LUTs. The modality and presentation LUTs are
+     * compared by identity (they come from a cache or from the presentation state).
+     */
+    private static final class FusedLutKey {
+        private final int depth;
+        private final LookupTableCV modalityLookup;
+        private final LookupTableCV prLookup;
+        private final VoiLutParameters voi;
+
+        FusedLutKey(int depth, LookupTableCV modalityLookup, LookupTableCV prLookup, VoiLutParameters voi) {
+            this.depth = depth;
+            this.modalityLookup = modalityLookup;
+            this.prLookup = prLookup;
+            this.voi = voi;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FusedLutKey)) {
+                return false;
+            }
+            FusedLutKey other = (FusedLutKey) obj;
+            return depth == other.depth && modalityLookup == other.modalityLookup && prLookup == other.prLookup
+                && Objects.equals(voi, other.voi);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Objects.hash(depth, voi);
+            result = 31 * result + System.identityHashCode(modalityLookup);
+            return 31 * result + System.identityHashCode(prLookup);
+        }
+    }
 
     private List<PresetWindowLevel> windowingPresetCollection = null;
     private Collection<LutShape> lutShapeCollection = null;
@@ -425,6 +509,12 @@ public class DicomImageElement extends ImageElement {
         return modalityLookup;
     }
 
+    private static long getLutSize(LookupTableCV lut) {
+        int type = lut.getDataType();
+        int elemSize = type == DataBuffer.TYPE_BYTE ? 1 : type == DataBuffer.TYPE_INT ? 4 : 2;
+        return (long) lut.getNumEntries() * lut.getNumBands() * elemSize;
+    }
+
     /**
      *
      * @param window
@@ -444,8 +534,14 @@ public class DicomImageElement extends ImageElement {
             return null;
         }
 
-        int minValue;
-        int maxValue;
+        return getVOILookup(getVoiLutParameters(tagable, window, level, minLevel, maxLevel, shape, fillLutOutside,
+            pixelPadding));
+    }
+
+    private VoiLutParameters getVoiLutParameters(TagReadable tagable, double window, double level, double minLevel,
+        double maxLevel, LutShape shape, boolean fillLutOutside, boolean pixelPadding) {
+        int minValue = (int) minLevel;
+        int maxValue = (int) maxLevel;
         /*
          * When pixel padding is activated, VOI LUT must extend to the min bit stored value when MONOCHROME2 and to the
          * max bit stored value when MONOCHROME1. See C.7.5.1.1.2
@@ -453,13 +549,102 @@ public class DicomImageElement extends ImageElement {
         if (fillLutOutside || (getPaddingValue() != null && isPhotometricInterpretationMonochrome())) {
             minValue = getMinAllocatedValue(tagable, pixelPadding);
             maxValue = getMaxAllocatedValue(tagable, pixelPadding);
+        }
+        return new VoiLutParameters(shape, window, level, minValue, maxValue, 8, false,
+            isPhotometricInterpretationInverse(tagable));
+    }
+
+    /**
+     * Returns the VOI LUT from a cache shared by all the images, so linked views or successive frames with the same
+     * parameters do not build the table again.
+     */
+    private static LookupTableCV getVOILookup(VoiLutParameters params) {
+        synchronized (VOI_LUT_CACHE) {
+            LookupTableCV lookup = VOI_LUT_CACHE.get(params);
+            if (lookup != null) {
+                return lookup;
+            }
+        }
+        LookupTableCV lookup = DicomImageUtils.createWindowLevelLut(params);
+        if (lookup != null) {
+            synchronized (VOI_LUT_CACHE) {
+                VOI_LUT_CACHE.put(params, lookup);
+            }
+        }
+        return lookup;
+    }
+
+    private static long getLutCacheSize(Map<?, LookupTableCV> cache) {
+        synchronized (cache) {
+            long size = 0;
+            for (LookupTableCV lut : cache.values()) {
+                size += getLutSize(lut);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Removes the least recently used tables of a cache.
+     */
+    private static long reclaimLutCache(Map<?, LookupTableCV> cache, long bytes) {
+        synchronized (cache) {
+            long freed = 0;
+            Iterator<LookupTableCV> it = cache.values().iterator();
+            while (freed < bytes && it.hasNext()) {
+                freed += getLutSize(it.next());
+                it.remove();
+            }
+            return freed;
+        }
+    }
+
+    /**
+     * Returns the composition of the modality, VOI and presentation LUTs for the stored values of an image, so they are
+     * applied in one pass. The tables are cached by their parameters.
+     *
+     * @return an 8-bit table or null when the LUTs cannot be composed for this image
+     */
+    private LookupTableCV getFusedLookup(PlanarImage source, WindLevelParameters p, LookupTableCV modalityLookup,
+        LookupTableCV prLutData, boolean applyVoi) {
+        if (source.channels() != 1) {
+            return null;
+        }
+        int depth = CvType.depth(source.type());
+        int minValue;
+        int maxValue;
+        if (depth == CvType.CV_8U) {
+            minValue = 0;
+            maxValue = 255;
+        } else if (depth == CvType.CV_16U) {
+            minValue = 0;
+            maxValue = 65535;
+        } else if (depth == CvType.CV_16S) {
+            minValue = Short.MIN_VALUE;
+            maxValue = Short.MAX_VALUE;
         } else {
-            minValue = minLevel.intValue();
-            maxValue = maxLevel.intValue();
+            return null;
         }
 
-        return DicomImageUtils.createWindowLevelLut(shape, window, level, minValue, maxValue, 8, false,
-            isPhotometricInterpretationInverse(tagable));
+        TagReadable tags = p.getPresentationStateTags();
+        boolean voi = applyVoi && p.getLutShape() != null;
+        VoiLutParameters voiParams = voi ? getVoiLutParameters(tags, p.getWindow(), p.getLevel(), p.getLevelMin(),
+            p.getLevelMax(), p.getLutShape(), p.isFillOutsideLutRange(), p.isPixelPadding()) : null;
+        FusedLutKey key = new FusedLutKey(depth, modalityLookup, prLutData, voiParams);
+        synchronized (FUSED_LUT_CACHE) {
+            LookupTableCV lookup = FUSED_LUT_CACHE.get(key);
+            if (lookup != null) {
+                return lookup;
+            }
+        }
+        LookupTableCV voiLookup = voiParams == null ? null : getVOILookup(voiParams);
+        LookupTableCV lookup = DicomImageUtils.createFusedLut(minValue, maxValue, modalityLookup, voiLookup, prLutData);
+        if (lookup != null) {
+            synchronized (FUSED_LUT_CACHE) {
+                FUSED_LUT_CACHE.put(key, lookup);
+            }
+        }
+        return lookup;
     }
 
     /**
@@ -513,28 +698,29 @@ public class DicomImageElement extends ImageElement {
          */
 
         if (img != null && !isImageAvailable()) {
-            // Cannot trust SmallestImagePixelValue and LargestImagePixelValue values! So search min and max values
             int bitsStored = getBitsStored();
             int bitsAllocated = getBitsAllocated();
 
             minPixelValue = null;
             maxPixelValue = null;
 
-            boolean monochrome = isPhotometricInterpretationMonochrome();
-            if (monochrome) {
-                Integer paddingValue = getPaddingValue();
-                if (paddingValue != null) {
-                    Integer paddingLimit = getPaddingLimit();
-                    Integer paddingValueMin =
-                        (paddingLimit == null) ? paddingValue : Math.min(paddingValue, paddingLimit);
-                    Integer paddingValueMax =
-                        (paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit);
-                    findMinMaxValues(img, paddingValueMin, paddingValueMax);
+            if (!readStoredMinMaxValues() && !readHeaderMinMaxValues()) {
+                boolean monochrome = isPhotometricInterpretationMonochrome();
+                if (monochrome) {
+                    Integer paddingValue = getPaddingValue();
+                    if (paddingValue != null) {
+                        Integer paddingLimit = getPaddingLimit();
+                        Integer paddingValueMin =
+                            (paddingLimit == null) ? paddingValue : Math.min(paddingValue, paddingLimit);
+                        Integer paddingValueMax =
+                            (paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit);
+                        findMinMaxValues(img, paddingValueMin, paddingValueMax);
+                    }
                 }
-            }
 
-            if (!isImageAvailable()) {
-                super.findMinMaxValues(img, !monochrome);
+                if (!isImageAvailable()) {
+                    computeMinMaxValues(img, !monochrome);
+                }
             }
 
             if (bitsStored < bitsAllocated && isImageAvailable()) {
@@ -563,6 +749,71 @@ public class DicomImageElement extends ImageElement {
         }
     }
 
+    @Override
+    protected void resetMinMaxValues() {
+        super.resetMinMaxValues();
+        // Built from the min and max values
+        windowingPresetCollection = null;
+        lutShapeCollection = null;
+    }
+
+    @Override
+    public PlanarImage getRenderedPreview(int size) {
+        // The icon of the instance has already the display values
+        PlanarImage icon = ReducedImageReader.readIcon(getMediaReader().getDicomObject(), size);
+        return icon == null ? super.getRenderedPreview(size) : icon;
+    }
+
+    /**
+     * Renders the reduced image of a monochrome image with the first window of the header or with the min and max
+     * values of its pixels (excluding the padding values). The window is converted to the stored values, so the modality
+     * LUT which depends on the min and max values of the full image is not required.
+     */
+    @Override
+    protected PlanarImage getRenderedPreview(PlanarImage img) {
+        int datatype = ImageConversion.convertToDataType(img.type());
+        if (!isPhotometricInterpretationMonochrome() || datatype >= DataBuffer.TYPE_INT) {
+            return super.getRenderedPreview(img);
+        }
+        double slope = getRescaleSlope(null);
+        double intercept = getRescaleIntercept(null);
+        double[] levels = TagD.getTagValue(this, Tag.WindowCenter, double[].class);
+        double[] windows = TagD.getTagValue(this, Tag.WindowWidth, double[].class);
+        double window;
+        double level;
+        if (levels != null && windows != null && levels.length > 0 && windows.length > 0
+            && !MathUtil.isEqualToZero(slope)) {
+            window = windows[0] / Math.abs(slope);
+            level = (levels[0] - intercept) / slope;
+        } else {
+            Integer paddingValue = getPaddingValue();
+            MinMaxLocResult val;
+            if (paddingValue == null) {
+                val = ImageProcessor.findMinMaxValues(img.toMat());
+            } else {
+                Integer paddingLimit = getPaddingLimit();
+                val = ImageProcessor.findMinMaxValues(img.toMat(),
+                    paddingLimit == null ? paddingValue : Math.min(paddingValue, paddingLimit),
+                    paddingLimit == null ? paddingValue : Math.max(paddingValue, paddingLimit));
+            }
+            if (val == null) {
+                return super.getRenderedPreview(img);
+            }
+            window = val.maxVal - val.minVal;
+            level = val.minVal + window / 2.0;
+        }
+
+        double high = level + window / 2.0;
+        double outSlope = 255.0 / Math.max(1.0, window);
+        double yInt = 255.0 - outSlope * high;
+        // A negative rescale slope inverts the display like MONOCHROME1
+        if (isPhotometricInterpretationInverse(null) ^ slope < 0.0) {
+            outSlope = -outSlope;
+            yInt = 255.0 - yInt;
+        }
+        return ImageProcessor.rescaleToByte(img.toMat(), outSlope, yInt);
+    }
+
     /**
      * Computes Min/Max values from Image excluding range of values provided
      *
@@ -578,18 +829,49 @@ public class DicomImageElement extends ImageElement {
             } else {
                 MinMaxLocResult val = ImageProcessor.findMinMaxValues(img.toMat(), paddingValueMin, paddingValueMax);
                 if (val != null) {
-                    this.minPixelValue = val.minVal;
-                    this.maxPixelValue = val.maxVal;
-                }
-                // Handle special case when min and max are equal, ex. black image
-                // + 1 to max enables to display the correct value
-                if (this.minPixelValue.equals(this.maxPixelValue)) {
-                    this.maxPixelValue += 1.0;
+                    setComputedMinMaxValues(val.minVal, val.maxVal);
                 }
             }
         }
     }
 
+    /**
+     * Gets the min and max values from the Smallest and Largest Image Pixel Value attributes. The attributes are not
+     * always reliable, so they are used only when enabled (weasis.pixel.minmax.header), when they are consistent with
+     * the bits stored and the modality LUT, when there is no pixel padding (the values may include the padding) and
+     * when the stored bits are the low bits (the pixel values are not shifted or masked when the high bit is not the
+     * last stored bit).
+     *
+     * @return true when the values have been found
+     */
+    private boolean readHeaderMinMaxValues() {
+        if (!BundleTools.SYSTEM_PREFERENCES.getBooleanProperty("weasis.pixel.minmax.header", false) //$NON-NLS-1$
+            || !isPhotometricInterpretationMonochrome() || getPaddingValue() != null) {
+            return false;
+        }
+        Attributes dcm = getMediaReader().getDicomObject();
+        int bitsStored = getBitsStored();
+        if (dcm == null || dcm.getInt(Tag.HighBit, bitsStored - 1) != bitsStored - 1
+            || !dcm.containsValue(Tag.SmallestImagePixelValue) || !dcm.containsValue(Tag.LargestImagePixelValue)) {
+            return false;
+        }
+        int min = dcm.getInt(Tag.SmallestImagePixelValue, 0);
+        int max = dcm.getInt(Tag.LargestImagePixelValue, 0);
+        boolean signed = isPixelRepresentationSigned();
+        int minInValue = signed ? -(1 << (bitsStored - 1)) : 0;
+        int maxInValue = signed ? (1 << (bitsStored - 1)) - 1 : (1 << bitsStored) - 1;
+        if (min >= max || min < minInValue || max > maxInValue) {
+            return false;
+        }
+        LookupTableCV mLUTSeq = (LookupTableCV) getTagValue(TagW.ModalityLUTData);
+        if (mLUTSeq != null && (min < mLUTSeq.getOffset() || max >= mLUTSeq.getOffset() + mLUTSeq.getNumEntries())) {
+            return false;
+        }
+        this.minPixelValue = (double) min;
+        this.maxPixelValue = (double) max;
+        return true;
+    }
+
     public double[] getDisplayPixelSize() {
         return new double[] { pixelSizeX, pixelSizeY };
     }
@@ -650,28 +932,27 @@ public class DicomImageElement extends ImageElement {
         if (datatype >= DataBuffer.TYPE_BYTE && datatype < DataBuffer.TYPE_INT) {
             LookupTableCV modalityLookup =
                 getModalityLookup(p.getPresentationStateTags(), pixPadding, p.isInverseLut());
-            ImageCV imageModalityTransformed =
-                modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
 
-            /*
-             * C.11.2.1.2 Window center and window width
-             *
-             * Theses Attributes shall be used only for Images with Photometric Interpretation (0028,0004) values of
-             * MONOCHROME1 and MONOCHROME2. They have no meaning for other Images.
-             */
-            if ((!p.isAllowWinLevelOnColorImage()
-                || MathUtil.isEqual(p.getWindow(), 255.0) && MathUtil.isEqual(p.getLevel(), 127.5))
-                && !isPhotometricInterpretationMonochrome()) {
+            if (!isVoiApplicable(p)) {
                 /*
                  * If photometric interpretation is not monochrome do not apply VOILUT. It is necessary for
                  * PALETTE_COLOR.
                  */
-                return imageModalityTransformed;
+                return modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
             }
 
             LookupTableCV prLutData = p.getPresentationStateLut();
+            boolean applyVoi = prLutData == null || p.getLutShape().getLookup() != null;
+            // Single pass from the stored values to the display values
+            LookupTableCV fusedLookup = getFusedLookup(imageSource, p, modalityLookup, prLutData, applyVoi);
+            if (fusedLookup != null) {
+                return fusedLookup.lookup(imageSource.toMat());
+            }
+
+            ImageCV imageModalityTransformed =
+                modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
             LookupTableCV voiLookup = null;
-            if(prLutData == null || p.getLutShape().getLookup() != null){
+            if (applyVoi) {
                 voiLookup = getVOILookup(p.getPresentationStateTags(), p.getWindow(), p.getLevel(), p.getLevelMin(),
                 p.getLevelMax(), p.getLutShape(), p.isFillOutsideLutRange(), pixPadding);
             }
@@ -699,6 +980,52 @@ public class DicomImageElement extends ImageElement {
         return null;
     }
 
+    @Override
+    public LookupTableCV getDisplayLookup(PlanarImage imageSource, Map<String, Object> params) {
+        if (imageSource == null) {
+            return null;
+        }
+        int datatype = ImageConversion.convertToDataType(imageSource.type());
+        if (datatype >= DataBuffer.TYPE_BYTE && datatype < DataBuffer.TYPE_INT) {
+            WindLevelParameters p = new WindLevelParameters(this, params);
+            if (isVoiApplicable(p)) {
+                LookupTableCV modalityLookup =
+                    getModalityLookup(p.getPresentationStateTags(), p.isPixelPadding(), p.isInverseLut());
+                LookupTableCV prLutData = p.getPresentationStateLut();
+                boolean applyVoi = prLutData == null || p.getLutShape().getLookup() != null;
+                return getFusedLookup(imageSource, p, modalityLookup, prLutData, applyVoi);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * C.11.2.1.2 Window center and window width
+     *
+     * Theses Attributes shall be used only for Images with Photometric Interpretation (0028,0004) values of MONOCHROME1
+     * and MONOCHROME2. They have no meaning for other Images.
+     */
+    private boolean isVoiApplicable(WindLevelParameters p) {
+        return isPhotometricInterpretationMonochrome() || p.isAllowWinLevelOnColorImage()
+            && !(MathUtil.isEqual(p.getWindow(), 255.0) && MathUtil.isEqual(p.getLevel(), 127.5));
+    }
+
+    @Override
+    public boolean isPyramidSupported() {
+        // The smoothing would mix the padding values and the embedded overlay bits with the pixel values
+        return getPaddingValue() == null && getTagValue(TagW.OverlayBitMask) == null;
+    }
+
+    @Override
+    public Dimension getImageDimension() {
+        Integer rows = TagD.getTagValue(this, Tag.Rows, Integer.class);
+        Integer columns = TagD.getTagValue(this, Tag.Columns, Integer.class);
+        if (rows != null && columns != null && rows > 0 && columns > 0) {
+            return new Dimension(columns, rows);
+        }
+        return super.getImageDimension();
+    }
+
     public GeometryOfSlice getDispSliceGeometry() {
         // The geometry is adapted to get square pixel as all the images are displayed with square pixel.
         double[] imgOr = TagD.getTagValue(this, Tag.ImageOrientationPatient, double[].class);
@@ -75,9 +75,13 @@ import org.weasis.core.api.media.data.FileCache;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
+import org.weasis.core.api.media.data.MemoryGovernor;
+import org.weasis.core.api.media.data.MemoryGovernor.Memory;
+import org.weasis.core.api.media.data.MemoryGovernor.Reclaimable;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SimpleTagable;
 import org.weasis.core.api.media.data.SoftHashMap;
+import org.weasis.core.api.media.data.TagMap;
 import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
@@ -273,6 +277,17 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             }
         };
 
+    // Rough size of a header in memory, the attributes are not measured
+    private static final long HEADER_WEIGHT = 64 * 1024L;
+
+    static {
+        // Reading a header again requires accessing the file
+        MemoryGovernor.getInstance().register("DICOM headers", Memory.HEAP, //$NON-NLS-1$
+            Reclaimable.of(() -> HEADER_CACHE.getWeight(h -> HEADER_WEIGHT),
+                bytes -> HEADER_CACHE.reclaim(bytes, h -> HEADER_WEIGHT)),
+            () -> 3.0);
+    }
+
     // The above softReference HEADER_CACHE shall be used instead of the following dcmMetadata variable to get access to
     // the current DicomObject unless it's virtual and then URI doesn't exit. This case appends when the dcmMetadata is
     // created within the application and is given to the ImageReader constructor
@@ -316,7 +331,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         super(dicomImageReaderSpi);
         this.uri = Objects.requireNonNull(uri);
         this.numberOfFrame = 0;
-        this.tags = new HashMap<>();
+        this.tags = new TagMap();
         this.mimeType = DICOM_MIMETYPE;
         this.fileCache = new FileCache(this);
     }
@@ -752,6 +767,52 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         return null;
     }
 
+    @Override
+    public PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        if (!(Objects.requireNonNull(media).getKey() instanceof Integer) || !isReadableDicom()) {
+            return null;
+        }
+        int frame = (Integer) media.getKey();
+        Optional<File> original = media.getFileCache().getOriginalFile();
+        if (frame < 0 || frame >= numberOfFrame || !hasPixel || !original.isPresent()) {
+            return null;
+        }
+        readMetaData();
+        /*
+         * Only the uncompressed pixel data can be read by lines. The compressed images are decoded at full resolution
+         * as the native decoders cannot decode a resolution level.
+         */
+        if (compressedData || pixeldata == null || banded || dataType == DataBuffer.TYPE_INT
+            || dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE) {
+            return null;
+        }
+        Integer samplesPerPixel = TagD.getTagValue(this, Tag.SamplesPerPixel, Integer.class);
+        // Default value when the attribute is absent
+        int samples = samplesPerPixel == null ? 1 : samplesPerPixel;
+        Integer columns = TagD.getTagValue(this, Tag.Columns, Integer.class);
+        Integer rows = TagD.getTagValue(this, Tag.Rows, Integer.class);
+        if (columns == null || rows == null || samples > 1 && !"RGB".equalsIgnoreCase(pmi.name())) { //$NON-NLS-1$
+            return null;
+        }
+        ExtendSegmentedInputImageStream extParams = buildSegmentedImageInputStream(frame);
+        long[] positions = extParams.getSegmentPositions();
+        if (positions == null || positions.length != 1) {
+            return null;
+        }
+        PlanarImage img = ReducedImageReader.readSubsampled(original.get(), positions[0], columns, rows, samples,
+            bitsAllocated, bitsStored, dataType == DataBuffer.TYPE_SHORT, bigendian, size);
+        if (img != null) {
+            if (pmi == PhotometricInterpretation.PALETTE_COLOR) {
+                img = DicomImageUtils.getRGBImageFromPaletteColorModel(img, getDicomObject());
+            }
+            Integer overlayBitMask = (Integer) getTagValue(TagW.OverlayBitMask);
+            if (overlayBitMask != null) {
+                img = ImageProcessor.bitwiseAnd(img.toMat(), overlayBitMask);
+            }
+        }
+        return img;
+    }
+
     private static Mat getMatBuffer(ExtendSegmentedInputImageStream extParams) throws IOException {
         try (RandomAccessFile raf = new RandomAccessFile(extParams.getFile(), "r")) { //$NON-NLS-1$
 
@@ -938,7 +999,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         if (key instanceof Integer) {
             if ((Integer) key > 0) {
                 // Clone the shared tag
-                Map<TagW, Object> tagList = new HashMap<>(tags);
+                Map<TagW, Object> tagList = new TagMap(tags);
                 SimpleTagable tagable = new SimpleTagable(tagList);
                 if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomObject(), (Integer) key)) {
                     DicomMediaUtils.computeSlicePositionVector(tagable);
@@ -9,19 +9,18 @@
  *******************************************************************************/
 package org.weasis.dicom.codec;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
 import org.dcm4che3.data.Tag;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
 import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.api.gui.util.Filter;
 import org.weasis.core.api.gui.util.MathUtil;
-import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.media.data.ImageLoader;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.TagView;
@@ -29,14 +28,16 @@ import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.util.FileUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.dicom.codec.TagD.Level;
+import org.weasis.dicom.codec.geometry.ImageOrientation;
 
 public class DicomSeries extends Series<DicomImageElement> {
-    private static final Logger LOGGER = LoggerFactory.getLogger(DicomSeries.class);
 
     static final TagView defaultTagView =
         new TagView(TagD.getTagFromIDs(Tag.SeriesDescription, Tag.SeriesNumber, Tag.SeriesTime));
 
-    private static PreloadingTask preloadingTask;
+    private static final SeriesPreloader PRELOADER = new SeriesPreloader(ImageLoader.getDefaultThreadNumber());
+
+    private final SlicePositionIndex<DicomImageElement> sliceIndex = new SlicePositionIndex<>();
 
     public DicomSeries(String subseriesInstanceUID) {
         this(subseriesInstanceUID, null, defaultTagView);
@@ -44,6 +45,20 @@ public class DicomSeries extends Series<DicomImageElement> {
 
     public DicomSeries(String subseriesInstanceUID, List<DicomImageElement> c, TagView displayTag) {
         super(TagD.getUID(Level.SERIES), subseriesInstanceUID, displayTag, c, SortSeriesStack.instanceNumber);
+        synchronized (this) {
+            for (DicomImageElement media : medias) {
+                addToSliceIndex(media);
+            }
+        }
+    }
+
+    private void addToSliceIndex(DicomImageElement media) {
+        double[] val = media == null ? null : (double[]) media.getTagValue(TagW.SlicePosition);
+        if (val != null) {
+            double[] normal = ImageOrientation
+                .computeNormalVectorOfPlan(TagD.getTagValue(media, Tag.ImageOrientationPatient, double[].class));
+            sliceIndex.add(media, normal, val[0] + val[1] + val[2]);
+        }
     }
 
     public boolean[] getImageInMemoryList() {
@@ -85,6 +100,39 @@ public class DicomSeries extends Series<DicomImageElement> {
         }
     }
 
+    @Override
+    public void add(DicomImageElement media) {
+        super.add(media);
+        addToSliceIndex(media);
+    }
+
+    @Override
+    public void add(int index, DicomImageElement media) {
+        super.add(index, media);
+        addToSliceIndex(media);
+    }
+
+    @Override
+    public void addAll(Collection<? extends DicomImageElement> c) {
+        super.addAll(c);
+        c.forEach(this::addToSliceIndex);
+    }
+
+    @Override
+    public void addAll(int index, Collection<? extends DicomImageElement> c) {
+        super.addAll(index, c);
+        c.forEach(this::addToSliceIndex);
+    }
+
+    @Override
+    public boolean remove(DicomImageElement media) {
+        boolean removed = super.remove(media);
+        if (removed) {
+            sliceIndex.remove(media);
+        }
+        return removed;
+    }
+
     @Override
     public String getToolTips() {
         StringBuilder toolTips = new StringBuilder("<html>"); //$NON-NLS-1$
@@ -128,11 +176,48 @@ public class DicomSeries extends Series<DicomImageElement> {
     public void dispose() {
         stopPreloading(this);
         super.dispose();
+        sliceIndex.clear();
+    }
+
+    /**
+     * Returns the index of the first element (in the sort order) among the nearest slices of the location found in the
+     * slice position index.
+     *
+     * @return the index, -1 when there is no slice position or null when the index cannot be used (filtered list,
+     *         several orientations or index not up to date)
+     */
+    private Integer getIndexedNearestImageIndex(double location, Filter<DicomImageElement> filter,
+        Comparator<DicomImageElement> sort) {
+        // The filtered list requires iterating over all the elements
+        if (filter != null) {
+            return null;
+        }
+        List<DicomImageElement> nearest = sliceIndex.getNearest(location);
+        if (nearest == null) {
+            return null;
+        }
+        int bestIndex = Integer.MAX_VALUE;
+        for (DicomImageElement dcm : nearest) {
+            int index = indexOfSortedMedia(dcm, sort);
+            if (index < 0) {
+                return null;
+            }
+            bestIndex = Math.min(bestIndex, index);
+        }
+        return bestIndex == Integer.MAX_VALUE ? -1 : bestIndex;
     }
 
     @Override
     public DicomImageElement getNearestImage(double location, int offset, Filter<DicomImageElement> filter,
         Comparator<DicomImageElement> sort) {
+        Integer indexed = getIndexedNearestImageIndex(location, filter, sort);
+        if (indexed != null) {
+            if (offset > 0) {
+                return getMedia(indexed + offset, filter, sort);
+            }
+            return getMedia(indexed, filter, sort);
+        }
+
         Iterable<DicomImageElement> mediaList = getMedias(filter, sort);
         DicomImageElement nearest = null;
         int index = 0;
@@ -165,6 +250,11 @@ public class DicomSeries extends Series<DicomImageElement> {
     @Override
     public int getNearestImageIndex(double location, int offset, Filter<DicomImageElement> filter,
         Comparator<DicomImageElement> sort) {
+        Integer indexed = getIndexedNearestImageIndex(location, filter, sort);
+        if (indexed != null) {
+            return (offset > 0) ? (indexed + offset) : indexed;
+        }
+
         Iterable<DicomImageElement> mediaList = getMedias(filter, sort);
         int index = 0;
         int bestIndex = -1;
@@ -190,132 +280,39 @@ public class DicomSeries extends Series<DicomImageElement> {
         return (offset > 0) ? (bestIndex + offset) : bestIndex;
     }
 
-    public static synchronized void startPreloading(DicomSeries series, List<DicomImageElement> imageList,
+    /**
+     * Starts or updates the preloading of the series displayed in a viewer. All the displayed series are preloaded
+     * together within the budget of the image cache.
+     *
+     * @param viewer
+     *            the viewer displaying the series
+     * @param series
+     *            the series displayed in the viewer
+     * @param imageList
+     *            the images of the series in the order of the viewer
+     * @param currentIndex
+     *            the index of the image displayed in the viewer
+     */
+    public static void startPreloading(Object viewer, DicomSeries series, List<DicomImageElement> imageList,
         int currentIndex) {
-        if (series != null && imageList != null) {
-            if (preloadingTask != null) {
-                if (preloadingTask.getSeries() == series) {
-                    return;
-                }
-                stopPreloading(preloadingTask.getSeries());
-            }
-            preloadingTask = new PreloadingTask(series, imageList, currentIndex);
-            preloadingTask.start();
-        }
+        PRELOADER.start(viewer, series, imageList, currentIndex);
     }
 
-    public static synchronized void stopPreloading(DicomSeries series) {
-        if (preloadingTask != null && preloadingTask.getSeries() == series) {
-            PreloadingTask moribund = preloadingTask;
-            preloadingTask = null;
-            if (moribund != null) {
-                moribund.setPreloading(false);
-                moribund.interrupt();
-            }
-        }
+    /**
+     * Preloads the images from the new position of the viewer.
+     */
+    public static void updatePreloading(Object viewer, int currentIndex) {
+        PRELOADER.updatePosition(viewer, currentIndex);
     }
 
-    static class PreloadingTask extends Thread {
-        private volatile boolean preloading = true;
-        private final int index;
-        private final List<DicomImageElement> imageList;
-        private final DicomSeries series;
-
-        public PreloadingTask(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
-            this.series = series;
-            this.imageList = imageList;
-            this.index = currentIndex;
-        }
-
-        public synchronized boolean isPreloading() {
-            return preloading;
-        }
-
-        public DicomSeries getSeries() {
-            return series;
-        }
-
-        public List<DicomImageElement> getImageList() {
-            return imageList;
-        }
-
-        public synchronized void setPreloading(boolean preloading) {
-            this.preloading = preloading;
-        }
-
-
-
-        private static long evaluateImageSize(DicomImageElement image) {
-            Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
-            Integer sample = TagD.getTagValue(image, Tag.SamplesPerPixel, Integer.class);
-            Integer rows = TagD.getTagValue(image, Tag.Rows, Integer.class);
-            Integer columns = TagD.getTagValue(image, Tag.Columns, Integer.class);
-            if (allocated != null && sample != null && rows != null && columns != null) {
-                return (rows * columns * sample * allocated) / 8L;
-            }
-            return 0L;
-        }
-
-        private void loadArrays(DicomImageElement img, DataExplorerModel model) {
-            // Do not load an image if another process already loading it
-            if (preloading && !img.isLoading()) {
-                Boolean cache = (Boolean) img.getTagValue(TagW.ImageCache);
-                if (cache == null || !cache) {
-                    long start = System.currentTimeMillis();
-                    try {
-                        img.getImage();
-                    } catch (OutOfMemoryError e) {
-                        LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
-                        CvUtil.runGarbageCollectorAndWait(50);
-                        return;
-                    }
-                    long stop = System.currentTimeMillis();
-                    LOGGER.debug("Reading time: {} ms of image: {}", stop - start, img); //$NON-NLS-1$
-                    if (model != null) {
-                        model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
-                            new SeriesEvent(SeriesEvent.Action.PRELOADING, series, img)));
-                    }
-                }
-            }
-        }
+    /**
+     * Stops the preloading of the series of the viewer when this series is not displayed in another viewer.
+     */
+    public static void stopViewerPreloading(Object viewer) {
+        PRELOADER.stopViewer(viewer);
+    }
 
-        @Override
-        public void run() {
-            if (imageList != null) {
-                DataExplorerModel model = (DataExplorerModel) series.getTagValue(TagW.ExplorerModel);
-                int size = imageList.size();
-                if (model == null || index < 0 || index >= size) {
-                    return;
-                }
-                long imgSize = evaluateImageSize(imageList.get(index)) * size + 5000;
-                long heapSize = Runtime.getRuntime().totalMemory();
-                long heapFreeSize = Runtime.getRuntime().freeMemory();
-                if (imgSize > heapSize / 3) {
-                    if (imgSize > heapFreeSize) {
-                        CvUtil.runGarbageCollectorAndWait(50);
-                    }
-                    double val = (double) heapFreeSize / imgSize;
-                    int ajustSize = (int) (size * val) / 2;
-                    int start = index - ajustSize;
-                    if (start < 0) {
-                        ajustSize -= start;
-                        start = 0;
-                    }
-                    if (ajustSize > size) {
-                        ajustSize = size;
-                    }
-                    for (int i = start; i < ajustSize; i++) {
-                        loadArrays(imageList.get(i), model);
-                    }
-                } else {
-                    if (imgSize > heapFreeSize) {
-                        CvUtil.runGarbageCollectorAndWait(50);
-                    }
-                    for (DicomImageElement img : imageList) {
-                        loadArrays(img, model);
-                    }
-                }
-            }
-        }
+    public static void stopPreloading(DicomSeries series) {
+        PRELOADER.stopSeries(series);
     }
 }
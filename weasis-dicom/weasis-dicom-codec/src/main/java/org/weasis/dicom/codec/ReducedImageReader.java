@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.opencv.core.CvType;
+import org.weasis.dicom.codec.utils.DicomImageUtils;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Reads DICOM images at a reduced resolution without decoding the full pixel data: the image of the Icon Image
+ * Sequence or a subsampling of the uncompressed pixel data, where only the lines of the reduced image are read.
+ */
+final class ReducedImageReader {
+
+    private ReducedImageReader() {
+    }
+
+    /**
+     * @param ds
+     *            the attributes of the instance
+     * @param size
+     *            the minimum size of the larger side of the icon
+     * @return the icon ready to be displayed or null when there is no uncompressed icon large enough
+     */
+    static PlanarImage readIcon(Attributes ds, int size) {
+        Attributes icon = ds == null ? null : ds.getNestedDataset(Tag.IconImageSequence);
+        if (icon == null) {
+            return null;
+        }
+        int rows = icon.getInt(Tag.Rows, 0);
+        int cols = icon.getInt(Tag.Columns, 0);
+        int samples = icon.getInt(Tag.SamplesPerPixel, 1);
+        if (Math.max(rows, cols) < size || icon.getInt(Tag.BitsAllocated, 8) != 8 || (samples != 1 && samples != 3)) {
+            return null;
+        }
+        // Compressed icons are encapsulated in fragments
+        Object value = icon.getValue(Tag.PixelData);
+        int length = rows * cols * samples;
+        if (!(value instanceof byte[]) || ((byte[]) value).length < length) {
+            return null;
+        }
+        byte[] data = (byte[]) value;
+        String pmi = icon.getString(Tag.PhotometricInterpretation, "MONOCHROME2"); //$NON-NLS-1$
+        if (samples == 1) {
+            byte[] pixels = new byte[length];
+            if ("MONOCHROME1".equalsIgnoreCase(pmi)) { //$NON-NLS-1$
+                for (int i = 0; i < length; i++) {
+                    pixels[i] = (byte) ~data[i];
+                }
+            } else {
+                System.arraycopy(data, 0, pixels, 0, length);
+            }
+            ImageCV img = new ImageCV(rows, cols, CvType.CV_8UC1);
+            img.put(0, 0, pixels);
+            if ("PALETTE COLOR".equalsIgnoreCase(pmi)) { //$NON-NLS-1$
+                return DicomImageUtils.getRGBImageFromPaletteColorModel(img, icon);
+            }
+            return img;
+        }
+        if (!"RGB".equalsIgnoreCase(pmi)) { //$NON-NLS-1$
+            return null;
+        }
+        ImageCV img = new ImageCV(rows, cols, CvType.CV_8UC3);
+        img.put(0, 0, toBGR(data, rows * cols, icon.getInt(Tag.PlanarConfiguration, 0) != 0));
+        return img;
+    }
+
+    static byte[] toBGR(byte[] rgb, int nbPixels, boolean planar) {
+        byte[] bgr = new byte[nbPixels * 3];
+        for (int i = 0; i < nbPixels; i++) {
+            int k = i * 3;
+            if (planar) {
+                bgr[k] = rgb[2 * nbPixels + i];
+                bgr[k + 1] = rgb[nbPixels + i];
+                bgr[k + 2] = rgb[i];
+            } else {
+                bgr[k] = rgb[k + 2];
+                bgr[k + 1] = rgb[k + 1];
+                bgr[k + 2] = rgb[k];
+            }
+        }
+        return bgr;
+    }
+
+    /**
+     * Reads one pixel every step pixels in both directions from uncompressed and interleaved pixel data.
+     *
+     * @param file
+     *            the DICOM file
+     * @param offset
+     *            the position of the frame in the file
+     * @param width
+     *            the number of columns of the frame
+     * @param height
+     *            the number of rows of the frame
+     * @param samples
+     *            the samples per pixel (1 or 3)
+     * @param bitsAllocated
+     *            the bits allocated (8 or 16)
+     * @param bitsStored
+     *            the bits stored
+     * @param signed
+     *            true when the pixel representation is signed
+     * @param bigEndian
+     *            true when the pixel data is big endian
+     * @param size
+     *            the minimum size of the larger side of the reduced image
+     * @return the reduced image or null when the image is too small or the pixel format is not supported
+     * @throws IOException
+     */
+    static PlanarImage readSubsampled(File file, long offset, int width, int height, int samples, int bitsAllocated,
+        int bitsStored, boolean signed, boolean bigEndian, int size) throws IOException {
+        int step = getStep(width, height, size);
+        boolean supported = samples == 1 ? bitsAllocated == 8 || bitsAllocated == 16 : samples == 3 && bitsAllocated == 8;
+        if (step < 2 || !supported) {
+            return null;
+        }
+        int pixelBytes = samples * bitsAllocated / 8;
+        int outWidth = (width + step - 1) / step;
+        int outHeight = (height + step - 1) / step;
+        byte[] data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) { //$NON-NLS-1$
+            data = subsample(raf, offset, width * pixelBytes, pixelBytes, outWidth, outHeight, step);
+        }
+        if (bitsAllocated == 8) {
+            ImageCV img = new ImageCV(outHeight, outWidth, samples == 1 ? CvType.CV_8UC1 : CvType.CV_8UC3);
+            img.put(0, 0, samples == 1 ? data : toBGR(data, outWidth * outHeight, false));
+            return img;
+        }
+        ImageCV img = new ImageCV(outHeight, outWidth, signed ? CvType.CV_16SC1 : CvType.CV_16UC1);
+        img.put(0, 0, toShort(data, bigEndian, bitsAllocated, bitsStored, signed));
+        return img;
+    }
+
+    static int getStep(int width, int height, int size) {
+        return size <= 0 ? 1 : Math.max(width, height) / size;
+    }
+
+    static byte[] subsample(RandomAccessFile raf, long offset, int rowBytes, int pixelBytes, int outWidth,
+        int outHeight, int step) throws IOException {
+        byte[] row = new byte[rowBytes];
+        byte[] out = new byte[outWidth * outHeight * pixelBytes];
+        int k = 0;
+        for (int y = 0; y < outHeight; y++) {
+            // Read only the lines of the reduced image
+            raf.seek(offset + (long) y * step * rowBytes);
+            raf.readFully(row);
+            for (int x = 0; x < outWidth; x++) {
+                System.arraycopy(row, x * step * pixelBytes, out, k, pixelBytes);
+                k += pixelBytes;
+            }
+        }
+        return out;
+    }
+
+    static short[] toShort(byte[] data, boolean bigEndian, int bitsAllocated, int bitsStored, boolean signed) {
+        // Same as the native reader (fix #94)
+        int bits = bitsStored <= 8 && bitsAllocated > 8 ? 9 : bitsStored;
+        int shift = 16 - Math.min(16, Math.max(1, bits));
+        int mask = 0xFFFF >>> shift;
+        short[] out = new short[data.length / 2];
+        for (int i = 0; i < out.length; i++) {
+            int b1 = data[2 * i] & 0xFF;
+            int b2 = data[2 * i + 1] & 0xFF;
+            int v = bigEndian ? (b1 << 8) | b2 : (b2 << 8) | b1;
+            // Remove the bits outside bits stored (e.g. overlay) and extend the sign
+            out[i] = (short) (signed ? ((short) (v << shift)) >> shift : v & mask);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.explorer.ObservableEvent;
+import org.weasis.core.api.explorer.model.DataExplorerModel;
+import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader;
+import org.weasis.core.api.media.data.SeriesEvent;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.util.ExecutorRegistry;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
+import org.weasis.core.api.util.MonitoredExecutor.BudgetRelease;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Preloads the images of all the series displayed in the viewers. The budget is a part of the image cache shared
+ * equally between the series. The images of a series are loaded from the current position of each viewer outwards and
+ * the series are served in turn. The loading of a series is cancelled when it is not displayed anymore. The preloading
+ * task ends when there is nothing to load and is started again by a new request.
+ */
+final class SeriesPreloader implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeriesPreloader.class);
+
+    // Part of the image cache for preloading, the remaining part is for the images displayed while preloading
+    private static final double CACHE_RATIO = 0.8;
+
+    private final int maxRequests;
+    private final Map<Object, Viewer> viewers = new HashMap<>();
+    private final Map<DicomSeries, SeriesQueue> queues = new LinkedHashMap<>();
+    private final Deque<Request> requests = new ArrayDeque<>();
+    private final ExecutorService executor =
+        ExecutorRegistry.getInstance().getSharedExecutor("Series Preloader", 1, Kind.CPU); //$NON-NLS-1$
+    private boolean running;
+    private int nextQueue;
+
+    SeriesPreloader(int maxRequests) {
+        this.maxRequests = Math.max(1, maxRequests);
+    }
+
+    /**
+     * Starts or updates the preloading of the series displayed in a viewer.
+     *
+     * @param viewer
+     *            the viewer (a key identifying the viewer)
+     * @param series
+     *            the series displayed in the viewer
+     * @param imageList
+     *            the images of the series in the order of the viewer
+     * @param currentIndex
+     *            the index of the image displayed in the viewer
+     */
+    synchronized void start(Object viewer, DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
+        if (viewer == null || series == null || imageList == null) {
+            return;
+        }
+        Viewer old = viewers.put(viewer, new Viewer(series, imageList, currentIndex));
+        if (old != null && old.series != series) {
+            release(old.series);
+        }
+        if (!queues.containsKey(series)) {
+            queues.put(series, new SeriesQueue(series));
+            // The budget of each series has changed
+            invalidateAll();
+        } else {
+            queues.get(series).dirty = true;
+        }
+        schedule();
+    }
+
+    synchronized void updatePosition(Object viewer, int currentIndex) {
+        Viewer v = viewer == null ? null : viewers.get(viewer);
+        if (v != null && v.index != currentIndex && currentIndex >= 0) {
+            v.index = currentIndex;
+            SeriesQueue queue = queues.get(v.series);
+            if (queue != null) {
+                queue.dirty = true;
+            }
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!running) {
+            running = true;
+            executor.execute(this);
+        }
+    }
+
+    synchronized void stopViewer(Object viewer) {
+        Viewer v = viewer == null ? null : viewers.remove(viewer);
+        if (v != null) {
+            release(v.series);
+        }
+    }
+
+    synchronized void stopSeries(DicomSeries series) {
+        viewers.values().removeIf(v -> v.series == series);
+        release(series);
+    }
+
+    private void release(DicomSeries series) {
+        for (Viewer v : viewers.values()) {
+            if (v.series == series) {
+                SeriesQueue queue = queues.get(series);
+                if (queue != null) {
+                    queue.dirty = true;
+                }
+                return;
+            }
+        }
+        // The series is not displayed anymore
+        if (queues.remove(series) != null) {
+            Iterator<Request> it = requests.iterator();
+            while (it.hasNext()) {
+                Request r = it.next();
+                if (r.series == series) {
+                    // Withdraw the request only once
+                    it.remove();
+                    if (!r.future.isDone()) {
+                        r.image.cancelImageRequest(ImageLoader.Priority.PRELOAD);
+                    }
+                }
+            }
+            invalidateAll();
+        }
+    }
+
+    private void invalidateAll() {
+        for (SeriesQueue queue : queues.values()) {
+            queue.dirty = true;
+        }
+    }
+
+    private Request nextRequest() {
+        List<SeriesQueue> list = new ArrayList<>(queues.values());
+        int size = list.size();
+        for (int i = 0; i < size; i++) {
+            int index = (nextQueue + i) % size;
+            DicomImageElement img = list.get(index).next();
+            if (img != null) {
+                nextQueue = (index + 1) % size;
+                return new Request(list.get(index).series, img);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Request head;
+                synchronized (this) {
+                    // Keep several requests in the loader for decoding in parallel
+                    while (requests.size() < maxRequests) {
+                        Request r = nextRequest();
+                        if (r == null) {
+                            break;
+                        }
+                        r.future = r.image.requestImage(ImageLoader.Priority.PRELOAD);
+                        requests.addLast(r);
+                    }
+                    if (requests.isEmpty()) {
+                        running = false;
+                        return;
+                    }
+                    head = requests.peekFirst();
+                }
+                complete(head);
+                synchronized (this) {
+                    requests.remove(head);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            running = false;
+        }
+    }
+
+    private static void complete(Request request) throws InterruptedException {
+        DicomImageElement img = request.image;
+        long start = System.currentTimeMillis();
+        // Waiting for the loader, which needs a slot of the CPU budget
+        try (BudgetRelease release = MonitoredExecutor.releaseBudget()) {
+            if (request.future.get() == null) {
+                return;
+            }
+            // Compute min and max values with the image in cache
+            img.getImage();
+        } catch (CancellationException e) {
+            return;
+        } catch (ExecutionException e) {
+            LOGGER.error("Cannot preload image: {}", img, e); //$NON-NLS-1$
+            if (e.getCause() instanceof OutOfMemoryError) {
+                CvUtil.runGarbageCollectorAndWait(50);
+            }
+            return;
+        } catch (OutOfMemoryError e) {
+            LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
+            CvUtil.runGarbageCollectorAndWait(50);
+            return;
+        }
+        LOGGER.debug("Reading time: {} ms of image: {}", System.currentTimeMillis() - start, img); //$NON-NLS-1$
+        DataExplorerModel model = (DataExplorerModel) request.series.getTagValue(TagW.ExplorerModel);
+        if (model != null) {
+            model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
+                new SeriesEvent(SeriesEvent.Action.PRELOADING, request.series, img)));
+        }
+    }
+
+    static long evaluateImageSize(DicomImageElement image) {
+        Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
+        Integer sample = TagD.getTagValue(image, Tag.SamplesPerPixel, Integer.class);
+        Integer rows = TagD.getTagValue(image, Tag.Rows, Integer.class);
+        Integer columns = TagD.getTagValue(image, Tag.Columns, Integer.class);
+        if (allocated != null && sample != null && rows != null && columns != null) {
+            return ((long) rows * columns * sample * allocated) / 8L;
+        }
+        return 0L;
+    }
+
+    private static class Viewer {
+        private final DicomSeries series;
+        private final List<DicomImageElement> imageList;
+        private int index;
+
+        Viewer(DicomSeries series, List<DicomImageElement> imageList, int index) {
+            this.series = series;
+            this.imageList = imageList;
+            this.index = index;
+        }
+    }
+
+    private static class Request {
+        private final DicomSeries series;
+        private final DicomImageElement image;
+        private Future<PlanarImage> future;
+
+        Request(DicomSeries series, DicomImageElement image) {
+            this.series = series;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Images to preload of a series, rebuilt when a viewer has moved or when the budget has changed.
+     */
+    private class SeriesQueue {
+        private final DicomSeries series;
+        private List<DicomImageElement> images = Collections.emptyList();
+        private int cursor;
+        private boolean dirty = true;
+
+        SeriesQueue(DicomSeries series) {
+            this.series = series;
+        }
+
+        DicomImageElement next() {
+            if (dirty) {
+                build();
+            }
+            while (cursor < images.size()) {
+                DicomImageElement img = images.get(cursor++);
+                // Do not load an image if another process already loading it
+                if (img.isReadable() && !img.isLoading() && !Boolean.TRUE.equals(img.getTagValue(TagW.ImageCache))) {
+                    return img;
+                }
+            }
+            return null;
+        }
+
+        private void build() {
+            dirty = false;
+            cursor = 0;
+            List<Viewer> list = new ArrayList<>();
+            for (Viewer v : viewers.values()) {
+                if (v.series == series) {
+                    list.add(v);
+                }
+            }
+            long budget = (long) (ImageElement.getCacheMaxMemory() * CACHE_RATIO) / Math.max(1, queues.size());
+            long weight = 0L;
+            List<DicomImageElement> order = new ArrayList<>();
+            Set<DicomImageElement> added = Collections.newSetFromMap(new IdentityHashMap<>());
+            // Merge the images of each viewer from the current position outwards
+            for (int d = 0;; d++) {
+                boolean inRange = false;
+                for (Viewer v : list) {
+                    int size = v.imageList.size();
+                    int index = Math.min(Math.max(v.index, 0), size - 1);
+                    int[] positions = { index + d, index - d };
+                    for (int k : positions) {
+                        if (k >= 0 && k < size) {
+                            inRange = true;
+                            DicomImageElement img = v.imageList.get(k);
+                            if (added.add(img)) {
+                                weight += evaluateImageSize(img);
+                                if (weight > budget) {
+                                    images = order;
+                                    return;
+                                }
+                                order.add(img);
+                            }
+                        }
+                    }
+                }
+                if (!inRange) {
+                    break;
+                }
+            }
+            images = order;
+        }
+    }
+}
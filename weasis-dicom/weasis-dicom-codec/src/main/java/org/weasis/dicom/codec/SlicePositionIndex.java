@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.weasis.core.api.gui.util.MathUtil;
+
+/**
+ * Index of the projected slice positions (the sum of the components of TagW.SlicePosition) of a series. The elements
+ * are grouped by orientation normal and each group is sorted by position, so the nearest slice of a location is found
+ * by binary search.
+ *
+ * @param <E>
+ *            the type of the indexed elements
+ */
+final class SlicePositionIndex<E> {
+
+    // Precision of the orientation normal for grouping the slices
+    private static final double NORMAL_PRECISION = 1000.0;
+
+    private final Map<Normal, List<Slice<E>>> groups = new HashMap<>(4);
+    private final Map<E, Slice<E>> slices = new IdentityHashMap<>();
+
+    synchronized void add(E media, double[] normal, double position) {
+        if (media == null || Double.isNaN(position) || slices.containsKey(media)) {
+            return;
+        }
+        Slice<E> slice = new Slice<>(media, new Normal(normal), position);
+        List<Slice<E>> list = groups.computeIfAbsent(slice.normal, k -> new ArrayList<>());
+        list.add(upperBound(list, position), slice);
+        slices.put(media, slice);
+    }
+
+    synchronized boolean remove(E media) {
+        Slice<E> slice = media == null ? null : slices.remove(media);
+        if (slice == null) {
+            return false;
+        }
+        List<Slice<E>> list = groups.get(slice.normal);
+        if (list != null) {
+            for (int i = lowerBound(list, slice.position); i < list.size(); i++) {
+                if (list.get(i) == slice) {
+                    list.remove(i);
+                    break;
+                }
+            }
+            if (list.isEmpty()) {
+                groups.remove(slice.normal);
+            }
+        }
+        return true;
+    }
+
+    synchronized void clear() {
+        groups.clear();
+        slices.clear();
+    }
+
+    synchronized int size() {
+        return slices.size();
+    }
+
+    synchronized int getGeometryNumber() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the elements nearest to the location. When several elements have a position equal to the location
+     * (within MathUtil.DOUBLE_EPSILON), all of them are returned, otherwise all the elements at the minimal distance.
+     *
+     * @param location
+     *            the projected location
+     * @return the nearest elements, an empty list when no element is indexed or null when the elements have several
+     *         orientations (the positions cannot be compared)
+     */
+    synchronized List<E> getNearest(double location) {
+        if (groups.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (groups.size() > 1) {
+            return null;
+        }
+        List<Slice<E>> list = groups.values().iterator().next();
+        int index = lowerBound(list, location);
+
+        List<E> result = new ArrayList<>();
+        // Positions equal to the location
+        for (int i = index - 1; i >= 0 && MathUtil.isEqualToZero(location - list.get(i).position); i--) {
+            result.add(list.get(i).media);
+        }
+        for (int i = index; i < list.size() && MathUtil.isEqualToZero(location - list.get(i).position); i++) {
+            result.add(list.get(i).media);
+        }
+        if (!result.isEmpty()) {
+            return result;
+        }
+
+        double bestDiff = Double.MAX_VALUE;
+        if (index > 0) {
+            bestDiff = Math.abs(location - list.get(index - 1).position);
+        }
+        if (index < list.size()) {
+            bestDiff = Math.min(bestDiff, Math.abs(location - list.get(index).position));
+        }
+        for (int i = index - 1; i >= 0 && Math.abs(location - list.get(i).position) == bestDiff; i--) {
+            result.add(list.get(i).media);
+        }
+        for (int i = index; i < list.size() && Math.abs(location - list.get(i).position) == bestDiff; i++) {
+            result.add(list.get(i).media);
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the first slice with a position greater or equal to the value
+     */
+    private static <E> int lowerBound(List<Slice<E>> list, double value) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).position < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first slice with a position greater than the value
+     */
+    private static <E> int upperBound(List<Slice<E>> list, double value) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).position <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Slice<E> {
+        private final E media;
+        private final Normal normal;
+        private final double position;
+
+        Slice(E media, Normal normal, double position) {
+            this.media = media;
+            this.normal = normal;
+            this.position = position;
+        }
+    }
+
+    private static final class Normal {
+        private final long[] key;
+
+        Normal(double[] normal) {
+            if (normal == null || normal.length != 3) {
+                this.key = null;
+            } else {
+                this.key = new long[] { Math.round(normal[0] * NORMAL_PRECISION),
+                    Math.round(normal[1] * NORMAL_PRECISION), Math.round(normal[2] * NORMAL_PRECISION) };
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Normal && Arrays.equals(key, ((Normal) obj).key);
+        }
+    }
+}
@@ -10,6 +10,8 @@
 package org.weasis.dicom.codec.display;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.HashMap;
@@ -70,6 +72,16 @@ public class OverlayOp extends AbstractOp {
         }
     }
 
+    @Override
+    public int getRegionMargin() {
+        return 0;
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        return true;
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
@@ -91,8 +103,10 @@ public class OverlayOp extends AbstractOp {
                             Integer height = TagD.getTagValue(image, Tag.Rows, Integer.class);
                             Integer width = TagD.getTagValue(image, Tag.Columns, Integer.class);
                             if (height != null && width != null) {
-                                imgOverlay = OverlayUtils.getBinaryOverlays(image, reader.getDicomObject(), frame,
-                                    width, height, params);
+                                imgOverlay = OverlayUtils.getOverlayRegion(OverlayUtils.getBinaryOverlays(image,
+                                    reader.getDicomObject(), frame, width, height, params),
+                                    (Rectangle) params.get(Param.INPUT_REGION),
+                                    new Dimension(source.width(), source.height()));
                             }
                         }
                     } catch (IOException e) {
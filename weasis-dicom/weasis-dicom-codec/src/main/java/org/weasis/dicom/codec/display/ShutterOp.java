@@ -10,7 +10,9 @@
 package org.weasis.dicom.codec.display;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.image.RenderedImage;
@@ -100,6 +102,16 @@ public class ShutterOp extends AbstractOp {
         }
     }
 
+    @Override
+    public int getRegionMargin() {
+        return 0;
+    }
+
+    @Override
+    public boolean isReducedResolutionSupported() {
+        return true;
+    }
+
     @Override
     public void process() throws Exception {
         PlanarImage source = (PlanarImage) params.get(Param.INPUT_IMG);
@@ -108,9 +120,21 @@ public class ShutterOp extends AbstractOp {
         boolean shutter = LangUtil.getNULLtoFalse((Boolean) params.get(P_SHOW));
         Area area = (Area) params.get(P_SHAPE);
         Object pr = params.get(P_PR_ELEMENT);
+        Rectangle region = (Rectangle) params.get(Param.INPUT_REGION);
+        Integer level = (Integer) params.get(Param.INPUT_LEVEL);
 
         if (shutter && area != null) {
-            result = ImageProcessor.applyShutter(source.toMat(), area, getShutterColor());
+            Shape shape = area;
+            if (region != null || level != null) {
+                // From the coordinates of the image to the coordinates of the processed region
+                double scale = level == null ? 1.0 : 1.0 / (1 << level);
+                AffineTransform t = AffineTransform.getScaleInstance(scale, scale);
+                if (region != null) {
+                    t.translate(-region.x, -region.y);
+                }
+                shape = t.createTransformedShape(area);
+            }
+            result = ImageProcessor.applyShutter(source.toMat(), shape, getShutterColor());
         }
 
         // Potentially override the shutter in the original dicom
@@ -129,8 +153,9 @@ public class ShutterOp extends AbstractOp {
                     Integer shuttOverlayGroup =
                         DicomMediaUtils.getIntegerFromDicomElement(attributes, Tag.ShutterOverlayGroup, null);
                     if (shuttOverlayGroup != null) {
-                        RenderedImage overlayImg =
-                            OverlayUtils.getShutterOverlay(attributes, frame, width, height, shuttOverlayGroup);
+                        RenderedImage overlayImg = OverlayUtils.getOverlayRegion(
+                            OverlayUtils.getShutterOverlay(attributes, frame, width, height, shuttOverlayGroup), region,
+                            new Dimension(source.width(), source.height()));
                         imgOverlay = ImageProcessor.applyShutter(result.toMat(), overlayImg, getShutterColor());
                     }
                 }
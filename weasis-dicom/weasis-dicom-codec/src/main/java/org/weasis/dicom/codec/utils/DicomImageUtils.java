@@ -58,6 +58,11 @@ public class DicomImageUtils {
         return source;
     }
 
+    public static LookupTableCV createWindowLevelLut(VoiLutParameters params) {
+        return createWindowLevelLut(params.getLutShape(), params.getWindow(), params.getLevel(), params.getMinValue(),
+            params.getMaxValue(), params.getBitsStored(), params.isSigned(), params.isInverse());
+    }
+
     /**
      * Minimum output is given for input value below (level - window/2)<br>
      * Maximum output is given for input value above (level + window/2) <br>
@@ -260,6 +265,75 @@ public class DicomImageUtils {
         }
     }
 
+    /**
+     * Composes lookup tables applied one after the other (e.g. modality, VOI and presentation LUTs) into a single table,
+     * so the image is transformed in one pass without intermediate images. As with LookupTableCV, an input value out of
+     * the range of a table takes the value of the nearest entry.
+     *
+     * @param minValue
+     *            the minimum input value
+     * @param maxValue
+     *            the maximum input value
+     * @param lookups
+     *            the tables in the order of application, a null table is skipped
+     * @return an 8-bit table for the input values between minValue and maxValue or null when the tables cannot be
+     *         composed (the last table has not an 8-bit output or a table has several bands or 32-bit values)
+     */
+    public static LookupTableCV createFusedLut(int minValue, int maxValue, LookupTableCV... lookups) {
+        LookupTableCV last = null;
+        for (LookupTableCV lut : lookups) {
+            if (lut != null) {
+                int type = lut.getDataType();
+                if (lut.getNumBands() != 1 || (type != DataBuffer.TYPE_BYTE && type != DataBuffer.TYPE_USHORT
+                    && type != DataBuffer.TYPE_SHORT)) {
+                    return null;
+                }
+                last = lut;
+            }
+        }
+        if (last == null || last.getDataType() != DataBuffer.TYPE_BYTE || maxValue < minValue) {
+            return null;
+        }
+
+        int[] values = new int[maxValue - minValue + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = minValue + i;
+        }
+        for (LookupTableCV lut : lookups) {
+            if (lut != null) {
+                applyLookup(lut, values);
+            }
+        }
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return new LookupTableCV(data, minValue);
+    }
+
+    private static void applyLookup(LookupTableCV lut, int[] values) {
+        int offset = lut.getOffset(0);
+        int maxIndex = lut.getNumEntries() - 1;
+        int type = lut.getDataType();
+        byte[] bData = type == DataBuffer.TYPE_BYTE ? lut.getByteData(0) : null;
+        short[] sData = type == DataBuffer.TYPE_BYTE ? null : lut.getShortData(0);
+        for (int i = 0; i < values.length; i++) {
+            int index = values[i] - offset;
+            if (index < 0) {
+                index = 0;
+            } else if (index > maxIndex) {
+                index = maxIndex;
+            }
+            if (bData != null) {
+                values[i] = bData[index] & 0xFF;
+            } else if (type == DataBuffer.TYPE_USHORT) {
+                values[i] = sData[index] & 0xFFFF;
+            } else {
+                values[i] = sData[index];
+            }
+        }
+    }
+
     private static void setWindowLevelLinearLutLegacy(double window, double level, int minInValue, Object outLut,
         int minOutValue, int maxOutValue, boolean inverse) {
 
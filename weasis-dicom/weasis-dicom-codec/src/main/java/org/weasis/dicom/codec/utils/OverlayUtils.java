@@ -9,6 +9,8 @@
  *******************************************************************************/
 package org.weasis.dicom.codec.utils;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
@@ -27,6 +29,7 @@ import java.util.Map;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.image.Overlays;
+import org.opencv.imgproc.Imgproc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.media.data.ImageElement;
@@ -34,6 +37,9 @@ import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.util.FileUtil;
 import org.weasis.dicom.codec.PRSpecialElement;
 import org.weasis.dicom.codec.display.OverlayOp;
+import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.ImageConversion;
+import org.weasis.opencv.op.ImageProcessor;
 
 public class OverlayUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(OverlayUtils.class);
@@ -125,6 +131,33 @@ public class OverlayUtils {
         return overBi;
     }
 
+    /**
+     * @param overlay
+     *            the overlay of the whole image
+     * @param region
+     *            the region of the image (see Param.INPUT_REGION), null for the whole image
+     * @param size
+     *            the size of the processed image, smaller than the region when it is a reduced resolution (see
+     *            Param.INPUT_LEVEL)
+     * @return the part of the overlay corresponding to the region
+     */
+    public static RenderedImage getOverlayRegion(RenderedImage overlay, Rectangle region, Dimension size) {
+        if (overlay == null) {
+            return null;
+        }
+        boolean resize = size != null && (size.width != (region == null ? overlay.getWidth() : region.width)
+            || size.height != (region == null ? overlay.getHeight() : region.height));
+        if (region == null && !resize) {
+            return overlay;
+        }
+        PlanarImage img = region == null ? ImageConversion.toMat(overlay) : ImageConversion.toMat(overlay, region);
+        if (resize) {
+            // Keep the binary values
+            img = ImageProcessor.scale(img.toMat(), size, Imgproc.INTER_NEAREST);
+        }
+        return ImageConversion.toBufferedImage(img);
+    }
+
     public static byte[] extractOverlay(int gg0000, Raster raster, Attributes attrs) {
         if (attrs.getInt(Tag.OverlayBitsAllocated | gg0000, 1) == 1) {
             return null;
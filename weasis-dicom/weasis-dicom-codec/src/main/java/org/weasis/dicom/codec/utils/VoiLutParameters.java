@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec.utils;
+
+import java.util.Objects;
+
+import org.weasis.core.api.image.LutShape;
+
+/**
+ * Parameters of a VOI lookup table (see DicomImageUtils.createWindowLevelLut()). The input range includes the pixel
+ * padding values when the LUT is extended to the allocated values.
+ */
+public class VoiLutParameters {
+    private final LutShape lutShape;
+    private final double window;
+    private final double level;
+    private final int minValue;
+    private final int maxValue;
+    private final int bitsStored;
+    private final boolean signed;
+    private final boolean inverse;
+
+    public VoiLutParameters(LutShape lutShape, double window, double level, int minValue, int maxValue,
+        int bitsStored, boolean signed, boolean inverse) {
+        this.lutShape = Objects.requireNonNull(lutShape);
+        this.window = window;
+        this.level = level;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.bitsStored = bitsStored;
+        this.signed = signed;
+        this.inverse = inverse;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        VoiLutParameters other = (VoiLutParameters) obj;
+        return Double.doubleToLongBits(window) == Double.doubleToLongBits(other.window)
+            && Double.doubleToLongBits(level) == Double.doubleToLongBits(other.level) && minValue == other.minValue
+            && maxValue == other.maxValue && bitsStored == other.bitsStored && signed == other.signed
+            && inverse == other.inverse && lutShape.equals(other.lutShape);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lutShape, window, level, minValue, maxValue, bitsStored, signed, inverse);
+    }
+
+    public LutShape getLutShape() {
+        return lutShape;
+    }
+
+    public double getWindow() {
+        return window;
+    }
+
+    public double getLevel() {
+        return level;
+    }
+
+    public int getMinValue() {
+        return minValue;
+    }
+
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    public int getBitsStored() {
+        return bitsStored;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    public boolean isInverse() {
+        return inverse;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class ReducedImageReaderTest {
+
+    @Test
+    public void testSubsampleReadsOnlyTheReducedLines() throws IOException {
+        int width = 10;
+        int height = 7;
+        int offset = 132;
+        byte[] data = new byte[offset + width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[offset + y * width + x] = (byte) (y * 16 + x);
+            }
+        }
+        File file = File.createTempFile("raw", ".dcm"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            Files.write(file.toPath(), data);
+            int step = ReducedImageReader.getStep(width, height, 4);
+            assertThat(step).isEqualTo(2);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) { //$NON-NLS-1$
+                byte[] out = ReducedImageReader.subsample(raf, offset, width, 1, 5, 4, step);
+                assertThat(out.length).isEqualTo(20);
+                for (int y = 0; y < 4; y++) {
+                    for (int x = 0; x < 5; x++) {
+                        assertThat(out[y * 5 + x]).isEqualTo((byte) (y * 2 * 16 + x * 2));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testToShort() {
+        // 12 bits stored with overlay bits in the high bits
+        byte[] little = { (byte) 0xFF, (byte) 0xFF, 0x34, 0x12, (byte) 0xFF, 0x07 };
+        short[] unsigned = ReducedImageReader.toShort(little, false, 16, 12, false);
+        assertThat((int) unsigned[0]).isEqualTo(0x0FFF);
+        assertThat((int) unsigned[1]).isEqualTo(0x0234);
+        assertThat((int) unsigned[2]).isEqualTo(0x07FF);
+
+        short[] signed = ReducedImageReader.toShort(little, false, 16, 12, true);
+        assertThat((int) signed[0]).isEqualTo(-1);
+        assertThat((int) signed[1]).isEqualTo(0x0234);
+        assertThat((int) signed[2]).isEqualTo(2047);
+
+        byte[] big = { 0x12, 0x34, (byte) 0x80, 0x00 };
+        short[] full = ReducedImageReader.toShort(big, true, 16, 16, true);
+        assertThat((int) full[0]).isEqualTo(0x1234);
+        assertThat((int) full[1]).isEqualTo(-32768);
+    }
+
+    @Test
+    public void testToBGR() {
+        byte[] interleaved = { 1, 2, 3, 4, 5, 6 };
+        assertThat(ReducedImageReader.toBGR(interleaved, 2, false)).containsExactly(3, 2, 1, 6, 5, 4);
+        byte[] planar = { 1, 4, 2, 5, 3, 6 };
+        assertThat(ReducedImageReader.toBGR(planar, 2, true)).containsExactly(3, 2, 1, 6, 5, 4);
+    }
+}
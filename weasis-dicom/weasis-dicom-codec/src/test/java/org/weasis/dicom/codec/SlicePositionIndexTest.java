@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.weasis.core.api.gui.util.MathUtil;
+
+public class SlicePositionIndexTest {
+
+    private static final double[] AXIAL = { 0.0, 0.0, 1.0 };
+    private static final double[] CORONAL = { 0.0, -1.0, 0.0 };
+
+    static class Slice {
+        final double position;
+
+        Slice(double position) {
+            this.position = position;
+        }
+    }
+
+    /**
+     * Same rule as the previous linear scan: the first element near to zero, otherwise the first minimal distance.
+     */
+    static Slice linearNearest(List<Slice> slices, double location) {
+        Slice nearest = null;
+        double bestDiff = Double.MAX_VALUE;
+        for (Slice s : slices) {
+            double diff = Math.abs(location - s.position);
+            if (diff < bestDiff) {
+                bestDiff = diff;
+                nearest = s;
+                if (MathUtil.isEqualToZero(diff)) {
+                    break;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    @Test
+    public void testNearestAgainstLinearScan() {
+        Random random = new Random(3L);
+        SlicePositionIndex<Slice> index = new SlicePositionIndex<>();
+        List<Slice> slices = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            // Several phases at the same position
+            Slice s = new Slice(-300.0 + (i % 500) * 1.25);
+            slices.add(s);
+            index.add(s, AXIAL, s.position);
+        }
+        assertThat(index.size()).isEqualTo(1500);
+        assertThat(index.getGeometryNumber()).isEqualTo(1);
+
+        for (int i = 0; i < 2000; i++) {
+            double location = -400.0 + random.nextDouble() * 900.0;
+            if (i % 4 == 0) {
+                location = slices.get(random.nextInt(slices.size())).position;
+            }
+            List<Slice> nearest = index.getNearest(location);
+            Slice expected = linearNearest(slices, location);
+            assertThat(nearest).contains(expected);
+            assertThat(nearest).hasSize(3);
+            for (Slice s : nearest) {
+                assertThat(s.position).isEqualTo(expected.position);
+            }
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        SlicePositionIndex<Slice> index = new SlicePositionIndex<>();
+        Slice s1 = new Slice(10.0);
+        Slice s2 = new Slice(20.0);
+        index.add(s1, AXIAL, s1.position);
+        index.add(s2, AXIAL, s2.position);
+        // Ignore a duplicate
+        index.add(s2, AXIAL, s2.position);
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getNearest(12.0)).containsExactly(s1);
+
+        assertThat(index.remove(s1)).isTrue();
+        assertThat(index.remove(s1)).isFalse();
+        assertThat(index.getNearest(12.0)).containsExactly(s2);
+
+        assertThat(index.remove(s2)).isTrue();
+        assertThat(index.getNearest(12.0)).isEmpty();
+    }
+
+    @Test
+    public void testMixedGeometry() {
+        SlicePositionIndex<Slice> index = new SlicePositionIndex<>();
+        Slice axial = new Slice(10.0);
+        Slice localizer = new Slice(-50.0);
+        index.add(axial, AXIAL, axial.position);
+        index.add(localizer, CORONAL, localizer.position);
+        assertThat(index.getGeometryNumber()).isEqualTo(2);
+        // Positions of different orientations cannot be compared
+        assertThat(index.getNearest(10.0)).isNull();
+
+        index.remove(localizer);
+        assertThat(index.getNearest(0.0)).containsExactly(axial);
+    }
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.weasis.dicom.codec.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.awt.image.DataBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.LookupTableCV;
+
+public class DicomImageUtilsTest {
+
+    private static boolean nativeLibrary;
+
+    @BeforeClass
+    public static void loadNativeLibrary() {
+        // The OpenCV library is loaded by its bundle at runtime, the image tests are skipped when it is not available
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            nativeLibrary = true;
+        } catch (UnsatisfiedLinkError e) {
+            nativeLibrary = false;
+        }
+    }
+
+    /**
+     * @return an image containing once each value between minValue and maxValue (256 or 65536 values)
+     */
+    private static ImageCV buildAllValuesImage(int minValue, int maxValue) {
+        int nb = maxValue - minValue + 1;
+        if (maxValue <= 255) {
+            byte[] data = new byte[nb];
+            for (int i = 0; i < nb; i++) {
+                data[i] = (byte) (minValue + i);
+            }
+            ImageCV img = new ImageCV(nb / 256, 256, CvType.CV_8UC1);
+            img.put(0, 0, data);
+            return img;
+        }
+        short[] data = new short[nb];
+        for (int i = 0; i < nb; i++) {
+            data[i] = (short) (minValue + i);
+        }
+        ImageCV img = new ImageCV(nb / 256, 256, minValue < 0 ? CvType.CV_16SC1 : CvType.CV_16UC1);
+        img.put(0, 0, data);
+        return img;
+    }
+
+    /**
+     * Compares the fused table with the successive lookups on an image (the rendering of
+     * DicomImageElement.getRenderedImage() when the tables cannot be fused).
+     */
+    private static void assertSameOutput(int minValue, int maxValue, LookupTableCV... lookups) {
+        LookupTableCV fused = DicomImageUtils.createFusedLut(minValue, maxValue, lookups);
+        assertThat(fused).isNotNull();
+        assertThat(fused.getDataType()).isEqualTo(DataBuffer.TYPE_BYTE);
+        assertThat(fused.getOffset()).isEqualTo(minValue);
+        assertThat(fused.getNumEntries()).isEqualTo(maxValue - minValue + 1);
+
+        assumeTrue(nativeLibrary);
+        ImageCV source = buildAllValuesImage(minValue, maxValue);
+        Mat expected = source;
+        for (LookupTableCV lut : lookups) {
+            if (lut != null) {
+                expected = lut.lookup(expected);
+            }
+        }
+        ImageCV actual = fused.lookup(source);
+        assertThat(expected.type()).isEqualTo(CvType.CV_8UC1);
+        assertThat(actual.type()).isEqualTo(CvType.CV_8UC1);
+        byte[] expectedData = new byte[maxValue - minValue + 1];
+        byte[] actualData = new byte[expectedData.length];
+        expected.get(0, 0, expectedData);
+        actual.get(0, 0, actualData);
+        assertThat(actualData).containsExactly(expectedData);
+    }
+
+    private static LookupTableCV getModalityLut(LutParameters params) {
+        LookupTableCV lut = DicomImageUtils.createRescaleRampLut(params);
+        DicomImageUtils.applyPixelPaddingToModalityLUT(lut, params);
+        return lut;
+    }
+
+    @Test
+    public void testUnsignedData() {
+        // CT 12 bits unsigned, rescale to Hounsfield units
+        LutParameters params = new LutParameters(-1024.0, 1.0, false, null, null, 12, false, true, 16, false);
+        LookupTableCV modality = getModalityLut(params);
+        LookupTableCV voi =
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        assertSameOutput(0, 65535, modality, voi);
+
+        // Without modality LUT
+        voi = DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 2000.0, 1000.0, 0, 4095, 8, false, false);
+        assertSameOutput(0, 65535, null, voi);
+        assertSameOutput(0, 255,
+            DicomImageUtils.createWindowLevelLut(LutShape.SIGMOID, 100.0, 128.0, 0, 255, 8, false, false));
+    }
+
+    @Test
+    public void testSignedData() {
+        LutParameters params = new LutParameters(-100.0, 2.0, false, null, null, 16, true, true, 16, false);
+        LookupTableCV modality = getModalityLut(params);
+        LookupTableCV voi =
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 1500.0, -500.0, -32768, 32767, 8, false, false);
+        assertSameOutput(Short.MIN_VALUE, Short.MAX_VALUE, modality, voi);
+        assertSameOutput(Short.MIN_VALUE, Short.MAX_VALUE, null, voi);
+    }
+
+    @Test
+    public void testPixelPadding() {
+        // Padding from -2000 to -1500 for a signed image (MONOCHROME2)
+        LutParameters params = new LutParameters(0.0, 1.0, true, -2000, -1500, 16, true, true, 16, false);
+        LookupTableCV modality = getModalityLut(params);
+        LookupTableCV voi =
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 1000.0, -1000.0, -32768, 32767, 8, false, false);
+        LookupTableCV fused = DicomImageUtils.createFusedLut(Short.MIN_VALUE, Short.MAX_VALUE, modality, voi);
+        assertThat(fused.getByteData(0)[-1800 - Short.MIN_VALUE]).isZero();
+
+        assertSameOutput(Short.MIN_VALUE, Short.MAX_VALUE, modality, voi);
+    }
+
+    @Test
+    public void testInverseGrayscale() {
+        // MONOCHROME1 with padding, unsigned 12 bits
+        LutParameters params = new LutParameters(0.0, 1.0, true, 4095, null, 12, false, false, 16, true);
+        LookupTableCV modality = getModalityLut(params);
+        LookupTableCV voi =
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 3000.0, 1500.0, 0, 4095, 8, false, true);
+        LookupTableCV fused = DicomImageUtils.createFusedLut(0, 65535, modality, voi);
+        // Inverted: the low values are bright
+        assertThat(Byte.toUnsignedInt(fused.getByteData(0)[0])).isEqualTo(255);
+
+        assertSameOutput(0, 65535, modality, voi);
+    }
+
+    @Test
+    public void testPresentationLut() {
+        LutParameters params = new LutParameters(-1024.0, 1.0, false, null, null, 12, false, true, 16, false);
+        LookupTableCV modality = getModalityLut(params);
+        LookupTableCV voi =
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        byte[] inverse = new byte[256];
+        for (int i = 0; i < inverse.length; i++) {
+            inverse[i] = (byte) (255 - i);
+        }
+        LookupTableCV pr = new LookupTableCV(inverse, 0);
+        assertSameOutput(0, 65535, modality, voi, pr);
+        // Presentation LUT without VOI LUT
+        LookupTableCV modality8 = DicomImageUtils.createRescaleRampLut(0.0, 0.5, 12, false, false, 8);
+        assertSameOutput(0, 65535, modality8, null, pr);
+    }
+
+    @Test
+    public void testNotComposable() {
+        LutParameters params = new LutParameters(-1024.0, 1.0, false, null, null, 12, false, true, 16, false);
+        // The output is not 8-bit
+        assertThat(DicomImageUtils.createFusedLut(0, 65535, getModalityLut(params))).isNull();
+        assertThat(DicomImageUtils.createFusedLut(0, 65535, (LookupTableCV) null)).isNull();
+        byte[][] color = new byte[3][256];
+        assertThat(DicomImageUtils.createFusedLut(0, 255, new LookupTableCV(color))).isNull();
+    }
+
+    private static VoiLutParameters getVoiParams(LutShape shape, double level, int minValue, boolean inverse) {
+        return new VoiLutParameters(shape, 400.0, level, minValue, 3071, 8, false, inverse);
+    }
+
+    @Test
+    public void testVoiLutParameters() {
+        VoiLutParameters params = getVoiParams(LutShape.LINEAR, 40.0, -1024, false);
+        VoiLutParameters same = getVoiParams(LutShape.LINEAR, 40.0, -1024, false);
+        assertThat(params).isEqualTo(same);
+        assertThat(params.hashCode()).isEqualTo(same.hashCode());
+        // Any parameter changes the table
+        assertThat(params).isNotEqualTo(getVoiParams(LutShape.LINEAR, 41.0, -1024, false));
+        assertThat(params).isNotEqualTo(getVoiParams(LutShape.SIGMOID, 40.0, -1024, false));
+        assertThat(params).isNotEqualTo(getVoiParams(LutShape.LINEAR, 40.0, -2000, false));
+        assertThat(params).isNotEqualTo(getVoiParams(LutShape.LINEAR, 40.0, -1024, true));
+
+        LookupTableCV voi = DicomImageUtils.createWindowLevelLut(params);
+        assertThat(voi.getOffset()).isEqualTo(-1024);
+        assertThat(voi.getByteData(0))
+            .isEqualTo(DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false,
+                false).getByteData(0));
+    }
+}
@@ -56,6 +56,7 @@ import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.GzipManager;
 import org.weasis.core.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
@@ -102,7 +103,8 @@ public class DicomModel implements TreeModel, DataExplorerModel {
         new TagView(TagD.getTagFromIDs(Tag.StudyDate, Tag.AccessionNumber, Tag.StudyID, Tag.StudyDescription)));
     public static final TreeModelNode series = new TreeModelNode(3, 0, TagW.SubseriesInstanceUID,
         new TagView(TagD.getTagFromIDs(Tag.SeriesDescription, Tag.SeriesNumber, Tag.SeriesTime)));
-    public static final ExecutorService LOADING_EXECUTOR = ThreadUtil.buildNewSingleThreadExecutor("Dicom Model"); //$NON-NLS-1$
+    public static final ExecutorService LOADING_EXECUTOR =
+        ThreadUtil.buildNewSingleThreadExecutor("Dicom Model", Kind.IO); //$NON-NLS-1$
 
     private static final List<TreeModelNode> modelStructure = Arrays.asList(TreeModelNode.ROOT, patient, study, series);
 
@@ -61,8 +61,9 @@ import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.BiConsumerWithException;
 import org.weasis.core.api.util.ClosableURLConnection;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
+import org.weasis.core.api.util.MonitoredExecutor;
 import org.weasis.core.api.util.NetworkUtil;
-import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.api.util.URLParameters;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.image.ViewerPlugin;
@@ -106,15 +107,16 @@ public class DownloadManager {
     private static final BlockingQueue<Runnable> UNIQUE_QUEUE =
         new PriorityBlockingQueue<>(10, new PriorityTaskComparator());
     public static final ThreadPoolExecutor UNIQUE_EXECUTOR =
-        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, UNIQUE_QUEUE);
+        new MonitoredExecutor("Unique Downloader", Kind.IO, 1, 1, 0L, TimeUnit.MILLISECONDS, UNIQUE_QUEUE); //$NON-NLS-1$
 
     // Executor with simultaneous tasks
     private static final BlockingQueue<Runnable> PRIORITY_QUEUE =
         new PriorityBlockingQueue<>(10, new PriorityTaskComparator());
     public static final ThreadPoolExecutor CONCURRENT_EXECUTOR =
-        new ThreadPoolExecutor(BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_SERIES, 3),
+        new MonitoredExecutor("Series Downloader", Kind.IO, //$NON-NLS-1$
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_SERIES, 3),
             BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_SERIES, 3), 0L, TimeUnit.MILLISECONDS,
-            PRIORITY_QUEUE, ThreadUtil.getThreadFactory("Series Downloader")); //$NON-NLS-1$
+            PRIORITY_QUEUE);
 
     public static class PriorityTaskComparator implements Comparator<Runnable>, Serializable {
 
@@ -52,7 +52,10 @@ import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.ClosableURLConnection;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.LocalUtil;
+import org.weasis.core.api.util.MonitoredExecutor;
+import org.weasis.core.api.util.MonitoredExecutor.BudgetRelease;
 import org.weasis.core.api.util.NetworkUtil;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.api.util.URLParameters;
@@ -335,7 +338,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         List<SopInstance> sopList = seriesInstanceList.getSortedList();
 
         ExecutorService imageDownloader =
-            ThreadUtil.buildNewFixedThreadExecutor(concurrentDownloads, "Image Downloader"); //$NON-NLS-1$
+            ThreadUtil.buildNewFixedThreadExecutor(concurrentDownloads, "Image Downloader", Kind.IO); //$NON-NLS-1$
         ArrayList<Callable<Boolean>> tasks = new ArrayList<>(sopList.size());
         int[] dindex = generateDownladOrder(sopList.size());
         GuiExecutor.instance().execute(() -> {
@@ -399,7 +402,8 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             tasks.add(ref);
         }
 
-        try {
+        // The downloads need slots of the IO budget held by the series tasks
+        try (BudgetRelease release = MonitoredExecutor.releaseBudget()) {
             dicomSeries.setTag(DOWNLOAD_START_TIME, System.currentTimeMillis());
             imageDownloader.invokeAll(tasks);
         } catch (InterruptedException e) {
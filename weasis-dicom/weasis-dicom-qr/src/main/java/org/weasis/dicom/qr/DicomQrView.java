@@ -65,6 +65,7 @@ import org.weasis.core.api.media.data.MediaSeriesGroupNode;
 import org.weasis.core.api.media.data.TagUtil;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.util.FileUtil;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.LocalUtil;
 import org.weasis.core.util.StringUtil;
@@ -227,7 +228,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     private final JComboBox<RetrieveType> comboDicomRetrieveType = new JComboBox<>(RetrieveType.values());
     private final JComboBox<AbstractDicomNode> comboCallingNode = new JComboBox<>();
     private final DicomListener dicomListener;
-    private final ExecutorService executor = ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Q/R task"); //$NON-NLS-1$
+    private final ExecutorService executor =
+        ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Q/R task", Kind.IO); //$NON-NLS-1$
 
     public DicomQrView() {
         super(Messages.getString("DicomQrView.title")); //$NON-NLS-1$
@@ -41,6 +41,7 @@ import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ExecutorRegistry.Kind;
 import org.weasis.core.util.FileUtil;
 import org.weasis.core.util.LangUtil;
 import org.weasis.core.util.StringUtil;
@@ -76,7 +77,8 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
 
     private final DicomModel dicomModel;
     private final ExportTree exportTree;
-    private final ExecutorService executor = ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Send task"); //$NON-NLS-1$
+    private final ExecutorService executor =
+        ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Send task", Kind.IO); //$NON-NLS-1$
 
     private final JPanel panel = new JPanel();
     private final JComboBox<AbstractDicomNode> comboNode = new JComboBox<>();
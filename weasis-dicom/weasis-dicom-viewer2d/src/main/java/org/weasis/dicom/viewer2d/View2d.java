@@ -617,6 +617,24 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         }
 
         updateKOButtonVisibleState();
+        updatePreloading();
+    }
+
+    private void updatePreloading() {
+        if (series instanceof DicomSeries) {
+            DicomSeries.startPreloading(this, (DicomSeries) series,
+                series.copyOfMedias((Filter<DicomImageElement>) actionsInView.get(ActionW.FILTERED_SERIES.cmd()),
+                    getCurrentSortComparator()),
+                getFrameIndex());
+        } else {
+            DicomSeries.stopViewerPreloading(this);
+        }
+    }
+
+    @Override
+    public void disposeView() {
+        DicomSeries.stopViewerPreloading(this);
+        super.disposeView();
     }
 
     @Override
@@ -631,6 +649,7 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         if (newImg) {
             updatePrButtonState(img);
             updateKOselectedState(img);
+            DicomSeries.updatePreloading(this, getFrameIndex());
         }
     }
 
@@ -267,7 +267,7 @@ public class View2dContainer extends ImageViewerPlugin<DicomImageElement> implem
         setSelectedImagePane(viewCanvas);
         if (viewCanvas != null && viewCanvas.getSeries() instanceof DicomSeries) {
             DicomSeries series = (DicomSeries) viewCanvas.getSeries();
-            DicomSeries.startPreloading(series,
+            DicomSeries.startPreloading(viewCanvas, series,
                 series.copyOfMedias(
                     (Filter<DicomImageElement>) viewCanvas.getActionValue(ActionW.FILTERED_SERIES.cmd()),
                     viewCanvas.getCurrentSortComparator()),
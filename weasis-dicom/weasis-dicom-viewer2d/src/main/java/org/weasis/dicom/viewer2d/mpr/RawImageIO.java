@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteOrder;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,14 +38,17 @@ import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomOutputStream;
+import org.opencv.core.CvType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.model.DataExplorerModel;
+import org.weasis.core.api.image.cv.MappedRawImage;
 import org.weasis.core.api.media.data.Codec;
 import org.weasis.core.api.media.data.FileCache;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
+import org.weasis.core.api.media.data.TagMap;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.util.FileUtil;
 import org.weasis.dicom.codec.DcmMediaReader;
@@ -66,14 +68,14 @@ public class RawImageIO implements DcmMediaReader {
     protected FileRawImage imageCV;
     private final FileCache fileCache;
 
-    private final HashMap<TagW, Object> tags;
+    private final Map<TagW, Object> tags;
     private final Codec codec;
     private Attributes attributes;
 
     public RawImageIO(FileRawImage imageCV, Codec codec) {
         this.imageCV = Objects.requireNonNull(imageCV);
         this.fileCache = new FileCache(this);
-        this.tags = new HashMap<>();
+        this.tags = new TagMap();
         this.codec = codec;
     }
 
@@ -123,11 +125,38 @@ public class RawImageIO implements DcmMediaReader {
     @Override
     public PlanarImage getImageFragment(MediaElement media) throws Exception {
         if (media != null && media.getFile() != null) {
-            return imageCV.read();
+            Integer rows = TagD.getTagValue(this, Tag.Rows, Integer.class);
+            Integer columns = TagD.getTagValue(this, Tag.Columns, Integer.class);
+            int type = getImageType();
+            if (rows == null || columns == null || type < 0) {
+                return imageCV.read();
+            }
+            // Scrolling the slices does not read and copy each file
+            return MappedRawImage.read(imageCV.getFile(), columns, rows, type);
         }
         return null;
     }
 
+    private int getImageType() {
+        Integer samples = TagD.getTagValue(this, Tag.SamplesPerPixel, Integer.class);
+        Integer bitsAllocated = TagD.getTagValue(this, Tag.BitsAllocated, Integer.class);
+        Integer pixelRepresentation = TagD.getTagValue(this, Tag.PixelRepresentation, Integer.class);
+        if (bitsAllocated == null) {
+            return -1;
+        }
+        if (samples == null || samples == 1) {
+            if (bitsAllocated <= 8) {
+                return CvType.CV_8UC1;
+            }
+            if (bitsAllocated <= 16) {
+                return pixelRepresentation != null && pixelRepresentation == 1 ? CvType.CV_16SC1 : CvType.CV_16UC1;
+            }
+        } else if (samples == 3 && bitsAllocated <= 8) {
+            return CvType.CV_8UC3;
+        }
+        return -1;
+    }
+
     @Override
     public URI getUri() {
         return imageCV.getFile().toURI();